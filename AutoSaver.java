@@ -0,0 +1,121 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Writes small whole files (budget.txt) in the background.
+ *
+ * {@link #markDirty} records the latest contents of a file and returns at
+ * once. A burst of changes within {@link #DEBOUNCE_MS} becomes one write of
+ * the newest contents. Each write goes to a temp file next to the target,
+ * is fsynced, then atomically moved over the target, so a crash leaves
+ * either the old file or the new one and never a truncated mix. All file
+ * work runs on one background thread; the EDT only captures contents.
+ *
+ * The ledger itself does not go through here: the journal already appends
+ * and fsyncs off the EDT and replaces its snapshot the same way.
+ */
+class AutoSaver {
+    /** Writes the captured contents of one file; runs on the save thread. */
+    interface Contents {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Told after each write with its latency and the writes still queued; runs on the save thread. */
+    interface Listener {
+        void saved(Path file, long latencyMillis, int queued, IOException failure);
+    }
+
+    static final long DEBOUNCE_MS = 500;
+
+    private final ScheduledExecutorService worker;
+    private final Listener listener;
+
+    // Guarded by this: newest unwritten contents per file, and the scheduled write
+    private final Map<Path, Contents> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduled;
+
+    AutoSaver(Listener listener) {
+        this.listener = listener;
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expense-autosave");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues {@code contents} as the new version of {@code file}, replacing any
+     * version not yet written. {@code contents} must not read mutable state,
+     * since it runs later on another thread.
+     */
+    synchronized void markDirty(Path file, Contents contents) {
+        pending.put(file, contents);
+        if (scheduled == null) scheduled = worker.schedule(this::writePending, DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Files with contents waiting to be written. */
+    synchronized int queueDepth() {
+        return pending.size();
+    }
+
+    /** Writes everything pending now and stops the save thread. */
+    void close() {
+        synchronized (this) {
+            if (scheduled != null) scheduled.cancel(false);
+            scheduled = null;
+        }
+        worker.execute(this::writePending);
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writePending() {
+        while (true) {
+            Path file;
+            Contents contents;
+            synchronized (this) {
+                scheduled = null;
+                if (pending.isEmpty()) return;
+                Map.Entry<Path, Contents> next = pending.entrySet().iterator().next();
+                file = next.getKey();
+                contents = next.getValue();
+                pending.remove(file);
+            }
+            long start = System.nanoTime();
+            PerfEvents.Save event = new PerfEvents.Save(file.getFileName().toString());
+            IOException failure = null;
+            try {
+                replace(file, contents);
+                event.bytes = Files.size(file);
+                event.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+                failure = e;
+            }
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            listener.saved(file, latency, queueDepth(), failure);
+        }
+    }
+
+    /** Writes {@code contents} to a temp file, fsyncs it, then moves it over {@code file}. */
+    static void replace(Path file, Contents contents) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch));
+            contents.writeTo(out);
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Monthly budgets, overall and per category.
+ *
+ * A budget set for a month also applies to every later month until another
+ * one is set, so setting it once covers the months that follow. Spending is
+ * checked over one of three {@link Period}s, and both sides come from
+ * bucketed totals. Spending comes from month and day buckets in
+ * {@link ExpenseAggregates}, and limits from a floor lookup here. Looking
+ * at another month or period reads different buckets; nothing is
+ * recomputed.
+ *
+ * budget.txt holds one budget per line as "yyyy-MM&lt;tab&gt;amount" or
+ * "yyyy-MM&lt;tab&gt;amount&lt;tab&gt;category". A bare amount, as written
+ * by older versions, is the overall budget for every month.
+ */
+class BudgetPlan {
+    enum Period {
+        MONTH("This month"),
+        ROLLING("Last " + ROLLING_DAYS + " days"),
+        YEAR_TO_DATE("Year to date");
+
+        private final String label;
+
+        Period(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    static final int ROLLING_DAYS = 30;
+    // Key of the overall budget, and the month of a budget with no start month
+    private static final String OVERALL = "";
+    private static final int ALWAYS = Integer.MIN_VALUE;
+
+    private final HashMap<String, TreeMap<Integer, Long>> budgets = new HashMap<>();
+
+    /** Sets the monthly budget of {@code category} (null for overall) from {@code monthIndex} on. */
+    void set(String category, int monthIndex, Money amount) {
+        budgets.computeIfAbsent(key(category), k -> new TreeMap<>()).put(monthIndex, amount.minor());
+    }
+
+    boolean isEmpty() {
+        return budgets.isEmpty();
+    }
+
+    /** Monthly budget in minor units of {@code category} (null for overall) in a month; 0 if none is set. */
+    long monthlyLimit(String category, int monthIndex) {
+        TreeMap<Integer, Long> byMonth = budgets.get(key(category));
+        if (byMonth == null) return 0;
+        Map.Entry<Integer, Long> entry = byMonth.floorEntry(monthIndex);
+        return entry != null ? entry.getValue() : 0;
+    }
+
+    /**
+     * Budget for {@code period} as seen from {@code monthIndex}. The rolling
+     * window is held to one month's budget, and the year to date to the sum
+     * of the monthly budgets since January.
+     */
+    long limit(Period period, String category, int monthIndex) {
+        if (period != Period.YEAR_TO_DATE) return monthlyLimit(category, monthIndex);
+        long sum = 0;
+        for (int month = monthIndex - Math.floorMod(monthIndex, 12); month <= monthIndex; month++) {
+            sum += monthlyLimit(category, month);
+        }
+        return sum;
+    }
+
+    /**
+     * Spending over {@code period} for {@code categoryId} (negative for every
+     * category). The rolling window ends on {@code anchorDay}.
+     */
+    static long spent(ExpenseAggregates totals, Period period, int categoryId, int monthIndex, int anchorDay) {
+        switch (period) {
+            case MONTH: return categoryId < 0 ? totals.monthTotal(monthIndex) : totals.monthCategoryTotal(monthIndex, categoryId);
+            case ROLLING: return totals.windowTotal(anchorDay, ROLLING_DAYS, categoryId);
+            default: return totals.yearToDateTotal(monthIndex, categoryId);
+        }
+    }
+
+    /** First epoch day of {@code period}, as {@link #spent} counts it. */
+    static int firstDay(Period period, int monthIndex, int anchorDay) {
+        switch (period) {
+            case MONTH: return ExpenseAggregates.dayOfMonthIndex(monthIndex);
+            case ROLLING: return anchorDay - ROLLING_DAYS + 1;
+            default: return ExpenseAggregates.dayOfMonthIndex(monthIndex - Math.floorMod(monthIndex, 12));
+        }
+    }
+
+    /** Last epoch day of {@code period}, as {@link #spent} counts it. */
+    static int lastDay(Period period, int monthIndex, int anchorDay) {
+        return period == Period.ROLLING ? anchorDay : ExpenseAggregates.dayOfMonthIndex(monthIndex + 1) - 1;
+    }
+
+    /** Reads budget.txt; a missing file is an empty plan. */
+    static BudgetPlan load(Path file) throws IOException {
+        BudgetPlan plan = new BudgetPlan();
+        if (!Files.exists(file)) return plan;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 1) {
+                    plan.set(null, ALWAYS, Money.parse(fields[0]));
+                } else {
+                    plan.set(fields.length == 3 ? fields[2] : null, parseMonth(fields[0]), Money.parse(fields[1]));
+                }
+            }
+        }
+        return plan;
+    }
+
+    /** Independent copy, so a save can write it while this plan keeps changing. */
+    BudgetPlan copy() {
+        BudgetPlan copy = new BudgetPlan();
+        budgets.forEach((category, byMonth) -> copy.budgets.put(category, new TreeMap<>(byMonth)));
+        return copy;
+    }
+
+    /** Writes budget.txt lines to {@code out}; see {@link AutoSaver#replace} for replacing the file. */
+    void writeTo(OutputStream out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (Map.Entry<String, TreeMap<Integer, Long>> category : budgets.entrySet()) {
+            for (Map.Entry<Integer, Long> entry : category.getValue().entrySet()) {
+                if (entry.getKey() == ALWAYS && category.getKey().equals(OVERALL)) {
+                    writer.write(Money.format(entry.getValue()));
+                } else {
+                    writer.write(formatMonth(entry.getKey()));
+                    writer.write('\t');
+                    writer.write(Money.format(entry.getValue()));
+                    if (!category.getKey().equals(OVERALL)) {
+                        writer.write('\t');
+                        writer.write(category.getKey());
+                    }
+                }
+                writer.newLine();
+            }
+        }
+        writer.flush();
+    }
+
+    /** "2024-03" for the month index year * 12 + (month - 1); "*" for a budget with no start month. */
+    static String formatMonth(int monthIndex) {
+        if (monthIndex == ALWAYS) return "*";
+        int month = Math.floorMod(monthIndex, 12) + 1;
+        return Math.floorDiv(monthIndex, 12) + (month < 10 ? "-0" : "-") + month;
+    }
+
+    static int parseMonth(String text) {
+        String month = text.trim();
+        if (month.equals("*")) return ALWAYS;
+        int dash = month.lastIndexOf('-');
+        if (dash <= 0) throw new NumberFormatException("Expected yyyy-MM: " + text);
+        int m = Integer.parseInt(month.substring(dash + 1));
+        if (m < 1 || m > 12) throw new NumberFormatException("Expected yyyy-MM: " + text);
+        return Integer.parseInt(month.substring(0, dash)) * 12 + m - 1;
+    }
+
+    private static String key(String category) {
+        return category == null ? OVERALL : category;
+    }
+}
@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inverted index over expense descriptions for full-text search.
+ *
+ * Descriptions are split into lower-cased letter/digit tokens. Each distinct
+ * token gets a {@link RowBitmap} posting list. Terms shorter than a trigram
+ * are answered as prefixes from extra posting lists kept for every one- and
+ * two-character token prefix. Longer terms are matched as substrings through
+ * trigrams over the token dictionary (not over the rows), so "ube" finds
+ * "uber" and "ubereats". A query row must match every term.
+ *
+ * The index is built on the first query and is kept current by the store
+ * after that. Only the writer's thread reads the live store: the store
+ * reports each change through {@link #rowAdded} and {@link #rowChanging}
+ * while it holds its write lock. A build on a background thread reads a
+ * {@link ExpenseStore#snapshot} instead, outside the index monitor, and
+ * replays the rows the writer changed meanwhile before it is used. Rows
+ * renumbered by a compaction restart the build. The writer's own queries
+ * never wait for a build: until one is done they scan the store.
+ */
+class DescriptionIndex {
+    private static final int GRAM = 3;
+
+    private final ExpenseStore store;
+    private boolean built;
+    private int knownRows;
+    // Bumped by invalidate, so a build from an older snapshot starts over
+    private int generation;
+    // While a build is running: rows the writer changed since, with their
+    // description now, or null for a row that is gone
+    private HashMap<Integer, String> pending;
+
+    private final HashMap<String, Integer> termIds = new HashMap<>();
+    private final ArrayList<String> terms = new ArrayList<>();
+    private RowBitmap[] postings = new RowBitmap[0];
+    private RowBitmap[][] termPrefixes = new RowBitmap[0][];
+    private final HashMap<Long, int[]> gramTerms = new HashMap<>();
+    private final HashMap<Long, RowBitmap> shortPrefixes = new HashMap<>();
+
+    DescriptionIndex(ExpenseStore store) {
+        this.store = store;
+    }
+
+    /** Drops the index after rows were renumbered; it is rebuilt on the next query. */
+    synchronized void invalidate() {
+        built = false;
+        generation++;
+        pending = null;
+        knownRows = store.size();
+        termIds.clear();
+        terms.clear();
+        postings = new RowBitmap[0];
+        termPrefixes = new RowBitmap[0][];
+        gramTerms.clear();
+        shortPrefixes.clear();
+    }
+
+    synchronized void rowAdded(int row) {
+        knownRows = Math.max(knownRows, row + 1);
+        if (built) indexRow(row, store.descriptionAt(row), true);
+        else if (pending != null) pending.put(row, store.descriptionAt(row));
+    }
+
+    /** Bulk form of {@link #rowAdded} for rows {@code [from, to)}. */
+    synchronized void rowsAdded(int from, int to) {
+        knownRows = Math.max(knownRows, to);
+        for (int row = from; row < to; row++) {
+            if (built) indexRow(row, store.descriptionAt(row), true);
+            else if (pending != null) pending.put(row, store.descriptionAt(row));
+        }
+    }
+
+    /** Call before a row's description is overwritten, or when it is deleted. */
+    synchronized void rowChanging(int row) {
+        if (built) indexRow(row, store.descriptionAt(row), false);
+        else if (pending != null) pending.put(row, null);
+    }
+
+    /**
+     * Builds the index now if it is not built yet. Meant for a background
+     * thread, e.g. at startup; the writer's thread would wait for the build.
+     */
+    void warm() {
+        while (true) {
+            int buildGeneration;
+            synchronized (this) {
+                if (built) return;
+                buildGeneration = generation;
+                if (pending == null) pending = new HashMap<>();
+            }
+            // Outside the monitor: the writer calls in here while holding the store's lock
+            ExpenseStore source = store.snapshot();
+            DescriptionIndex fresh = new DescriptionIndex(source);
+            for (int row = 0; row < source.size(); row++) {
+                if (!source.isDeleted(row)) fresh.indexRow(row, source.descriptionAt(row), true);
+            }
+            synchronized (this) {
+                if (built) return;
+                if (generation != buildGeneration) continue;
+                termIds.putAll(fresh.termIds);
+                terms.addAll(fresh.terms);
+                postings = fresh.postings;
+                termPrefixes = fresh.termPrefixes;
+                gramTerms.putAll(fresh.gramTerms);
+                shortPrefixes.putAll(fresh.shortPrefixes);
+                // The snapshot may already hold some of these changes; each row is re-indexed from scratch
+                for (Map.Entry<Integer, String> change : pending.entrySet()) {
+                    int row = change.getKey();
+                    if (row < source.size() && !source.isDeleted(row)) indexRow(row, source.descriptionAt(row), false);
+                    if (change.getValue() != null) indexRow(row, change.getValue(), true);
+                }
+                pending = null;
+                knownRows = Math.max(knownRows, source.size());
+                built = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rows whose description matches every term of {@code text}, in
+     * ascending row order. Builds the index first if need be, so call it
+     * from a background thread; the writer's thread uses {@link #queryNow}.
+     */
+    int[] query(String text) {
+        while (true) {
+            warm();
+            synchronized (this) {
+                // Null if a compaction dropped the index again meanwhile
+                int[] rows = lookUp(text);
+                if (rows != null) return rows;
+            }
+        }
+    }
+
+    /**
+     * As {@link #query}, for the store's writer thread. Rather than wait for
+     * a build, it scans the store's descriptions until the index is ready.
+     */
+    synchronized int[] queryNow(String text) {
+        int[] rows = lookUp(text);
+        if (rows != null) return rows;
+        String[] queryTerms = tokenize(text).toArray(new String[0]);
+        if (queryTerms.length == 0) return new int[0];
+        int[] matches = new int[16];
+        int count = 0;
+        for (int row = 0; row < store.size(); row++) {
+            if (store.isDeleted(row) || !matchesAll(tokenize(store.descriptionAt(row)), queryTerms)) continue;
+            if (count == matches.length) matches = Arrays.copyOf(matches, count * 2);
+            matches[count++] = row;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /** Same rule as the index: short terms match a token's prefix, longer ones any part of a token. */
+    private static boolean matchesAll(ArrayList<String> tokens, String[] queryTerms) {
+        for (String term : queryTerms) {
+            boolean found = false;
+            for (int t = 0; t < tokens.size() && !found; t++) {
+                String token = tokens.get(t);
+                found = term.length() < GRAM ? token.startsWith(term) : token.contains(term);
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /** Answers from the index, or returns null if it is not built. */
+    private int[] lookUp(String text) {
+        if (!built) return null;
+        String[] queryTerms = tokenize(text).toArray(new String[0]);
+        if (queryTerms.length == 0) return new int[0];
+
+        long[] result = null;
+        for (String term : queryTerms) {
+            long[] matches = new long[(knownRows + 63) >>> 6];
+            boolean any;
+            if (term.length() < GRAM) {
+                RowBitmap prefixRows = shortPrefixes.get(prefixKey(term, term.length()));
+                any = prefixRows != null && prefixRows.orInto(matches);
+            } else {
+                any = orSubstring(term, matches);
+            }
+            if (!any) return new int[0];
+            if (result == null) {
+                result = matches;
+            } else {
+                for (int w = 0; w < result.length; w++) result[w] &= matches[w];
+            }
+        }
+
+        int count = 0;
+        for (long word : result) count += Long.bitCount(word);
+        int[] rows = new int[count];
+        int pos = 0;
+        for (int w = 0; w < result.length; w++) {
+            long word = result[w];
+            while (word != 0) {
+                rows[pos++] = (w << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return rows;
+    }
+
+    /** Splits text into lower-cased runs of letters and digits. */
+    static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                token.appendCodePoint(Character.toLowerCase(cp));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) tokens.add(token.toString());
+        return tokens;
+    }
+
+    private void indexRow(int row, String description, boolean add) {
+        // Removal drops the row from every list its tokens touch, which is
+        // right because all of the row's tokens go at once
+        for (String token : tokenize(description)) {
+            int id;
+            if (add) {
+                id = termId(token);
+            } else {
+                Integer known = termIds.get(token);
+                if (known == null) continue;
+                id = known;
+            }
+            if (add) {
+                postings[id].add(row);
+                for (RowBitmap prefixRows : termPrefixes[id]) prefixRows.add(row);
+            } else {
+                postings[id].remove(row);
+                for (RowBitmap prefixRows : termPrefixes[id]) prefixRows.remove(row);
+            }
+        }
+    }
+
+    private int termId(String term) {
+        Integer id = termIds.get(term);
+        if (id != null) return id;
+        int newId = terms.size();
+        terms.add(term);
+        termIds.put(term, newId);
+        if (newId == postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(16, newId * 2));
+            termPrefixes = Arrays.copyOf(termPrefixes, postings.length);
+        }
+        postings[newId] = new RowBitmap();
+        RowBitmap[] prefixes = new RowBitmap[Math.min(term.length(), GRAM - 1)];
+        for (int length = 1; length <= prefixes.length; length++) {
+            prefixes[length - 1] = shortPrefixes.computeIfAbsent(prefixKey(term, length), k -> new RowBitmap());
+        }
+        termPrefixes[newId] = prefixes;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            long gram = gramKey(term, i);
+            int[] list = gramTerms.get(gram);
+            if (list == null) {
+                list = new int[]{0, 0, 0, 0};
+            } else if (list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+            }
+            // Slot 0 holds the count; a term is listed once even if the gram repeats in it
+            if (list[0] == 0 || list[list[0]] != newId) list[++list[0]] = newId;
+            gramTerms.put(gram, list);
+        }
+        return newId;
+    }
+
+    private static long prefixKey(String term, int length) {
+        return length == 1 ? term.charAt(0) : (1L << 32) | ((long) term.charAt(0) << 16) | term.charAt(1);
+    }
+
+    private static long gramKey(String term, int start) {
+        return ((long) term.charAt(start) << 32) | ((long) term.charAt(start + 1) << 16) | term.charAt(start + 2);
+    }
+
+    private boolean orSubstring(String term, long[] bits) {
+        // Verify candidates from the rarest trigram of the term
+        int[] rarest = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            int[] list = gramTerms.get(gramKey(term, i));
+            if (list == null) return false;
+            if (rarest == null || list[0] < rarest[0]) rarest = list;
+        }
+        boolean any = false;
+        for (int k = 1; k <= rarest[0]; k++) {
+            int id = rarest[k];
+            if (terms.get(id).contains(term)) any |= postings[id].orInto(bits);
+        }
+        return any;
+    }
+}
@@ -0,0 +1,106 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hidden card (Ctrl+Shift+D) showing what {@link Metrics} has gathered:
+ * latency percentiles per hot path, counters, EDT stalls and heap use per
+ * stored row. It is only refreshed while showing.
+ *
+ * EDT stalls are measured by a probe posted to the event queue every
+ * {@link #PROBE_MS}. The time it waits before running is how long the EDT
+ * was busy with something else. Only one probe is in flight at a time, so a
+ * long stall is recorded once and does not flood the queue.
+ */
+class DiagnosticsPanel extends JPanel {
+    static final int PROBE_MS = 100;
+    private static final int REFRESH_MS = 1000;
+    private static final String[] COLUMNS = {"Metric", "Count", "p50 (ms)", "p99 (ms)", "Max (ms)"};
+    private static final Font TITLE_FONT = new Font("Segoe UI", Font.BOLD, 18);
+    private static final Font TEXT_FONT = new Font("Segoe UI", Font.PLAIN, 13);
+
+    private final ExpenseStore store;
+    private final DefaultTableModel latencies = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JLabel heapLabel = new JLabel();
+    private final JLabel countersLabel = new JLabel();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+
+    DiagnosticsPanel(ExpenseStore store) {
+        super(new BorderLayout(10, 10));
+        this.store = store;
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+
+        JLabel title = new JLabel("Diagnostics");
+        title.setFont(TITLE_FONT);
+        heapLabel.setFont(TEXT_FONT);
+        countersLabel.setFont(TEXT_FONT);
+        JPanel header = new JPanel(new GridLayout(0, 1, 0, 4));
+        header.setOpaque(false);
+        header.add(title);
+        header.add(heapLabel);
+        header.add(countersLabel);
+
+        JTable table = new JTable(latencies);
+        table.setFont(TEXT_FONT);
+        table.setRowHeight(24);
+        table.setFillsViewportHeight(true);
+        add(header, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        new Timer(REFRESH_MS, e -> {
+            if (isShowing()) refresh();
+        }).start();
+        ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edt-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        prober.scheduleAtFixedRate(this::probe, PROBE_MS, PROBE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe() {
+        if (!probeInFlight.compareAndSet(false, true)) return;
+        long posted = System.nanoTime();
+        EventQueue.invokeLater(() -> {
+            Metrics.latency("edt.stall").record(System.nanoTime() - posted);
+            probeInFlight.set(false);
+        });
+    }
+
+    void refresh() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        int rows = store.liveCount();
+        heapLabel.setText("Heap used: " + (usedHeap >> 20) + " MB of " + (runtime.maxMemory() >> 20) + " MB, "
+                + rows + " rows in memory" + (rows == 0 ? "" : ", " + usedHeap / rows + " bytes per row"));
+
+        StringBuilder counters = new StringBuilder();
+        for (Map.Entry<String, Metrics.Counter> counter : Metrics.counters().entrySet()) {
+            if (counters.length() > 0) counters.append(",  ");
+            counters.append(counter.getKey()).append(": ").append(counter.getValue().get());
+        }
+        countersLabel.setText(counters.length() == 0 ? "No counters yet" : counters.toString());
+
+        latencies.setRowCount(0);
+        for (Map.Entry<String, Metrics.Histogram> entry : Metrics.latencies().entrySet()) {
+            Metrics.Histogram histogram = entry.getValue();
+            latencies.addRow(new Object[]{entry.getKey(), histogram.count(), millis(histogram.percentile(0.5)),
+                    millis(histogram.percentile(0.99)), millis(histogram.max())});
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Bounded undo/redo log of changes to expenses.
+ *
+ * Each step holds whole rows before and after the change: {@code null}
+ * before means the rows were added, {@code null} after means they were
+ * deleted. Undo applies after-to-before and redo the reverse. Every step
+ * touches a known set of ids, so it is a few O(1) store writes. Only the
+ * last {@link #CAPACITY} steps are kept, and recording a new step clears
+ * the redo side.
+ */
+class EditHistory {
+    static final int CAPACITY = 100;
+
+    /** One undoable step; the arrays are parallel, one slot per expense. */
+    static final class Step {
+        final String label;
+        final Expense[] before;
+        final Expense[] after;
+
+        Step(String label, Expense[] before, Expense[] after) {
+            this.label = label;
+            this.before = before;
+            this.after = after;
+        }
+
+        /** Slots {@code [from, to)} of this step, under the same label. */
+        Step slice(int from, int to) {
+            return new Step(label, Arrays.copyOfRange(before, from, to), Arrays.copyOfRange(after, from, to));
+        }
+    }
+
+    private final ArrayDeque<Step> undo = new ArrayDeque<>();
+    private final ArrayDeque<Step> redo = new ArrayDeque<>();
+
+    void record(String label, Expense before, Expense after) {
+        record(new Step(label, new Expense[]{before}, new Expense[]{after}));
+    }
+
+    void record(Step step) {
+        undo.push(step);
+        if (undo.size() > CAPACITY) undo.removeLast();
+        redo.clear();
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /** The step to revert, moved to the redo side; null if there is none. */
+    Step undo() {
+        Step step = undo.poll();
+        if (step != null) redo.push(step);
+        return step;
+    }
+
+    /** The step to re-apply, moved back to the undo side; null if there is none. */
+    Step redo() {
+        Step step = redo.poll();
+        if (step != null) undo.push(step);
+        return step;
+    }
+
+    /**
+     * The undo of {@code step} stopped at slot {@code failed}. Undo runs last
+     * slot first, so the slots after it stay on the redo side and the rest,
+     * still applied, go back to the undo side.
+     */
+    void undoFailed(Step step, int failed) {
+        redo.pop();
+        if (failed + 1 < step.before.length) redo.push(step.slice(failed + 1, step.before.length));
+        undo.push(step.slice(0, failed + 1));
+    }
+
+    /**
+     * The redo of {@code step} stopped at slot {@code failed}: the slots
+     * before it are applied again and stay on the undo side, the rest go back
+     * to the redo side.
+     */
+    void redoFailed(Step step, int failed) {
+        undo.pop();
+        if (failed > 0) undo.push(step.slice(0, failed));
+        redo.push(step.slice(failed, step.before.length));
+    }
+}
@@ -0,0 +1,35 @@
+import java.time.LocalDate;
+
+class Expense {
+    /** Longest description, in chars, accepted wherever one comes in; every storage format can hold it. */
+    static final int MAX_DESCRIPTION_LENGTH = 4096;
+    /** Longest category name, in chars; the SQL column is this wide and the ledger's u16 name lengths hold it. */
+    static final int MAX_CATEGORY_LENGTH = 255;
+
+    private long id;
+    private String description;
+    private Money amount;
+    private String currency;
+    private String category;
+    private LocalDate date;
+
+    public Expense(long id, String description, Money amount, String category, LocalDate date) {
+        this(id, description, amount, FxRates.BASE, category, date);
+    }
+
+    public Expense(long id, String description, Money amount, String currency, String category, LocalDate date) {
+        this.id = id;
+        this.description = description;
+        this.amount = amount;
+        this.currency = currency;
+        this.category = category;
+        this.date = date;
+    }
+
+    public long getId() { return id; }
+    public String getDescription() { return description; }
+    public Money getAmount() { return amount; }
+    public String getCurrency() { return currency; }
+    public String getCategory() { return category; }
+    public LocalDate getDate() { return date; }
+}
\ No newline at end of file
@@ -0,0 +1,364 @@
+import java.util.Arrays;
+
+/**
+ * Running per-category, per-month and per-day totals over an {@link ExpenseStore}.
+ *
+ * The store calls {@link #apply} with a signed amount for every row it adds,
+ * overwrites or removes, so each total is kept current in O(1) and readers
+ * (pie chart, report, budget bar) never scan the ledger. Buckets are plain
+ * {@code long} arrays indexed by category id, month index (year * 12 + month - 1)
+ * and epoch day, offset from the earliest bucket seen. Month and day buckets
+ * are also split by category. Budget periods (a month, a rolling window of
+ * days, the year to date) are therefore sums of a bounded number of buckets,
+ * whatever the ledger size.
+ *
+ * Week and year totals are kept the same way, so a trend chart reads one
+ * bucket per point at whichever {@link Resolution} fits its width instead
+ * of summing days.
+ */
+class ExpenseAggregates {
+    /** Bucket sizes for time series; weeks start on Monday. */
+    enum Resolution {
+        DAY(1), WEEK(7), MONTH(30.44), YEAR(365.25);
+
+        /** Average length in days, for choosing a resolution by zoom level. */
+        final double days;
+
+        Resolution(double days) {
+            this.days = days;
+        }
+
+        /** Bucket number holding {@code epochDay}: the day, week, month index or year. */
+        int bucketOf(int epochDay) {
+            switch (this) {
+                case DAY: return epochDay;
+                // 1970-01-01 was a Thursday, so Monday-based weeks are offset by 3 days
+                case WEEK: return Math.floorDiv(epochDay + 3, 7);
+                case MONTH: return monthIndexOfDay(epochDay);
+                default: return Math.floorDiv(monthIndexOfDay(epochDay), 12);
+            }
+        }
+
+        /** First epoch day of {@code bucket}. */
+        int startDay(int bucket) {
+            switch (this) {
+                case DAY: return bucket;
+                case WEEK: return bucket * 7 - 3;
+                case MONTH: return dayOfMonthIndex(bucket);
+                default: return dayOfMonthIndex(bucket * 12);
+            }
+        }
+    }
+
+    private long total;
+    private long rowCount;
+    private long[] categoryTotals = new long[8];
+
+    private int firstMonth;
+    private long[] monthTotals = new long[0];
+    private long[][] monthCategoryTotals = new long[0][];
+
+    private int firstDay;
+    private long[] dayTotals = new long[0];
+    private long[][] dayCategoryTotals = new long[0][];
+    private int lastDay;
+
+    private final Series weekTotals = new Series();
+    private final Series yearTotals = new Series();
+
+    private long version;
+
+    /** Adds (sign = +1) or retracts (sign = -1) one row's amount. */
+    void apply(int sign, long amountMinor, int epochDay, short categoryId) {
+        apply(sign, amountMinor, 1, epochDay, categoryId);
+    }
+
+    /** Adds or retracts the summed amount of {@code rows} rows sharing a day and category. */
+    void apply(int sign, long amountMinor, int rows, int epochDay, short categoryId) {
+        long delta = sign * amountMinor;
+        total += delta;
+        rowCount += (long) sign * rows;
+
+        if (categoryId >= categoryTotals.length) {
+            categoryTotals = Arrays.copyOf(categoryTotals, Math.max(categoryId + 1, categoryTotals.length * 2));
+        }
+        categoryTotals[categoryId] += delta;
+
+        int month = monthIndexOfDay(epochDay);
+        int m = ensureMonth(month);
+        monthTotals[m] += delta;
+        monthCategoryTotals[m] = addTo(monthCategoryTotals[m], categoryId, delta);
+
+        int d = ensureDay(epochDay);
+        dayTotals[d] += delta;
+        dayCategoryTotals[d] = addTo(dayCategoryTotals[d], categoryId, delta);
+        lastDay = Math.max(lastDay, epochDay);
+
+        weekTotals.add(Resolution.WEEK.bucketOf(epochDay), delta);
+        yearTotals.add(Math.floorDiv(month, 12), delta);
+        version++;
+    }
+
+    void copyFrom(ExpenseAggregates other) {
+        total = other.total;
+        rowCount = other.rowCount;
+        categoryTotals = other.categoryTotals.clone();
+        firstMonth = other.firstMonth;
+        monthTotals = other.monthTotals.clone();
+        monthCategoryTotals = deepCopy(other.monthCategoryTotals);
+        firstDay = other.firstDay;
+        dayTotals = other.dayTotals.clone();
+        dayCategoryTotals = deepCopy(other.dayCategoryTotals);
+        lastDay = other.lastDay;
+        weekTotals.copyFrom(other.weekTotals);
+        yearTotals.copyFrom(other.yearTotals);
+        version++;
+    }
+
+    void clear() {
+        total = 0;
+        rowCount = 0;
+        categoryTotals = new long[8];
+        monthTotals = new long[0];
+        monthCategoryTotals = new long[0][];
+        dayTotals = new long[0];
+        dayCategoryTotals = new long[0][];
+        weekTotals.clear();
+        yearTotals.clear();
+        version++;
+    }
+
+    /** Marks output derived from row numbers stale, e.g. after the store renumbers rows. */
+    void touch() {
+        version++;
+    }
+
+    /** Incremented on every change; lets renderers cache derived output. */
+    long version() {
+        return version;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    long categoryTotal(int categoryId) {
+        return categoryId < categoryTotals.length ? categoryTotals[categoryId] : 0;
+    }
+
+    long monthTotal(int monthIndex) {
+        int m = monthIndex - firstMonth;
+        return m >= 0 && m < monthTotals.length ? monthTotals[m] : 0;
+    }
+
+    long monthCategoryTotal(int monthIndex, int categoryId) {
+        int m = monthIndex - firstMonth;
+        if (m < 0 || m >= monthTotals.length) return 0;
+        return valueAt(monthCategoryTotals[m], categoryId);
+    }
+
+    long dayTotal(int epochDay) {
+        int d = epochDay - firstDay;
+        return d >= 0 && d < dayTotals.length ? dayTotals[d] : 0;
+    }
+
+    /** Earliest day with a row, or 0 if there are none. */
+    int firstDay() {
+        return dayTotals.length == 0 ? 0 : firstDay;
+    }
+
+    /** Latest day that has had a row, or 0 if there are none. */
+    int lastDay() {
+        return dayTotals.length == 0 ? 0 : lastDay;
+    }
+
+    /** Total of one bucket at {@code resolution}; a single array read at every resolution. */
+    long bucketTotal(Resolution resolution, int bucket) {
+        switch (resolution) {
+            case DAY: return dayTotal(bucket);
+            case WEEK: return weekTotals.get(bucket);
+            case MONTH: return monthTotal(bucket);
+            default: return yearTotals.get(bucket);
+        }
+    }
+
+    /** Sum of day totals in the inclusive range; cost is the range length, not the ledger size. */
+    long rangeTotal(int fromDay, int toDay) {
+        int from = Math.max(fromDay - firstDay, 0);
+        int to = Math.min(toDay - firstDay, dayTotals.length - 1);
+        long sum = 0;
+        for (int d = from; d <= to; d++) sum += dayTotals[d];
+        return sum;
+    }
+
+    /** Total for {@code categoryId} (or every category if negative) on one day. */
+    long dayTotal(int epochDay, int categoryId) {
+        if (categoryId < 0) return dayTotal(epochDay);
+        int d = epochDay - firstDay;
+        return d >= 0 && d < dayTotals.length ? valueAt(dayCategoryTotals[d], categoryId) : 0;
+    }
+
+    /**
+     * Total of the {@code days} days ending with {@code lastDay}, for
+     * {@code categoryId} or every category if negative. Costs {@code days}
+     * bucket reads.
+     */
+    long windowTotal(int lastDay, int days, int categoryId) {
+        int from = Math.max(lastDay - days + 1 - firstDay, 0);
+        int to = Math.min(lastDay - firstDay, dayTotals.length - 1);
+        long sum = 0;
+        for (int d = from; d <= to; d++) {
+            sum += categoryId < 0 ? dayTotals[d] : valueAt(dayCategoryTotals[d], categoryId);
+        }
+        return sum;
+    }
+
+    /** Total from January of {@code monthIndex}'s year through that month, for one category or all if negative. */
+    long yearToDateTotal(int monthIndex, int categoryId) {
+        long sum = 0;
+        for (int month = monthIndex - Math.floorMod(monthIndex, 12); month <= monthIndex; month++) {
+            sum += categoryId < 0 ? monthTotal(month) : monthCategoryTotal(month, categoryId);
+        }
+        return sum;
+    }
+
+    /** year * 12 + (month - 1) for an epoch day, computed without allocating a LocalDate. */
+    static int monthIndexOfDay(int epochDay) {
+        // Civil-from-days conversion on the proleptic Gregorian calendar
+        long z = epochDay + 719468L;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
+
+    /** First epoch day of a month index; the inverse of {@link #monthIndexOfDay}. */
+    static int dayOfMonthIndex(int monthIndex) {
+        // Days-from-civil conversion, with March as the first month of the year
+        long year = Math.floorDiv(monthIndex, 12);
+        long month = Math.floorMod(monthIndex, 12) + 1;
+        if (month <= 2) year--;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (int) (era * 146097 + dayOfEra - 719468);
+    }
+
+    /** Returns the bucket index for {@code month}, widening the month arrays if needed. */
+    private int ensureMonth(int month) {
+        if (monthTotals.length == 0) {
+            firstMonth = month;
+            monthTotals = new long[1];
+            monthCategoryTotals = new long[1][];
+            return 0;
+        }
+        if (month < firstMonth) {
+            int shift = firstMonth - month;
+            long[] totals = new long[monthTotals.length + shift];
+            long[][] perCategory = new long[totals.length][];
+            System.arraycopy(monthTotals, 0, totals, shift, monthTotals.length);
+            System.arraycopy(monthCategoryTotals, 0, perCategory, shift, monthCategoryTotals.length);
+            monthTotals = totals;
+            monthCategoryTotals = perCategory;
+            firstMonth = month;
+        } else if (month - firstMonth >= monthTotals.length) {
+            int length = month - firstMonth + 1;
+            monthTotals = Arrays.copyOf(monthTotals, length);
+            monthCategoryTotals = Arrays.copyOf(monthCategoryTotals, length);
+        }
+        return month - firstMonth;
+    }
+
+    private int ensureDay(int epochDay) {
+        if (dayTotals.length == 0) {
+            firstDay = epochDay;
+            lastDay = epochDay;
+            dayTotals = new long[1];
+            dayCategoryTotals = new long[1][];
+            return 0;
+        }
+        if (epochDay < firstDay) {
+            int shift = firstDay - epochDay;
+            long[] totals = new long[dayTotals.length + shift];
+            System.arraycopy(dayTotals, 0, totals, shift, dayTotals.length);
+            long[][] perCategory = new long[totals.length][];
+            System.arraycopy(dayCategoryTotals, 0, perCategory, shift, dayCategoryTotals.length);
+            dayTotals = totals;
+            dayCategoryTotals = perCategory;
+            firstDay = epochDay;
+        } else if (epochDay - firstDay >= dayTotals.length) {
+            // Grow with headroom so appending day after day stays amortised O(1)
+            int needed = epochDay - firstDay + 1;
+            int length = Math.max(needed, dayTotals.length + dayTotals.length / 2);
+            dayTotals = Arrays.copyOf(dayTotals, length);
+            dayCategoryTotals = Arrays.copyOf(dayCategoryTotals, length);
+        }
+        return epochDay - firstDay;
+    }
+
+    /** Adds {@code delta} to slot {@code categoryId} of a lazily sized per-category bucket. */
+    private static long[] addTo(long[] perCategory, int categoryId, long delta) {
+        if (perCategory == null || categoryId >= perCategory.length) {
+            perCategory = perCategory == null ? new long[Math.max(8, categoryId + 1)]
+                    : Arrays.copyOf(perCategory, Math.max(categoryId + 1, perCategory.length * 2));
+        }
+        perCategory[categoryId] += delta;
+        return perCategory;
+    }
+
+    private static long valueAt(long[] perCategory, int categoryId) {
+        return perCategory != null && categoryId < perCategory.length ? perCategory[categoryId] : 0;
+    }
+
+    private static long[][] deepCopy(long[][] buckets) {
+        long[][] copy = new long[buckets.length][];
+        for (int i = 0; i < buckets.length; i++) {
+            copy[i] = buckets[i] == null ? null : buckets[i].clone();
+        }
+        return copy;
+    }
+
+    /** One total per bucket number, offset from the earliest bucket seen. */
+    private static final class Series {
+        private int first;
+        private long[] totals = new long[0];
+
+        void add(int bucket, long delta) {
+            if (totals.length == 0) {
+                first = bucket;
+                totals = new long[1];
+            } else if (bucket < first) {
+                long[] widened = new long[totals.length + first - bucket];
+                System.arraycopy(totals, 0, widened, first - bucket, totals.length);
+                totals = widened;
+                first = bucket;
+            } else if (bucket - first >= totals.length) {
+                totals = Arrays.copyOf(totals, Math.max(bucket - first + 1, totals.length + totals.length / 2));
+            }
+            totals[bucket - first] += delta;
+        }
+
+        long get(int bucket) {
+            int i = bucket - first;
+            return i >= 0 && i < totals.length ? totals[i] : 0;
+        }
+
+        void copyFrom(Series other) {
+            first = other.first;
+            totals = other.totals.clone();
+        }
+
+        void clear() {
+            totals = new long[0];
+        }
+    }
+}
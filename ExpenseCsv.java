@@ -0,0 +1,120 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * CSV import/export in the original "description,amount,category,date" layout,
+ * plus a fifth currency column. Four-column files read as rupees.
+ * Fields containing commas, quotes or line breaks are quoted RFC 4180 style,
+ * so exported files round-trip; unquoted legacy files still read as before.
+ */
+class ExpenseCsv {
+
+    static void write(File file, ExpenseStore store) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            for (int row = 0; row < store.size(); row++) {
+                if (store.isDeleted(row)) continue;
+                writeField(out, store.descriptionAt(row));
+                out.write(',');
+                out.write(Money.format(store.amountAt(row)));
+                out.write(',');
+                writeField(out, store.categoryAt(row));
+                out.write(',');
+                out.write(LocalDate.ofEpochDay(store.epochDayAt(row)).toString());
+                out.write(',');
+                out.write(store.currencyAt(row));
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Reads every well-formed row; rows with the wrong column count, a
+     * description over {@link Expense#MAX_DESCRIPTION_LENGTH} or a category
+     * over {@link Expense#MAX_CATEGORY_LENGTH} are skipped.
+     */
+    static List<Expense> read(File file, LongSupplier ids) throws IOException {
+        List<Expense> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            List<String> fields = new ArrayList<>(5);
+            while (readRecord(reader, fields)) {
+                if (fields.size() != 4 && fields.size() != 5) continue;
+                if (fields.get(0).length() > Expense.MAX_DESCRIPTION_LENGTH
+                        || fields.get(2).length() > Expense.MAX_CATEGORY_LENGTH) continue;
+                try {
+                    String currency = fields.size() == 5 ? FxRates.normalize(fields.get(4)) : FxRates.BASE;
+                    rows.add(new Expense(ids.getAsLong(), fields.get(0), Money.parse(fields.get(1)), currency,
+                            fields.get(2), LocalDate.parse(fields.get(3).trim())));
+                } catch (RuntimeException e) {
+                    // Skip malformed amounts/dates rather than abandoning the whole file
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    /** Parses one logical record (which may span lines inside quotes) into {@code fields}. */
+    private static boolean readRecord(BufferedReader reader, List<String> fields) throws IOException {
+        fields.clear();
+        String line = reader.readLine();
+        if (line == null) return false;
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!inQuotes) break;
+                String next = reader.readLine();
+                if (next == null) break;
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (inQuotes) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return true;
+    }
+}
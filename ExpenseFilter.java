@@ -0,0 +1,45 @@
+/**
+ * Immutable query over the ledger: an inclusive epoch-day range, an optional
+ * category (null for any) and optional description search text (null for
+ * none). Open ends use {@link #ANY_DAY_FROM} and {@link #ANY_DAY_TO}.
+ */
+class ExpenseFilter {
+    static final int ANY_DAY_FROM = Integer.MIN_VALUE;
+    static final int ANY_DAY_TO = Integer.MAX_VALUE;
+
+    final int fromDay;
+    final int toDay;
+    final String category;
+    final String text;
+
+    ExpenseFilter(int fromDay, int toDay, String category) {
+        this(fromDay, toDay, category, null);
+    }
+
+    ExpenseFilter(int fromDay, int toDay, String category, String text) {
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        this.category = category;
+        this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+    }
+
+    ExpenseFilter withText(String text) {
+        return new ExpenseFilter(fromDay, toDay, category, text);
+    }
+
+    boolean hasDateRange() {
+        return fromDay != ANY_DAY_FROM || toDay != ANY_DAY_TO;
+    }
+
+    boolean hasCategory() {
+        return category != null;
+    }
+
+    boolean hasText() {
+        return text != null;
+    }
+
+    boolean isEmpty() {
+        return !hasDateRange() && !hasCategory() && !hasText();
+    }
+}
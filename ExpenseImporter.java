@@ -0,0 +1,541 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bulk import of delimited bank and card statements.
+ *
+ * The file is memory-mapped and split into byte ranges that are parsed in
+ * parallel on a fork-join pool. A newline inside a quoted field is not a
+ * record boundary. So each range first counts its quote characters, and a
+ * prefix of those counts tells every range whether it starts inside
+ * quotes. Each range then starts at its first record boundary and parses
+ * through the last record that begins inside it.
+ *
+ * Parsing never touches the store, so it can run on a worker thread.
+ * {@link #stage} drops rows whose content hash matches an entry of a
+ * snapshot and gives the rest ids in a store of their own, so it can run
+ * there too. The staged rows are journaled in one batch before
+ * {@link #publish} adds them to the store on the thread that owns it.
+ * {@link #commit} does all of it on that thread.
+ */
+class ExpenseImporter {
+    private static final int MIN_RANGE_BYTES = 1 << 20;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Rows parsed from one byte range, in file order. */
+    static final class Chunk {
+        int size;
+        int rejected;
+        long[] amounts = new long[256];
+        int[] days = new int[256];
+        String[] descriptions = new String[256];
+        String[] categories = new String[256];
+        String[] currencies = new String[256];
+        long[] hashes = new long[256];
+
+        private void add(String description, long amountMinor, String currency, String category, int epochDay, long hash) {
+            if (size == amounts.length) {
+                int capacity = size * 2;
+                amounts = Arrays.copyOf(amounts, capacity);
+                days = Arrays.copyOf(days, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+                currencies = Arrays.copyOf(currencies, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+            amounts[size] = amountMinor;
+            days[size] = epochDay;
+            descriptions[size] = description;
+            categories[size] = category;
+            currencies[size] = currency;
+            hashes[size] = hash;
+            size++;
+        }
+    }
+
+    /** Everything parsed from one file. */
+    static final class Batch {
+        final List<Chunk> chunks;
+
+        Batch(List<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+
+        int size() {
+            int n = 0;
+            for (Chunk chunk : chunks) n += chunk.size;
+            return n;
+        }
+
+        int rejected() {
+            int n = 0;
+            for (Chunk chunk : chunks) n += chunk.rejected;
+            return n;
+        }
+    }
+
+    /** New rows of a batch, under fresh ids, not yet in the ledger's store. */
+    static final class Staged {
+        final ExpenseStore rows;
+        final int duplicates;
+        final int rejected;
+
+        Staged(ExpenseStore rows, int duplicates, int rejected) {
+            this.rows = rows;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+        }
+    }
+
+    /** Outcome of {@link #commit}. */
+    static final class Result {
+        final int added;
+        final int duplicates;
+
+        Result(int added, int duplicates) {
+            this.added = added;
+            this.duplicates = duplicates;
+        }
+    }
+
+    static Batch parse(Path file, ImportSchema schema, ForkJoinPool pool) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) throw new IOException("File too large to import: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        int limit = buffer.limit();
+        int bodyStart = limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+                && buffer.get(2) == (byte) 0xBF ? 3 : 0;
+
+        String[] headerNames = null;
+        RecordParser headerParser = new RecordParser(buffer, schema.delimiter, limit);
+        if (schema.header && bodyStart < limit) {
+            int next = headerParser.parse(bodyStart);
+            headerNames = new String[headerParser.fieldCount];
+            for (int f = 0; f < headerNames.length; f++) headerNames[f] = headerParser.text(f);
+            bodyStart = next;
+        }
+        int[] columns = {
+            schema.resolve(schema.descriptionColumn, headerNames),
+            schema.resolve(schema.amountColumn, headerNames),
+            schema.resolve(schema.categoryColumn, headerNames),
+            schema.resolve(schema.dateColumn, headerNames),
+            schema.resolve(schema.currencyColumn, headerNames)
+        };
+
+        int ranges = (int) Math.max(1, Math.min((long) pool.getParallelism() * 4, (limit - bodyStart) / MIN_RANGE_BYTES));
+        int[] starts = new int[ranges + 1];
+        for (int r = 0; r <= ranges; r++) {
+            starts[r] = bodyStart + (int) ((long) (limit - bodyStart) * r / ranges);
+        }
+
+        // Pass 1: quote parity at the start of every range
+        List<Callable<Integer>> counts = new ArrayList<>(ranges);
+        for (int r = 0; r < ranges; r++) {
+            int from = starts[r];
+            int to = starts[r + 1];
+            counts.add(() -> {
+                byte[] block = new byte[1 << 16];
+                int quotes = 0;
+                for (int pos = from; pos < to; pos += block.length) {
+                    int n = Math.min(block.length, to - pos);
+                    buffer.get(pos, block, 0, n);
+                    for (int i = 0; i < n; i++) {
+                        if (block[i] == '"') quotes++;
+                    }
+                }
+                return quotes & 1;
+            });
+        }
+        boolean[] startsInQuotes = new boolean[ranges];
+        List<Future<Integer>> parities = pool.invokeAll(counts);
+        boolean inQuotes = false;
+        for (int r = 0; r < ranges; r++) {
+            startsInQuotes[r] = inQuotes;
+            inQuotes ^= join(parities.get(r)) == 1;
+        }
+
+        // Pass 2: parse every record that begins inside each range
+        List<Callable<Chunk>> tasks = new ArrayList<>(ranges);
+        for (int r = 0; r < ranges; r++) {
+            int from = starts[r];
+            int to = starts[r + 1];
+            boolean quoted = startsInQuotes[r];
+            boolean first = r == 0;
+            tasks.add(() -> parseRange(buffer, limit, schema, columns,
+                    first ? from : firstRecordAfter(buffer, from, to, quoted), to));
+        }
+        List<Chunk> chunks = new ArrayList<>(ranges);
+        for (Future<Chunk> future : pool.invokeAll(tasks)) chunks.add(join(future));
+        return new Batch(chunks);
+    }
+
+    /** First and last day of the rows in {@code batch}, or null if it has none. */
+    static int[] dayRange(Batch batch) {
+        int fromDay = Integer.MAX_VALUE, toDay = Integer.MIN_VALUE;
+        for (Chunk chunk : batch.chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                fromDay = Math.min(fromDay, chunk.days[i]);
+                toDay = Math.max(toDay, chunk.days[i]);
+            }
+        }
+        return fromDay <= toDay ? new int[]{fromDay, toDay} : null;
+    }
+
+    /**
+     * Drops the rows of {@code batch} that match an entry of {@code existing}
+     * and gives the rest ids. Only reads {@code existing}, so given a
+     * snapshot it can run on any thread. The years of {@link #dayRange} must
+     * be loaded in it, or their duplicates are not found.
+     */
+    static Staged stage(Batch batch, ExpenseStore existing, StorageBackend journal) {
+        LongIntMap seen = existingHashes(existing);
+        ExpenseStore rows = new ExpenseStore();
+        int duplicates = 0;
+        long nextId = journal.allocateIds(batch.size());
+        for (Chunk chunk : batch.chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                long hash = chunk.hashes[i];
+                int count = seen.get(hash);
+                if (count > 0) {
+                    // Each existing entry absorbs one matching imported row
+                    seen.put(hash, count - 1);
+                    duplicates++;
+                    continue;
+                }
+                rows.put(nextId++, chunk.descriptions[i], chunk.amounts[i], chunk.currencies[i], chunk.categories[i], chunk.days[i]);
+            }
+        }
+        return new Staged(rows, duplicates, batch.rejected());
+    }
+
+    /** Adds rows already journaled to {@code store}. Must run on the thread that owns the store. */
+    static Result publish(Staged staged, ExpenseStore store) {
+        PerfEvents.Add event = new PerfEvents.Add();
+        store.appendRows(staged.rows, 0, staged.rows.size());
+        event.rows = staged.rows.size();
+        event.finish();
+        return new Result(staged.rows.size(), staged.duplicates);
+    }
+
+    /**
+     * Adds the rows of {@code batch} that are not already in {@code store}
+     * and reports what happened. They are journaled first, so a failed write
+     * leaves the store as it was. Must run on the thread that owns the store.
+     */
+    static Result commit(Batch batch, ExpenseStore store, StorageBackend journal) throws IOException {
+        // Older years the batch falls in must be in memory, both to find duplicates and to gain rows
+        int[] days = dayRange(batch);
+        if (days != null) journal.ensureLoaded(store, days[0], days[1]);
+        Staged staged = stage(batch, store, journal);
+        journal.appendAdds(staged.rows, 0, staged.rows.size());
+        return publish(staged, store);
+    }
+
+    /** Content hash of an entry, shared by parsed rows and stored rows. */
+    static long rowHash(long descriptionHash, long amountMinor, String currency, int epochDay, String category) {
+        long h = descriptionHash;
+        h = mix(h ^ amountMinor);
+        h = mix(h ^ currency.hashCode());
+        h = mix(h ^ epochDay);
+        h = mix(h ^ category.hashCode());
+        // Long.MIN_VALUE is the empty-slot marker in LongIntMap
+        return h == Long.MIN_VALUE ? h + 1 : h;
+    }
+
+    private static LongIntMap existingHashes(ExpenseStore store) {
+        LongIntMap counts = new LongIntMap();
+        byte[] scratch = new byte[256];
+        for (int row = 0; row < store.size(); row++) {
+            if (store.isDeleted(row)) continue;
+            int length = store.descriptionLengthAt(row);
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            store.copyDescription(row, scratch, 0);
+            long hash = rowHash(fnv(scratch, 0, length), store.amountAt(row), store.currencyAt(row),
+                    store.epochDayAt(row), store.categoryAt(row));
+            int count = counts.get(hash);
+            counts.put(hash, count < 0 ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    /** Position just past the first record boundary at or after {@code from}, scanning from {@code from - 1}. */
+    private static int firstRecordAfter(MappedByteBuffer buffer, int from, int to, boolean inQuotes) {
+        // Parity was computed for position "from"; step back one byte so a
+        // record starting exactly at "from" is not skipped
+        int i = from - 1;
+        if (buffer.get(i) == '"') inQuotes = !inQuotes;
+        for (; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') inQuotes = !inQuotes;
+            else if (b == '\n' && !inQuotes) return i + 1;
+        }
+        return buffer.limit();
+    }
+
+    private static Chunk parseRange(MappedByteBuffer buffer, int limit, ImportSchema schema, int[] columns, int from, int to) {
+        Chunk chunk = new Chunk();
+        RecordParser parser = new RecordParser(buffer, schema.delimiter, limit);
+        int descriptionColumn = columns[0], amountColumn = columns[1], categoryColumn = columns[2], dateColumn = columns[3];
+        int currencyColumn = columns[4];
+        int pos = from;
+        while (pos < to) {
+            pos = parser.parse(pos);
+            if (parser.isBlank()) continue;
+            if (descriptionColumn >= parser.fieldCount || amountColumn >= parser.fieldCount
+                    || dateColumn >= parser.fieldCount || categoryColumn >= parser.fieldCount) {
+                chunk.rejected++;
+                continue;
+            }
+            try {
+                long amount = parser.amount(amountColumn);
+                if (schema.debitsNegative) amount = -amount;
+                if (amount <= 0) {
+                    chunk.rejected++;
+                    continue;
+                }
+                int day = schema.datePattern == null ? parser.isoDay(dateColumn)
+                        : (int) LocalDate.parse(parser.text(dateColumn), schema.datePattern).toEpochDay();
+                String description = parser.text(descriptionColumn);
+                if (description.isEmpty() || description.length() > Expense.MAX_DESCRIPTION_LENGTH) {
+                    chunk.rejected++;
+                    continue;
+                }
+                long descriptionHash = parser.lastTextHash();
+                String category = categoryColumn == ImportSchema.NONE ? "" : parser.text(categoryColumn);
+                if (category.isEmpty()) category = schema.defaultCategory;
+                if (category.length() > Expense.MAX_CATEGORY_LENGTH) {
+                    chunk.rejected++;
+                    continue;
+                }
+                // The currency column is optional per row, so Export CSV files from before it still import
+                String currency = schema.defaultCurrency;
+                if (currencyColumn != ImportSchema.NONE && currencyColumn < parser.fieldCount) {
+                    String code = parser.text(currencyColumn);
+                    if (!code.isEmpty()) currency = FxRates.normalize(code);
+                }
+                chunk.add(description, amount, currency, category, day,
+                        rowHash(descriptionHash, amount, currency, day, category));
+            } catch (RuntimeException e) {
+                // Unparseable amount or date: count it and keep going
+                chunk.rejected++;
+            }
+        }
+        return chunk;
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+    }
+
+    static long fnv(byte[] bytes, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Splits one record into field byte ranges without copying. */
+    private static final class RecordParser {
+        private final MappedByteBuffer buffer;
+        private final byte delimiter;
+        private final int limit;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private boolean[] escaped = new boolean[8];
+        private byte[] scratch = new byte[256];
+        private int lastTextLength;
+        int fieldCount;
+
+        RecordParser(MappedByteBuffer buffer, char delimiter, int limit) {
+            this.buffer = buffer;
+            this.delimiter = (byte) delimiter;
+            this.limit = limit;
+        }
+
+        /** Parses the record at {@code pos}; returns the position after its line break. */
+        int parse(int pos) {
+            fieldCount = 0;
+            while (true) {
+                int start;
+                int end;
+                boolean hasEscapes = false;
+                if (pos < limit && buffer.get(pos) == '"') {
+                    start = ++pos;
+                    while (true) {
+                        if (pos >= limit) {
+                            end = pos;
+                            break;
+                        }
+                        if (buffer.get(pos) == '"') {
+                            if (pos + 1 < limit && buffer.get(pos + 1) == '"') {
+                                hasEscapes = true;
+                                pos += 2;
+                                continue;
+                            }
+                            end = pos++;
+                            break;
+                        }
+                        pos++;
+                    }
+                    // Ignore anything between the closing quote and the delimiter
+                    while (pos < limit && buffer.get(pos) != delimiter && buffer.get(pos) != '\n') pos++;
+                } else {
+                    start = pos;
+                    while (pos < limit && buffer.get(pos) != delimiter && buffer.get(pos) != '\n') pos++;
+                    end = pos;
+                    while (end > start && isSpace(buffer.get(end - 1))) end--;
+                    while (start < end && isSpace(buffer.get(start))) start++;
+                }
+                addField(start, end, hasEscapes);
+                if (pos >= limit) return limit;
+                byte b = buffer.get(pos++);
+                if (b == '\n') return pos;
+            }
+        }
+
+        boolean isBlank() {
+            return fieldCount == 1 && starts[0] == ends[0];
+        }
+
+        String text(int field) {
+            int length = copy(field);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /** FNV hash of the UTF-8 bytes of the last field returned by {@link #text}. */
+        long lastTextHash() {
+            return fnv(scratch, 0, lastTextLength);
+        }
+
+        /**
+         * Parses "1,234.50", "-12", "(12.00)" or "Rs. 40" into paise. Digits past
+         * the second decimal place are dropped.
+         */
+        long amount(int field) {
+            boolean negative = false;
+            boolean digits = false;
+            boolean fraction = false;
+            int fractionDigits = 0;
+            long value = 0;
+            int end = ends[field];
+            for (int i = starts[field]; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    if (fraction) {
+                        if (fractionDigits == 2) continue;
+                        fractionDigits++;
+                    }
+                    value = Math.addExact(Math.multiplyExact(value, 10), b - '0');
+                    digits = true;
+                } else if (b == '.' && !fraction && (digits || (i == starts[field] || !isPrefixByte(buffer.get(i - 1)))
+                        && i + 1 < end && isDigit(buffer.get(i + 1)))) {
+                    // Before any digit only a bare ".5" is a fraction; the dot of "Rs.40" ends the prefix
+                    fraction = true;
+                } else if (b == '-' || b == '(') {
+                    negative = true;
+                } else if (b == ',' && digits || b == ' ' || b == ')') {
+                    // Thousands separators and padding
+                } else if (!digits && (b == '.' || isPrefixByte(b))) {
+                    // Currency prefixes such as "Rs." or the UTF-8 bytes of "₹"
+                } else {
+                    throw new NumberFormatException("Bad amount");
+                }
+            }
+            if (!digits) throw new NumberFormatException("Missing amount");
+            for (; fractionDigits < 2; fractionDigits++) value *= 10;
+            return negative ? -value : value;
+        }
+
+        /** Parses yyyy-MM-dd without allocating a String. */
+        int isoDay(int field) {
+            int s = starts[field];
+            if (ends[field] - s != 10 || buffer.get(s + 4) != '-' || buffer.get(s + 7) != '-') {
+                throw new IllegalArgumentException("Bad date");
+            }
+            int year = digits(s, 4);
+            int month = digits(s + 5, 2);
+            int day = digits(s + 8, 2);
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        }
+
+        private int digits(int pos, int count) {
+            int value = 0;
+            for (int i = pos; i < pos + count; i++) {
+                int d = buffer.get(i) - '0';
+                if (d < 0 || d > 9) throw new IllegalArgumentException("Bad date");
+                value = value * 10 + d;
+            }
+            return value;
+        }
+
+        private int copy(int field) {
+            int length = ends[field] - starts[field];
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            buffer.get(starts[field], scratch, 0, length);
+            if (escaped[field]) {
+                // Collapse doubled quotes so the hash matches the stored bytes
+                int n = 0;
+                for (int i = 0; i < length; i++) {
+                    scratch[n++] = scratch[i];
+                    if (scratch[i] == '"' && i + 1 < length && scratch[i + 1] == '"') i++;
+                }
+                length = n;
+            }
+            lastTextLength = length;
+            return length;
+        }
+
+        private void addField(int start, int end, boolean hasEscapes) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+                escaped = Arrays.copyOf(escaped, fieldCount * 2);
+            }
+            if (end > start && buffer.get(end - 1) == '\r') end--;
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            escaped[fieldCount] = hasEscapes;
+            fieldCount++;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        /** A letter of a currency prefix such as "Rs", or a UTF-8 byte of one such as "₹". */
+        private static boolean isPrefixByte(byte b) {
+            return b < 0 || Character.isLetter(b);
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/**
+ * Secondary indexes over an {@link ExpenseStore} for filtered queries.
+ *
+ * A date index keeps row numbers sorted by epoch day, so a range is two
+ * binary searches; a {@link RowBitmap} per category holds its rows. The
+ * indexes are built on the first query and then kept current by the store
+ * on every insert, so stores that are never queried (such as the loader's
+ * staging store) pay nothing.
+ */
+class ExpenseIndex {
+    private final ExpenseStore store;
+    private boolean built;
+
+    // Parallel arrays sorted by (day, row)
+    private int[] sortedDays = new int[0];
+    private int[] sortedRows = new int[0];
+    private int count;
+
+    private RowBitmap[] byCategory = new RowBitmap[0];
+
+    ExpenseIndex(ExpenseStore store) {
+        this.store = store;
+    }
+
+    /** Drops the indexes; they are rebuilt on the next query. */
+    void invalidate() {
+        built = false;
+        sortedDays = new int[0];
+        sortedRows = new int[0];
+        count = 0;
+        byCategory = new RowBitmap[0];
+    }
+
+    void rowAdded(int row) {
+        if (!built) return;
+        insertByDay(store.epochDayAt(row), row);
+        categoryBitmap(store.categoryIdAt(row)).add(row);
+    }
+
+    /** Call before a row's day or category is overwritten, or when it is deleted. */
+    void rowChanging(int row) {
+        if (!built) return;
+        int day = store.epochDayAt(row);
+        int pos = lowerBound(day);
+        while (pos < count && sortedDays[pos] == day && sortedRows[pos] != row) pos++;
+        if (pos < count && sortedRows[pos] == row) {
+            System.arraycopy(sortedDays, pos + 1, sortedDays, pos, count - pos - 1);
+            System.arraycopy(sortedRows, pos + 1, sortedRows, pos, count - pos - 1);
+            count--;
+        }
+        categoryBitmap(store.categoryIdAt(row)).remove(row);
+    }
+
+    /** Rows matching {@code filter}, in ascending row order. */
+    int[] query(ExpenseFilter filter) {
+        ensureBuilt();
+        int lo = 0;
+        int hi = count;
+        if (filter.hasDateRange()) {
+            lo = lowerBound(filter.fromDay);
+            hi = filter.toDay == Integer.MAX_VALUE ? count : lowerBound(filter.toDay + 1);
+        }
+        RowBitmap categoryRows = null;
+        if (filter.hasCategory()) {
+            int categoryId = store.categoryIdOf(filter.category);
+            if (categoryId < 0 || categoryId >= byCategory.length || byCategory[categoryId] == null) return new int[0];
+            categoryRows = byCategory[categoryId];
+        }
+
+        if (categoryRows != null && categoryRows.cardinality() <= hi - lo) {
+            // Category is the more selective side: walk its rows, test the date
+            int[] rows = new int[categoryRows.cardinality()];
+            categoryRows.toArray(rows);
+            if (!filter.hasDateRange()) return rows;
+            int n = 0;
+            for (int row : rows) {
+                int day = store.epochDayAt(row);
+                if (day >= filter.fromDay && day <= filter.toDay) rows[n++] = row;
+            }
+            return Arrays.copyOf(rows, n);
+        }
+
+        int[] rows = new int[hi - lo];
+        int n = 0;
+        for (int i = lo; i < hi; i++) {
+            int row = sortedRows[i];
+            if (categoryRows == null || categoryRows.contains(row)) rows[n++] = row;
+        }
+        return toRowOrder(rows, n);
+    }
+
+    private void ensureBuilt() {
+        if (built) return;
+        int size = store.size();
+        long[] keyed = new long[store.liveCount()];
+        int live = 0;
+        for (int row = 0; row < size; row++) {
+            // Pack (day, row) so one primitive sort orders by day, then row
+            if (!store.isDeleted(row)) keyed[live++] = ((long) store.epochDayAt(row) << 32) | row;
+        }
+        Arrays.sort(keyed, 0, live);
+        sortedDays = new int[Math.max(live, 16)];
+        sortedRows = new int[Math.max(live, 16)];
+        for (int i = 0; i < live; i++) {
+            sortedDays[i] = (int) (keyed[i] >> 32);
+            sortedRows[i] = (int) keyed[i];
+        }
+        count = live;
+        byCategory = new RowBitmap[store.categoryCount()];
+        for (int row = 0; row < size; row++) {
+            if (!store.isDeleted(row)) categoryBitmap(store.categoryIdAt(row)).add(row);
+        }
+        built = true;
+    }
+
+    private RowBitmap categoryBitmap(int categoryId) {
+        if (categoryId >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, Math.max(categoryId + 1, byCategory.length * 2));
+        }
+        RowBitmap bitmap = byCategory[categoryId];
+        if (bitmap == null) {
+            bitmap = new RowBitmap();
+            byCategory[categoryId] = bitmap;
+        }
+        return bitmap;
+    }
+
+    private void insertByDay(int day, int row) {
+        if (count == sortedDays.length) {
+            int capacity = Math.max(16, count * 2);
+            sortedDays = Arrays.copyOf(sortedDays, capacity);
+            sortedRows = Arrays.copyOf(sortedRows, capacity);
+        }
+        // Goes after every entry of the same day; right for new rows, and order
+        // within a day does not matter to queries for a revived one
+        int pos = count > 0 && sortedDays[count - 1] <= day ? count : lowerBound(day + 1);
+        System.arraycopy(sortedDays, pos, sortedDays, pos + 1, count - pos);
+        System.arraycopy(sortedRows, pos, sortedRows, pos + 1, count - pos);
+        sortedDays[pos] = day;
+        sortedRows[pos] = row;
+        count++;
+    }
+
+    /** First position whose day is >= {@code day}. */
+    private int lowerBound(int day) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedDays[mid] < day) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int[] toRowOrder(int[] rows, int n) {
+        int size = store.size();
+        if (n > size / 64) {
+            // Dense result: a bitset pass beats sorting
+            long[] bits = new long[(size + 63) >>> 6];
+            for (int i = 0; i < n; i++) bits[rows[i] >>> 6] |= 1L << rows[i];
+            int pos = 0;
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    rows[pos++] = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        } else {
+            Arrays.sort(rows, 0, n);
+        }
+        return n == rows.length ? rows : Arrays.copyOf(rows, n);
+    }
+}
@@ -0,0 +1,725 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for the expense ledger.
+ *
+ * Every add/edit/delete is appended as one small framed record
+ * ([length][crc32][payload]), so saving an expense costs a single append no
+ * matter how large the ledger is. A background thread fsyncs pending records
+ * in batches and, once the journal grows past a threshold, compacts the
+ * state into columnar {@link LedgerFile} snapshots. Replay at startup stops
+ * at the first torn or corrupt record, so a crash mid-append loses at most
+ * that record.
+ *
+ * Snapshots are split into one segment per year, listed in a
+ * {@link SegmentManifest} with each year's totals. Startup reads only the
+ * last {@link #RECENT_YEARS} years; older ones count towards totals from
+ * the manifest and are read on demand by {@link #ensureLoaded} or
+ * {@link #loadOlder}. Once loaded years outgrow
+ * {@link #RESIDENT_BUDGET_BYTES}, the least recently used unchanged ones
+ * are dropped from memory again. Compaction rewrites only the years that
+ * changed, so startup time and heap track recent history, not all of it.
+ */
+class ExpenseJournal implements StorageBackend {
+    static final byte DELETE = 3;
+    static final byte ADD = 4;
+    static final byte EDIT = 5;
+    // ADD and EDIT followed by the currency; rupee rows keep the shorter forms
+    static final byte ADD_CURRENCY = 6;
+    static final byte EDIT_CURRENCY = 7;
+
+    private static final long SYNC_INTERVAL_MS = 250;
+    private static final long COMPACT_THRESHOLD_BYTES = 4L * 1024 * 1024;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    static final int RECENT_YEARS = 2;
+    static final long RESIDENT_BUDGET_BYTES = 256L << 20;
+    // Rough heap cost of one row's columns and id map entry, descriptions aside
+    private static final int ROW_BYTES = 64;
+
+    /** One year of the ledger and whether its rows are in memory. */
+    private static final class Segment {
+        final int year;
+        // The year's file as of the last compaction; null until one writes it
+        SegmentManifest.Entry entry;
+        boolean resident;
+        // Memory holds changes the file does not
+        boolean dirty;
+        boolean writing;
+        // The entry's totals stand in for the rows in the store's aggregates
+        boolean totalsApplied;
+        long lastUsed;
+
+        Segment(int year) {
+            this.year = year;
+        }
+    }
+
+    private final Path directory;
+    private final String baseName;
+    private final Path manifestFile;
+    private final Path journalFile;
+    private final Path rotatedFile;
+    private final ScheduledExecutorService worker;
+
+    // Reused for every append, guarded by "this"
+    private final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream payload = new DataOutputStream(payloadBytes);
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private volatile FailureListener failureListener = (action, e) -> System.err.println(action + " failed: " + e);
+    private long nextId = 1;
+    private volatile boolean syncPending;
+    private volatile boolean compacting;
+    private boolean recoveredRotation;
+
+    // Guarded by this
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private long generation;
+    private long useClock;
+    private int olderCursor = Integer.MAX_VALUE;
+    private long bytesRead;
+    // Segment files read ahead by prefetch, by name, until the next load takes or drops them
+    private final HashMap<String, LedgerFile.Contents> prefetched = new HashMap<>();
+
+    ExpenseJournal(File directory, String baseName) {
+        Path dir = directory.toPath();
+        this.directory = dir;
+        this.baseName = baseName;
+        this.manifestFile = dir.resolve(baseName + ".manifest");
+        this.journalFile = dir.resolve(baseName + ".journal");
+        this.rotatedFile = dir.resolve(baseName + ".journal.1");
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "expense-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** True if neither a manifest nor a journal exists yet. */
+    @Override
+    public boolean isEmpty() {
+        return !Files.exists(manifestFile) && !Files.exists(journalFile) && !Files.exists(rotatedFile);
+    }
+
+    /**
+     * Replays every segment and the journal into {@code state} and opens the
+     * journal for appending. Must be called once before any append.
+     */
+    synchronized void open(ExpenseStore state) throws IOException {
+        open(state, true);
+    }
+
+    /**
+     * Reads the recent segments and replays the journal. Files are replayed in
+     * one pass; {@code progress} is not called and the caller publishes the
+     * rows afterwards.
+     */
+    @Override
+    public synchronized void open(ExpenseStore state, java.util.function.IntConsumer progress) throws IOException {
+        open(state, false);
+    }
+
+    private void open(ExpenseStore state, boolean allSegments) throws IOException {
+        PerfEvents.Load event = new PerfEvents.Load("startup");
+        int rowsBefore = state.liveCount();
+        long bytesBefore = bytesRead;
+        if (Files.exists(manifestFile)) {
+            readManifest(state, allSegments);
+        }
+        if (Files.exists(rotatedFile)) {
+            // A previous compaction did not finish; its records are still authoritative
+            replay(rotatedFile, state);
+            recoveredRotation = true;
+        }
+        long validLength = Files.exists(journalFile) ? replay(journalFile, state) : 0;
+
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            // Drop a torn tail so new records are not appended after garbage
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+        channel.position(validLength);
+        event.rows = state.liveCount() - rowsBefore;
+        event.bytes = bytesRead - bytesBefore;
+        event.finish();
+
+        worker.scheduleWithFixedDelay(this::syncIfPending, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** True when startup found an interrupted compaction to finish. */
+    @Override
+    public boolean needsCompaction() {
+        return recoveredRotation;
+    }
+
+    @Override
+    public synchronized long allocateId() {
+        return nextId++;
+    }
+
+    @Override
+    public synchronized long allocateIds(int count) {
+        long first = nextId;
+        nextId += count;
+        return first;
+    }
+
+    @Override
+    public synchronized void appendAdd(Expense exp) throws IOException {
+        changed((int) exp.getDate().toEpochDay());
+        appendRecord(ADD, exp.getId(), exp);
+    }
+
+    @Override
+    public synchronized void appendEdit(Expense before, Expense after) throws IOException {
+        changed((int) before.getDate().toEpochDay());
+        changed((int) after.getDate().toEpochDay());
+        appendRecord(EDIT, after.getId(), after);
+    }
+
+    @Override
+    public synchronized void appendDelete(Expense exp) throws IOException {
+        changed((int) exp.getDate().toEpochDay());
+        appendRecord(DELETE, exp.getId(), null);
+    }
+
+    private void appendRecord(byte type, long id, Expense exp) throws IOException {
+        payloadBytes.reset();
+        writePayload(payload, type, id, exp);
+        channel.write(frame(payloadBytes.toByteArray(), crc));
+        syncPending = true;
+    }
+
+    /**
+     * Appends ADD records for the live rows among {@code [from, to)} of
+     * {@code state} with one write per megabyte instead of one per record.
+     */
+    @Override
+    public synchronized void appendAdds(ExpenseStore state, int from, int to) throws IOException {
+        // Every year first, so a year that is not loaded fails the batch before any of it is written
+        int lastYear = Integer.MIN_VALUE;
+        for (int row = from; row < to; row++) {
+            if (state.isDeleted(row)) continue;
+            int year = yearOf(state.epochDayAt(row));
+            if (year != lastYear) {
+                changed(state.epochDayAt(row));
+                lastYear = year;
+            }
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(1 << 20);
+        for (int row = from; row < to; row++) {
+            if (state.isDeleted(row)) continue;
+            boolean base = state.currencyIdAt(row) == 0;
+            payloadBytes.reset();
+            payload.writeByte(base ? ADD : ADD_CURRENCY);
+            payload.writeLong(state.idAt(row));
+            payload.writeLong(state.amountAt(row));
+            payload.writeInt(state.epochDayAt(row));
+            payload.writeUTF(state.categoryAt(row));
+            payload.writeUTF(state.descriptionAt(row));
+            if (!base) payload.writeUTF(state.currencyAt(row));
+            payload.flush();
+            ByteBuffer record = frame(payloadBytes.toByteArray(), crc);
+            batch.write(record.array(), 0, record.limit());
+            if (batch.size() >= 1 << 20) {
+                ByteBuffer out = ByteBuffer.wrap(batch.toByteArray());
+                while (out.hasRemaining()) channel.write(out);
+                batch.reset();
+            }
+        }
+        ByteBuffer out = ByteBuffer.wrap(batch.toByteArray());
+        while (out.hasRemaining()) channel.write(out);
+        syncPending = true;
+    }
+
+    /**
+     * Starts a background compaction if the journal has outgrown the threshold
+     * (or startup recovered an unfinished one). The supplier is invoked on the
+     * calling thread to capture a consistent copy of the current state.
+     */
+    @Override
+    public void maybeCompact(java.util.function.Supplier<ExpenseStore> stateSupplier) {
+        if (compacting) return;
+        try {
+            if (!recoveredRotation && channel.size() < COMPACT_THRESHOLD_BYTES) return;
+            compactNow(stateSupplier.get());
+        } catch (IOException e) {
+            failureListener.failed("Compacting the journal", e);
+        }
+    }
+
+    /**
+     * Rotates the live journal aside and writes the changed years of
+     * {@code state} as new segments on the background thread. Records
+     * appended after this call go to a fresh journal, so the manifest plus
+     * the new journal always describe the ledger.
+     */
+    @Override
+    public void compactNow(ExpenseStore state) throws IOException {
+        if (compacting) return;
+        compacting = true;
+        long idWatermark;
+        long nextGeneration;
+        List<Integer> years = new ArrayList<>();
+        synchronized (this) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                compacting = false;
+                throw e;
+            }
+            idWatermark = nextId;
+            nextGeneration = generation + 1;
+            for (Segment seg : segments.values()) {
+                if (!seg.dirty) continue;
+                seg.dirty = false;
+                seg.writing = true;
+                years.add(seg.year);
+            }
+        }
+        worker.execute(() -> {
+            try {
+                writeSegments(state, years, idWatermark, nextGeneration);
+                Files.deleteIfExists(rotatedFile);
+                deleteUnlistedSegments();
+                recoveredRotation = false;
+            } catch (IOException e) {
+                // Leave the rotated journal in place; it is replayed on next start
+                failureListener.failed("Compacting the journal", e);
+                synchronized (this) {
+                    for (int year : years) {
+                        Segment seg = segments.get(year);
+                        seg.writing = false;
+                        seg.dirty = true;
+                    }
+                }
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    /**
+     * Loads the years overlapping {@code [fromDay, toDay]} that are still on
+     * disk, then drops least recently used years if memory is over budget.
+     */
+    @Override
+    public synchronized boolean ensureLoaded(ExpenseStore state, int fromDay, int toDay) throws IOException {
+        return loadRanges(state, fromDay, toDay);
+    }
+
+    /**
+     * Loads the years holding {@code epochDays} under one use stamp, so the
+     * trim that follows keeps all of them, not only the last one read.
+     */
+    @Override
+    public synchronized boolean ensureDaysLoaded(ExpenseStore state, int... epochDays) throws IOException {
+        int[] bounds = new int[epochDays.length * 2];
+        for (int i = 0; i < epochDays.length; i++) {
+            bounds[2 * i] = epochDays[i];
+            bounds[2 * i + 1] = epochDays[i];
+        }
+        return loadRanges(state, bounds);
+    }
+
+    /**
+     * Reads the files of years overlapping {@code [fromDay, toDay]} that are
+     * still on disk, outside the monitor, so that appends carry on meanwhile.
+     * May be called from any thread; the next load takes the rows from here.
+     */
+    @Override
+    public void prefetch(int fromDay, int toDay) throws IOException {
+        List<String> files = new ArrayList<>();
+        synchronized (this) {
+            for (Segment seg : segments.values()) {
+                if (seg.resident || firstDay(seg.year) > toDay || firstDay(seg.year + 1) <= fromDay) continue;
+                if (!prefetched.containsKey(seg.entry.file)) files.add(seg.entry.file);
+            }
+        }
+        for (String file : files) {
+            LedgerFile.Contents ledger = LedgerFile.read(directory.resolve(file));
+            synchronized (this) {
+                prefetched.put(file, ledger);
+            }
+        }
+    }
+
+    /** Loads the years overlapping each {@code [from, to]} pair of {@code bounds}, then trims once. */
+    private boolean loadRanges(ExpenseStore state, int... bounds) throws IOException {
+        long use = ++useClock;
+        PerfEvents.Load event = null;
+        long bytesBefore = bytesRead;
+        for (Segment seg : segments.values()) {
+            boolean overlaps = false;
+            for (int i = 0; i < bounds.length && !overlaps; i += 2) {
+                overlaps = firstDay(seg.year) <= bounds[i + 1] && firstDay(seg.year + 1) > bounds[i];
+            }
+            if (!overlaps) continue;
+            if (!seg.resident) {
+                if (event == null) event = new PerfEvents.Load("history");
+                load(state, seg);
+                event.rows += seg.entry.rows;
+            }
+            seg.lastUsed = use;
+        }
+        prefetched.clear();
+        if (event == null) return false;
+        trim(state, use);
+        event.bytes = bytesRead - bytesBefore;
+        event.finish();
+        return true;
+    }
+
+    /**
+     * Walks back a year at a time from the newest and loads the first year
+     * still on disk. Years passed once are not revisited, so years dropped
+     * from memory meanwhile are not read again by this.
+     */
+    @Override
+    public synchronized boolean loadOlder(ExpenseStore state) throws IOException {
+        while (true) {
+            Map.Entry<Integer, Segment> older = segments.lowerEntry(olderCursor);
+            if (older == null) return false;
+            Segment seg = older.getValue();
+            olderCursor = seg.year;
+            if (seg.resident) continue;
+            PerfEvents.Load event = new PerfEvents.Load("history");
+            long bytesBefore = bytesRead;
+            load(state, seg);
+            seg.lastUsed = ++useClock;
+            trim(state, seg.lastUsed);
+            event.rows = seg.entry.rows;
+            event.bytes = bytesRead - bytesBefore;
+            event.finish();
+            return true;
+        }
+    }
+
+    /** Adds the manifest totals of the years left on disk to {@code state}. */
+    @Override
+    public synchronized void attach(ExpenseStore state) {
+        for (Segment seg : segments.values()) {
+            if (seg.resident || seg.totalsApplied) continue;
+            state.applyTotals(1, seg.entry);
+            seg.totalsApplied = true;
+        }
+    }
+
+    @Override
+    public void setFailureListener(FailureListener listener) {
+        failureListener = listener;
+    }
+
+    /** Flushes pending records to disk and stops the background thread. */
+    @Override
+    public void close() throws IOException {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel == null) return;
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private void syncIfPending() {
+        if (!syncPending) return;
+        syncPending = false;
+        try {
+            FileChannel ch;
+            synchronized (this) {
+                ch = channel;
+            }
+            if (ch != null && ch.isOpen()) ch.force(false);
+        } catch (java.nio.channels.ClosedChannelException e) {
+            // Rotated or closed concurrently; both force the channel themselves
+        } catch (IOException e) {
+            // Retried on the next tick; the records stay in the page cache meanwhile
+            syncPending = true;
+            failureListener.failed("Syncing the journal", e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        if (Files.exists(rotatedFile)) {
+            // An earlier compaction failed; keep its records and chain ours after them
+            try (FileChannel src = FileChannel.open(journalFile, StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(rotatedFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                src.transferTo(0, src.size(), dst);
+                dst.force(true);
+            }
+            Files.delete(journalFile);
+        } else {
+            Files.move(journalFile, rotatedFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        syncPending = false;
+    }
+
+    /**
+     * Writes each of {@code years} from {@code state} to a file of the new
+     * generation, then swaps in a manifest listing them. Files of earlier
+     * generations stay valid until the swap, so a crash at any point leaves a
+     * readable ledger.
+     */
+    private void writeSegments(ExpenseStore state, List<Integer> years, long idWatermark, long gen) throws IOException {
+        PerfEvents.Save event = new PerfEvents.Save(manifestFile.getFileName().toString());
+        Map<Integer, int[]> rowsByYear = new HashMap<>();
+        int[] counts = new int[years.size()];
+        for (int row = 0; row < state.size(); row++) {
+            if (state.isDeleted(row)) continue;
+            int k = years.indexOf(yearOf(state.epochDayAt(row)));
+            if (k >= 0) counts[k]++;
+        }
+        for (int k = 0; k < counts.length; k++) rowsByYear.put(years.get(k), new int[counts[k]]);
+        Arrays.fill(counts, 0);
+        for (int row = 0; row < state.size(); row++) {
+            if (state.isDeleted(row)) continue;
+            int k = years.indexOf(yearOf(state.epochDayAt(row)));
+            if (k >= 0) rowsByYear.get(years.get(k))[counts[k]++] = row;
+        }
+
+        Map<Integer, SegmentManifest.Entry> written = new HashMap<>();
+        for (int k = 0; k < counts.length; k++) {
+            int year = years.get(k);
+            int[] rows = rowsByYear.get(year);
+            if (rows.length == 0) {
+                written.put(year, null);
+                continue;
+            }
+            String name = baseName + "-" + year + "." + gen + ".ledger";
+            Path temp = directory.resolve(name + ".tmp");
+            LedgerFile.write(temp, state, rows, rows.length, idWatermark);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written.put(year, SegmentManifest.Entry.of(year, name, state, rows, rows.length));
+            event.rows += rows.length;
+            event.bytes += Files.size(directory.resolve(name));
+        }
+
+        SegmentManifest manifest;
+        synchronized (this) {
+            for (int year : years) {
+                Segment seg = segments.get(year);
+                seg.writing = false;
+                seg.entry = written.get(year);
+                // A year emptied by deletes is dropped, unless rows arrived since
+                if (seg.entry == null && !seg.dirty) segments.remove(year);
+            }
+            List<SegmentManifest.Entry> entries = new ArrayList<>();
+            for (Segment seg : segments.values()) if (seg.entry != null) entries.add(seg.entry);
+            manifest = new SegmentManifest(idWatermark, gen, entries);
+            generation = gen;
+        }
+        manifest.write(manifestFile);
+        event.bytes += Files.size(manifestFile);
+        event.finish();
+    }
+
+    /** Removes segment files the manifest no longer lists, e.g. earlier generations. */
+    private void deleteUnlistedSegments() throws IOException {
+        Set<String> listed = new HashSet<>();
+        synchronized (this) {
+            for (Segment seg : segments.values()) if (seg.entry != null) listed.add(seg.entry.file);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, baseName + "-*.ledger*")) {
+            for (Path file : files) {
+                if (!listed.contains(file.getFileName().toString())) Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void readManifest(ExpenseStore state, boolean allSegments) throws IOException {
+        SegmentManifest manifest = SegmentManifest.read(manifestFile);
+        nextId = Math.max(nextId, manifest.nextId);
+        generation = manifest.generation;
+        int recent = yearOf((int) LocalDate.now().toEpochDay()) - RECENT_YEARS + 1;
+        for (SegmentManifest.Entry entry : manifest.entries) {
+            Segment seg = new Segment(entry.year);
+            seg.entry = entry;
+            segments.put(entry.year, seg);
+            if (allSegments || entry.year >= recent) load(state, seg);
+        }
+    }
+
+    /** Reads one year's file into {@code state} in place of its manifest totals. */
+    private void load(ExpenseStore state, Segment seg) throws IOException {
+        Path file = directory.resolve(seg.entry.file);
+        // A compaction never rewrites a year that is not loaded, so a prefetched file is still current
+        LedgerFile.Contents ledger = prefetched.remove(seg.entry.file);
+        if (ledger == null) ledger = LedgerFile.read(file);
+        bytesRead += Files.size(file);
+        if (seg.totalsApplied) state.applyTotals(-1, seg.entry);
+        seg.totalsApplied = false;
+        state.appendAll(ledger);
+        nextId = Math.max(nextId, ledger.nextId);
+        seg.resident = true;
+    }
+
+    /**
+     * Drops unchanged years from {@code state}, least recently used first,
+     * until the rest fit {@link #RESIDENT_BUDGET_BYTES}. Recent years and
+     * years used at or after {@code keepUse} stay.
+     */
+    private void trim(ExpenseStore state, long keepUse) {
+        long bytes = 0;
+        for (Segment seg : segments.values()) if (seg.resident) bytes += residentBytes(seg);
+        int recent = yearOf((int) LocalDate.now().toEpochDay()) - RECENT_YEARS + 1;
+        while (bytes > RESIDENT_BUDGET_BYTES) {
+            Segment victim = null;
+            for (Segment seg : segments.values()) {
+                if (!seg.resident || seg.dirty || seg.writing || seg.entry == null
+                        || seg.year >= recent || seg.lastUsed >= keepUse) continue;
+                if (victim == null || seg.lastUsed < victim.lastUsed) victim = seg;
+            }
+            if (victim == null) return;
+            state.deleteBetween(firstDay(victim.year), firstDay(victim.year + 1) - 1);
+            state.applyTotals(1, victim.entry);
+            victim.totalsApplied = true;
+            victim.resident = false;
+            bytes -= residentBytes(victim);
+        }
+    }
+
+    private static long residentBytes(Segment seg) {
+        return seg.entry == null ? 0 : (long) seg.entry.rows * ROW_BYTES + seg.entry.heapBytes;
+    }
+
+    /** Marks the year holding {@code epochDay} as changed in memory. */
+    private void changed(int epochDay) {
+        int year = yearOf(epochDay);
+        Segment seg = segments.get(year);
+        if (seg == null) {
+            // A year with no file yet lives only in memory
+            seg = new Segment(year);
+            seg.resident = true;
+            segments.put(year, seg);
+        } else if (!seg.resident) {
+            // Writing it would lose the rows still on disk at the next compaction
+            throw new IllegalStateException(year + " is not loaded; call ensureLoaded before changing it");
+        }
+        seg.dirty = true;
+    }
+
+    /**
+     * Before replaying a record for {@code id}: loads any year on disk that
+     * may hold the row, and marks the row's current year as changed.
+     */
+    private void changing(ExpenseStore state, long id) throws IOException {
+        if (state.rowOf(id) < 0) {
+            for (Segment seg : segments.values()) {
+                if (!seg.resident && seg.entry.mayContain(id)) load(state, seg);
+            }
+        }
+        int row = state.rowOf(id);
+        if (row >= 0 && !state.isDeleted(row)) changed(state.epochDayAt(row));
+    }
+
+    private static int yearOf(int epochDay) {
+        return Math.floorDiv(ExpenseAggregates.monthIndexOfDay(epochDay), 12);
+    }
+
+    private static int firstDay(int year) {
+        return ExpenseAggregates.Resolution.YEAR.startDay(year);
+    }
+
+    /** Applies every intact record in {@code file}; returns the length of the valid prefix. */
+    private long replay(Path file, ExpenseStore state) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int consumed = readRecord(in, state);
+                if (consumed < 0) break;
+                valid += consumed;
+            }
+        }
+        bytesRead += valid;
+        return valid;
+    }
+
+    /** Reads and applies one framed record; returns bytes consumed, or -1 at end/torn tail. */
+    private int readRecord(DataInputStream in, ExpenseStore state) throws IOException {
+        int length;
+        int checksum;
+        byte[] body;
+        try {
+            length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) return -1;
+            checksum = in.readInt();
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException e) {
+            return -1;
+        }
+        crc.reset();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != checksum) return -1;
+
+        DataInputStream rec = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = rec.readByte();
+        long id = rec.readLong();
+        if (type == DELETE) {
+            changing(state, id);
+            state.delete(id);
+        } else if (type == ADD || type == EDIT || type == ADD_CURRENCY || type == EDIT_CURRENCY) {
+            long amount = rec.readLong();
+            int epochDay = rec.readInt();
+            String category = rec.readUTF();
+            String description = rec.readUTF();
+            String currency = type == ADD_CURRENCY || type == EDIT_CURRENCY ? rec.readUTF() : FxRates.BASE;
+            changing(state, id);
+            // The row's new year must be in memory too before it gains the row
+            Segment target = segments.get(yearOf(epochDay));
+            if (target != null && !target.resident) load(state, target);
+            changed(epochDay);
+            // Upsert keeps replay idempotent if a rotated journal overlaps the snapshot
+            state.put(id, description, amount, currency, category, epochDay);
+        } else {
+            return -1;
+        }
+        nextId = Math.max(nextId, id + 1);
+        return 8 + length;
+    }
+
+    private static void writePayload(DataOutputStream out, byte type, long id, Expense exp) throws IOException {
+        boolean base = exp == null || exp.getCurrency().equals(FxRates.BASE);
+        if (!base) type = type == ADD ? ADD_CURRENCY : EDIT_CURRENCY;
+        out.writeByte(type);
+        out.writeLong(id);
+        if (exp != null) {
+            out.writeLong(exp.getAmount().minor());
+            out.writeInt((int) exp.getDate().toEpochDay());
+            out.writeUTF(exp.getCategory());
+            out.writeUTF(exp.getDescription());
+            if (!base) out.writeUTF(exp.getCurrency());
+        }
+        out.flush();
+    }
+
+    private static ByteBuffer frame(byte[] body, CRC32 crc) {
+        crc.reset();
+        crc.update(body, 0, body.length);
+        ByteBuffer buf = ByteBuffer.allocate(8 + body.length);
+        buf.putInt(body.length).putInt((int) crc.getValue()).put(body);
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,970 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Struct-of-arrays expense storage.
+ *
+ * Each field lives in its own primitive column: {@code long} ids, {@code long}
+ * amounts in hundredths of the row's currency, {@code int} epoch days and
+ * {@code short} ids into interned category and currency dictionaries.
+ * Descriptions are UTF-8 bytes in a shared arena addressed by offset/length
+ * columns. Columns grow in fixed-size chunks, so appending never copies
+ * existing rows, and the aggregate helpers walk the chunks directly without
+ * allocating. Every mutation is mirrored into an {@link ExpenseAggregates}
+ * so totals never require a scan.
+ *
+ * A second amount column holds every amount converted to the display
+ * currency at the rate of its day. Totals, views and charts read that
+ * column, so they add like amounts whatever currencies the rows were
+ * spent in. {@link #setDisplayCurrency} rewrites it in one columnar pass
+ * and rebuilds the totals from it.
+ *
+ * Rows keep their slot for life. A delete only sets a tombstone bit and
+ * zeroes the amount, so column sums need no check. A row's id stays mapped
+ * to its slot, and putting the id again revives the row in place. Readers
+ * that walk rows skip {@link #isDeleted} ones, and {@link #liveRow} and
+ * {@link #liveOrdinal} translate between slots and positions among the
+ * live rows. Once tombstones make up a quarter of the rows, the next delete
+ * compacts the columns and renumbers the rows.
+ *
+ * The store has a single writer. Rows are written by one thread at a time,
+ * normally the EDT, and only that thread reads the live store. Other
+ * threads work on a {@link #snapshot}, which shares the column chunks
+ * instead of copying them. A chunk the writer must change in place (an
+ * overwrite or a delete) is cloned first if a snapshot still holds it.
+ * Appends fill slots past every snapshot's size and are never seen by
+ * one. The write lock only orders writes against taking a snapshot, so
+ * {@code snapshot()} can be called from any thread. Changes are published
+ * to {@link ChangeListener}s through the executor each one registers with.
+ * Writes made before the listener runs are merged into one {@link Change}.
+ */
+class ExpenseStore {
+    static final int CHUNK_BITS = 14;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int ARENA_BITS = 20;
+    private static final int ARENA_CHUNK = 1 << ARENA_BITS;
+    // Fewer tombstones than this are never worth a compaction
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    /** Callback for allocation-free iteration over rows. */
+    interface RowVisitor {
+        void visit(int row);
+    }
+
+    /** Subscriber to the change feed; see {@link #addChangeListener}. */
+    interface ChangeListener {
+        void storeChanged(Change change);
+    }
+
+    /** Everything written since the previous delivery to one listener. */
+    static final class Change {
+        /** Store size after the changes. */
+        final int size;
+        /** First appended row; equal to {@code size} if nothing was appended. */
+        final int appendedFrom;
+        /** Rows overwritten in place, {@code [updatedFrom, updatedTo)}; empty if none. */
+        final int updatedFrom, updatedTo;
+        /** How many deletes and revivals there were; {@code flippedRow} is the row of the last one. */
+        final int flips, flippedRow;
+        /** Tombstones were compacted away and rows renumbered; earlier row numbers are void. */
+        final boolean compacted;
+
+        Change(int size, int appendedFrom, int updatedFrom, int updatedTo, int flips, int flippedRow, boolean compacted) {
+            this.size = size;
+            this.appendedFrom = appendedFrom;
+            this.updatedFrom = updatedFrom;
+            this.updatedTo = updatedTo;
+            this.flips = flips;
+            this.flippedRow = flippedRow;
+            this.compacted = compacted;
+        }
+
+        boolean hasAppends() {
+            return appendedFrom < size;
+        }
+
+        boolean hasUpdates() {
+            return updatedFrom < updatedTo;
+        }
+    }
+
+    private long[][] ids = new long[0][];
+    private long[][] amounts = new long[0][];
+    private int[][] days = new int[0][];
+    private short[][] categories = new short[0][];
+    private short[][] currencies = new short[0][];
+    // Each amount in the display currency; the one the aggregates and views sum
+    private long[][] displayAmounts = new long[0][];
+    private long[][] descOffsets = new long[0][];
+    private int[][] descLengths = new int[0][];
+    // Tombstone bits per chunk, null until a row in the chunk is deleted
+    private long[][] deleted = new long[0][];
+    private int[] deletedInChunk = new int[0];
+    private int deletedCount;
+    private int size;
+    private final ExpenseAggregates aggregates = new ExpenseAggregates();
+    private final ExpenseIndex index = new ExpenseIndex(this);
+    private final DescriptionIndex search = new DescriptionIndex(this);
+
+    private byte[][] arena = new byte[0][];
+    private long arenaUsed;
+
+    private String[] categoryNames = new String[8];
+    private int categoryCount;
+    private final HashMap<String, Short> categoryIds = new HashMap<>();
+
+    // Id 0 is the base currency, so rows written without one read as rupees
+    private String[] currencyNames = {FxRates.BASE, null, null, null};
+    private int currencyCount = 1;
+    private final HashMap<String, Short> currencyIds = new HashMap<>();
+    private FxRates rates = FxRates.NONE;
+    private FxRates.Converter display = FxRates.NONE.converter(FxRates.BASE);
+    // Totals of ledger segments whose rows are not here; converted again on a currency switch
+    private final List<SegmentManifest.Entry> segmentTotals = new ArrayList<>();
+
+    private final LongIntMap rowById = new LongIntMap();
+
+    private final StampedLock lock = new StampedLock();
+    // Chunks also referenced by a snapshot; cloned before an in-place write
+    private boolean[] sharedChunks = new boolean[0];
+    private final boolean frozen;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Rows changed in place by the current write, published once it completes
+    private int changedFrom = Integer.MAX_VALUE, changedTo = Integer.MIN_VALUE;
+    private int flips, flippedRow;
+    private boolean rowsCompacted;
+
+    ExpenseStore() {
+        this(false);
+    }
+
+    private ExpenseStore(boolean frozen) {
+        this.frozen = frozen;
+        currencyIds.put(FxRates.BASE, (short) 0);
+    }
+
+    /**
+     * Subscribes to changes. {@code executor} runs the delivery; a pending
+     * delivery absorbs any further writes, so a burst of writes costs the
+     * listener one call.
+     */
+    void addChangeListener(ChangeListener listener, Executor executor) {
+        subscriptions.add(new Subscription(listener, executor));
+    }
+
+    /** Row slots in use, deleted ones included; the bound for walking rows. */
+    int size() {
+        return size;
+    }
+
+    /** Rows that are not deleted. */
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    boolean isEmpty() {
+        return size == deletedCount;
+    }
+
+    long totalMinor() {
+        return aggregates.total();
+    }
+
+    ExpenseAggregates aggregates() {
+        return aggregates;
+    }
+
+    ExpenseIndex index() {
+        return index;
+    }
+
+    DescriptionIndex search() {
+        return search;
+    }
+
+    /**
+     * Appends a row, or overwrites the row already holding {@code id}. A
+     * deleted row holding the id is revived in its old slot. Returns the row
+     * index.
+     */
+    int put(long id, String description, long amountMinor, String currency, String category, int epochDay) {
+        int first = size;
+        int row;
+        long stamp = writeLock();
+        try {
+            row = putRow(id, description, amountMinor, currency, category, epochDay);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publish(first);
+        return row;
+    }
+
+    /** As above, for an amount in the base currency. */
+    int put(long id, String description, long amountMinor, String category, int epochDay) {
+        return put(id, description, amountMinor, FxRates.BASE, category, epochDay);
+    }
+
+    int put(Expense exp) {
+        return put(exp.getId(), exp.getDescription(), exp.getAmount().minor(), exp.getCurrency(),
+                exp.getCategory(), (int) exp.getDate().toEpochDay());
+    }
+
+    /**
+     * Deletes the row holding {@code id} by marking it with a tombstone. O(1),
+     * except for the occasional delete that triggers a compaction.
+     */
+    boolean delete(long id) {
+        boolean deleted;
+        long stamp = writeLock();
+        try {
+            deleted = deleteRow(id);
+            if (deleted && deletedCount >= COMPACT_MIN_DELETED && deletedCount >= size / 4) compactRows();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (deleted) publish(size);
+        return deleted;
+    }
+
+    /**
+     * Deletes every row dated {@code [fromDay, toDay]} in one write, e.g. to
+     * drop a year the journal has on disk from memory. Returns the count.
+     */
+    int deleteBetween(int fromDay, int toDay) {
+        int count = 0;
+        long stamp = writeLock();
+        try {
+            for (int row = 0; row < size; row++) {
+                int day = epochDayAt(row);
+                if (day >= fromDay && day <= toDay && deleteRow(idAt(row))) count++;
+            }
+            if (count > 0 && deletedCount >= COMPACT_MIN_DELETED && deletedCount >= size / 4) compactRows();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (count > 0) publish(size);
+        return count;
+    }
+
+    /**
+     * Adds (sign = +1) or retracts (sign = -1) the precomputed totals of a
+     * ledger segment whose rows are not in the store. Applied segments are
+     * remembered, so a change of display currency can convert them again.
+     */
+    void applyTotals(int sign, SegmentManifest.Entry segment) {
+        long stamp = writeLock();
+        try {
+            applySegment(sign, segment);
+            if (sign > 0) {
+                segmentTotals.add(segment);
+            } else {
+                segmentTotals.remove(segment);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publish(size);
+    }
+
+    /**
+     * Converts every amount to {@code currency} at {@code rates} and rebuilds
+     * the totals from the converted column. One pass walks the amount,
+     * currency and day chunks; each currency's rate is looked up only where
+     * it changes, not per row. Rows keep their own amounts and currencies.
+     */
+    void setDisplayCurrency(String currency, FxRates rates) {
+        PerfEvents.Convert event = new PerfEvents.Convert(currency);
+        long stamp = writeLock();
+        try {
+            this.rates = rates;
+            display = rates.converter(currency);
+            FxRates.Conversion[] conversions = new FxRates.Conversion[currencyCount];
+            for (int k = 0; k < currencyCount; k++) conversions[k] = display.from(currencyNames[k]);
+            aggregates.clear();
+            int remaining = size;
+            for (int c = 0; remaining > 0; c++) {
+                int n = Math.min(remaining, CHUNK_SIZE);
+                // A snapshot keeps the column it holds; the writer moves on to a new one
+                long[] converted = sharedChunks[c] ? new long[CHUNK_SIZE] : displayAmounts[c];
+                long[] amountChunk = amounts[c];
+                short[] currencyChunk = currencies[c];
+                int[] dayChunk = days[c];
+                for (int i = 0; i < n; i++) {
+                    converted[i] = conversions[currencyChunk[i]].convert(amountChunk[i], dayChunk[i]);
+                }
+                displayAmounts[c] = converted;
+                short[] categoryChunk = categories[c];
+                long[] dead = deleted[c];
+                for (int i = 0; i < n; i++) {
+                    if (dead == null || (dead[i >>> 6] & (1L << i)) == 0) {
+                        aggregates.apply(1, converted[i], dayChunk[i], categoryChunk[i]);
+                    }
+                }
+                remaining -= n;
+            }
+            for (SegmentManifest.Entry segment : segmentTotals) applySegment(1, segment);
+            if (size > 0) {
+                changedFrom = 0;
+                changedTo = size;
+            }
+            event.rows = size;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publish(size);
+        event.finish();
+    }
+
+    /** Bulk-appends the columns of a decoded ledger file. */
+    void appendAll(LedgerFile.Contents ledger) {
+        int first = size;
+        long stamp = writeLock();
+        try {
+            appendLedgerRows(ledger);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publish(first);
+    }
+
+    /** Appends the live rows among {@code [from, to)} of {@code src}, copying description bytes directly. */
+    void appendRows(ExpenseStore src, int from, int to) {
+        int first = size;
+        long stamp = writeLock();
+        try {
+            appendStoreRows(src, from, to);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publish(first);
+    }
+
+    // The row writers below run under the write lock
+
+    private void applySegment(int sign, SegmentManifest.Entry segment) {
+        short[] categoryMap = new short[segment.categories.length];
+        for (int k = 0; k < categoryMap.length; k++) categoryMap[k] = intern(segment.categories[k]);
+        FxRates.Conversion[] conversions = new FxRates.Conversion[segment.currencies.length];
+        for (int k = 0; k < conversions.length; k++) conversions[k] = display.from(segment.currencies[k]);
+        for (int b = 0; b < segment.bucketCount(); b++) {
+            // A bucket holds one day, so its sum converts at that day's rate like its rows
+            long amount = conversions[segment.currencyIds[b]].convert(segment.amounts[b], segment.days[b]);
+            aggregates.apply(sign, amount, segment.counts[b], segment.days[b], categoryMap[segment.categoryIds[b]]);
+        }
+    }
+
+    private int putRow(long id, String description, long amountMinor, String currency, String category, int epochDay) {
+        int row = rowById.get(id);
+        if (row < 0) {
+            row = size;
+            ensureCapacity(size + 1);
+            size++;
+            rowById.put(id, row);
+        } else if (isDeleted(row)) {
+            unshare(row >>> CHUNK_BITS);
+            setDeleted(row, false);
+        } else {
+            aggregates.apply(-1, displayAmountAt(row), epochDayAt(row), categoryIdAt(row));
+            index.rowChanging(row);
+            search.rowChanging(row);
+            unshare(row >>> CHUNK_BITS);
+            changedFrom = Math.min(changedFrom, row);
+            changedTo = Math.max(changedTo, row + 1);
+        }
+        int c = row >>> CHUNK_BITS;
+        int i = row & CHUNK_MASK;
+        ids[c][i] = id;
+        amounts[c][i] = amountMinor;
+        days[c][i] = epochDay;
+        categories[c][i] = intern(category);
+        currencies[c][i] = internCurrency(currency);
+        displayAmounts[c][i] = display.convert(amountMinor, currency, epochDay);
+        byte[] desc = description.getBytes(StandardCharsets.UTF_8);
+        descOffsets[c][i] = appendToArena(desc, 0, desc.length);
+        descLengths[c][i] = desc.length;
+        aggregates.apply(1, displayAmounts[c][i], epochDay, categories[c][i]);
+        index.rowAdded(row);
+        search.rowAdded(row);
+        return row;
+    }
+
+    private boolean deleteRow(long id) {
+        int row = rowById.get(id);
+        if (row < 0 || isDeleted(row)) return false;
+        aggregates.apply(-1, displayAmountAt(row), epochDayAt(row), categoryIdAt(row));
+        unshare(row >>> CHUNK_BITS);
+        // Tombstone first; the search index reads the description it drops below
+        setDeleted(row, true);
+        index.rowChanging(row);
+        search.rowChanging(row);
+        amounts[row >>> CHUNK_BITS][row & CHUNK_MASK] = 0;
+        displayAmounts[row >>> CHUNK_BITS][row & CHUNK_MASK] = 0;
+        return true;
+    }
+
+    private void setDeleted(int row, boolean dead) {
+        int c = row >>> CHUNK_BITS;
+        int i = row & CHUNK_MASK;
+        if (deleted[c] == null) deleted[c] = new long[CHUNK_SIZE >>> 6];
+        if (dead) {
+            deleted[c][i >>> 6] |= 1L << i;
+        } else {
+            deleted[c][i >>> 6] &= ~(1L << i);
+        }
+        int delta = dead ? 1 : -1;
+        deletedInChunk[c] += delta;
+        deletedCount += delta;
+        flips++;
+        flippedRow = row;
+    }
+
+    /**
+     * Rewrites the columns and the description arena without the deleted
+     * rows. Snapshots keep the old arrays, so nothing is cloned for them.
+     * Deleted ids are forgotten, so a later put of one appends it.
+     */
+    private void compactRows() {
+        int live = size - deletedCount;
+        int chunks = (live + CHUNK_MASK) >>> CHUNK_BITS;
+        long[][] newIds = new long[chunks][CHUNK_SIZE];
+        long[][] newAmounts = new long[chunks][CHUNK_SIZE];
+        int[][] newDays = new int[chunks][CHUNK_SIZE];
+        short[][] newCategories = new short[chunks][CHUNK_SIZE];
+        short[][] newCurrencies = new short[chunks][CHUNK_SIZE];
+        long[][] newDisplayAmounts = new long[chunks][CHUNK_SIZE];
+        long[][] newDescOffsets = new long[chunks][CHUNK_SIZE];
+        int[][] newDescLengths = new int[chunks][CHUNK_SIZE];
+        byte[][] oldArena = arena;
+        arena = new byte[0][];
+        arenaUsed = 0;
+        int to = 0;
+        for (int row = 0; row < size; row++) {
+            long id = idAt(row);
+            if (isDeleted(row)) {
+                rowById.remove(id);
+                continue;
+            }
+            int c = row >>> CHUNK_BITS, i = row & CHUNK_MASK;
+            int tc = to >>> CHUNK_BITS, ti = to & CHUNK_MASK;
+            newIds[tc][ti] = id;
+            newAmounts[tc][ti] = amounts[c][i];
+            newDays[tc][ti] = days[c][i];
+            newCategories[tc][ti] = categories[c][i];
+            newCurrencies[tc][ti] = currencies[c][i];
+            newDisplayAmounts[tc][ti] = displayAmounts[c][i];
+            long offset = descOffsets[c][i];
+            newDescLengths[tc][ti] = descLengths[c][i];
+            newDescOffsets[tc][ti] = appendToArena(oldArena[(int) (offset >>> ARENA_BITS)], (int) (offset & (ARENA_CHUNK - 1)), descLengths[c][i]);
+            rowById.put(id, to);
+            to++;
+        }
+        ids = newIds;
+        amounts = newAmounts;
+        days = newDays;
+        categories = newCategories;
+        currencies = newCurrencies;
+        displayAmounts = newDisplayAmounts;
+        descOffsets = newDescOffsets;
+        descLengths = newDescLengths;
+        deleted = new long[chunks][];
+        deletedInChunk = new int[chunks];
+        sharedChunks = new boolean[chunks];
+        deletedCount = 0;
+        size = live;
+        index.invalidate();
+        search.invalidate();
+        // Totals are unchanged but row numbers are not; views must re-evaluate
+        aggregates.touch();
+        rowsCompacted = true;
+    }
+
+    private void appendLedgerRows(LedgerFile.Contents ledger) {
+        int n = ledger.size();
+        short[] categoryMap = new short[ledger.categories.length];
+        for (int k = 0; k < categoryMap.length; k++) {
+            categoryMap[k] = intern(ledger.categories[k]);
+        }
+        short[] currencyMap = new short[ledger.currencies.length];
+        FxRates.Conversion[] conversions = new FxRates.Conversion[currencyMap.length];
+        for (int k = 0; k < currencyMap.length; k++) {
+            currencyMap[k] = internCurrency(ledger.currencies[k]);
+            conversions[k] = display.from(ledger.currencies[k]);
+        }
+        ensureCapacity(size + n);
+        int first = size;
+        for (int j = 0; j < n; j++) {
+            long id = ledger.ids[j];
+            if (rowById.get(id) >= 0) {
+                putRow(id, ledger.descriptionAt(j), ledger.amounts[j], ledger.currencies[ledger.currencyIds[j]],
+                        ledger.categories[ledger.categoryIds[j]], ledger.epochDays[j]);
+                continue;
+            }
+            int row = size++;
+            int c = row >>> CHUNK_BITS;
+            int i = row & CHUNK_MASK;
+            ids[c][i] = id;
+            amounts[c][i] = ledger.amounts[j];
+            days[c][i] = ledger.epochDays[j];
+            categories[c][i] = categoryMap[ledger.categoryIds[j]];
+            currencies[c][i] = currencyMap[ledger.currencyIds[j]];
+            displayAmounts[c][i] = conversions[ledger.currencyIds[j]].convert(amounts[c][i], days[c][i]);
+            int start = ledger.descOffsets[j];
+            int length = ledger.descOffsets[j + 1] - start;
+            descOffsets[c][i] = appendToArena(ledger.heap, start, length);
+            descLengths[c][i] = length;
+            aggregates.apply(1, displayAmounts[c][i], days[c][i], categories[c][i]);
+            index.rowAdded(row);
+            rowById.put(id, row);
+        }
+        search.rowsAdded(first, size);
+    }
+
+    private void appendStoreRows(ExpenseStore src, int from, int to) {
+        ensureCapacity(size + (to - from));
+        short[] currencyMap = new short[src.currencyCount];
+        FxRates.Conversion[] conversions = new FxRates.Conversion[currencyMap.length];
+        for (int k = 0; k < currencyMap.length; k++) {
+            currencyMap[k] = internCurrency(src.currencyNames[k]);
+            conversions[k] = display.from(src.currencyNames[k]);
+        }
+        int first = size;
+        for (int r = from; r < to; r++) {
+            if (src.isDeleted(r)) continue;
+            long id = src.idAt(r);
+            if (rowById.get(id) >= 0) {
+                putRow(id, src.descriptionAt(r), src.amountAt(r), src.currencyAt(r), src.categoryAt(r), src.epochDayAt(r));
+                continue;
+            }
+            int row = size++;
+            int c = row >>> CHUNK_BITS;
+            int i = row & CHUNK_MASK;
+            long srcOffset = src.descOffsets[r >>> CHUNK_BITS][r & CHUNK_MASK];
+            int length = src.descriptionLengthAt(r);
+            ids[c][i] = id;
+            amounts[c][i] = src.amountAt(r);
+            days[c][i] = src.epochDayAt(r);
+            categories[c][i] = intern(src.categoryAt(r));
+            short currency = src.currencyIdAt(r);
+            currencies[c][i] = currencyMap[currency];
+            displayAmounts[c][i] = conversions[currency].convert(amounts[c][i], days[c][i]);
+            descOffsets[c][i] = appendToArena(src.arena[(int) (srcOffset >>> ARENA_BITS)], (int) (srcOffset & (ARENA_CHUNK - 1)), length);
+            descLengths[c][i] = length;
+            aggregates.apply(1, displayAmounts[c][i], days[c][i], categories[c][i]);
+            index.rowAdded(row);
+            rowById.put(id, row);
+        }
+        search.rowsAdded(first, size);
+    }
+
+    /**
+     * A read-only view of the store as it is now, safe to read from any
+     * thread while the writer carries on. Costs one pointer per chunk plus a
+     * copy of the aggregates, not a copy of the rows. Snapshots cannot look
+     * rows up by id.
+     */
+    ExpenseStore snapshot() {
+        if (frozen) return this;
+        long stamp = lock.readLock();
+        try {
+            ExpenseStore snapshot = new ExpenseStore(true);
+            int chunks = chunkCount();
+            snapshot.ids = Arrays.copyOf(ids, chunks);
+            snapshot.amounts = Arrays.copyOf(amounts, chunks);
+            snapshot.days = Arrays.copyOf(days, chunks);
+            snapshot.categories = Arrays.copyOf(categories, chunks);
+            snapshot.currencies = Arrays.copyOf(currencies, chunks);
+            snapshot.displayAmounts = Arrays.copyOf(displayAmounts, chunks);
+            snapshot.descOffsets = Arrays.copyOf(descOffsets, chunks);
+            snapshot.descLengths = Arrays.copyOf(descLengths, chunks);
+            snapshot.deleted = Arrays.copyOf(deleted, chunks);
+            snapshot.deletedInChunk = Arrays.copyOf(deletedInChunk, chunks);
+            snapshot.deletedCount = deletedCount;
+            // Concurrent snapshots may both set a flag; only the writer clears them
+            Arrays.fill(sharedChunks, 0, chunks, true);
+            snapshot.size = size;
+            snapshot.aggregates.copyFrom(aggregates);
+            // Arena bytes and dictionary slots are written once and only past the used mark
+            snapshot.arena = Arrays.copyOf(arena, arena.length);
+            snapshot.arenaUsed = arenaUsed;
+            snapshot.categoryNames = categoryNames;
+            snapshot.categoryCount = categoryCount;
+            snapshot.categoryIds.putAll(categoryIds);
+            snapshot.currencyNames = currencyNames;
+            snapshot.currencyCount = currencyCount;
+            snapshot.currencyIds.putAll(currencyIds);
+            // Conversions cache lookups, so the snapshot's reader gets its own
+            snapshot.rates = rates;
+            snapshot.display = rates.converter(display.target);
+            return snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Row holding {@code id}, or -1. May be a deleted row; see {@link #isDeleted}. */
+    int rowOf(long id) {
+        return rowById.get(id);
+    }
+
+    boolean isDeleted(int row) {
+        long[] bits = deleted[row >>> CHUNK_BITS];
+        return bits != null && (bits[(row & CHUNK_MASK) >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Row of the {@code ordinal}-th live row. Identity while nothing is
+     * deleted; otherwise one step per chunk plus a popcount walk inside one.
+     */
+    int liveRow(int ordinal) {
+        if (deletedCount == 0) return ordinal;
+        int c = 0;
+        while (true) {
+            int live = Math.min(CHUNK_SIZE, size - (c << CHUNK_BITS)) - deletedInChunk[c];
+            if (ordinal < live) break;
+            ordinal -= live;
+            c++;
+        }
+        long[] bits = deleted[c];
+        if (bits == null) return (c << CHUNK_BITS) + ordinal;
+        for (int w = 0; ; w++) {
+            long liveBits = ~bits[w];
+            int n = Long.bitCount(liveBits);
+            if (ordinal < n) {
+                for (int k = 0; k < ordinal; k++) liveBits &= liveBits - 1;
+                return (c << CHUNK_BITS) + (w << 6) + Long.numberOfTrailingZeros(liveBits);
+            }
+            ordinal -= n;
+        }
+    }
+
+    /** Number of live rows before {@code row}; the inverse of {@link #liveRow}. */
+    int liveOrdinal(int row) {
+        if (deletedCount == 0) return row;
+        int c = row >>> CHUNK_BITS;
+        int dead = 0;
+        for (int k = 0; k < c; k++) dead += deletedInChunk[k];
+        long[] bits = deleted[c];
+        if (bits != null) {
+            int i = row & CHUNK_MASK;
+            for (int w = 0; w < i >>> 6; w++) dead += Long.bitCount(bits[w]);
+            dead += Long.bitCount(bits[i >>> 6] & ((1L << i) - 1));
+        }
+        return row - dead;
+    }
+
+    long idAt(int row) {
+        return ids[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /** The amount as spent, in {@link #currencyAt}. */
+    long amountAt(int row) {
+        return amounts[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /** The amount in the {@link #displayCurrency}, at the rate of the row's day. */
+    long displayAmountAt(int row) {
+        return displayAmounts[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    short currencyIdAt(int row) {
+        return currencies[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    String currencyAt(int row) {
+        return currencyNames[currencyIdAt(row)];
+    }
+
+    int epochDayAt(int row) {
+        return days[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    short categoryIdAt(int row) {
+        return categories[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    String categoryAt(int row) {
+        return categoryNames[categoryIdAt(row)];
+    }
+
+    int descriptionLengthAt(int row) {
+        return descLengths[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /** Copies the UTF-8 description bytes of {@code row} into {@code dst}; returns the length. */
+    int copyDescription(int row, byte[] dst, int dstOffset) {
+        long offset = descOffsets[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        int length = descriptionLengthAt(row);
+        System.arraycopy(arena[(int) (offset >>> ARENA_BITS)], (int) (offset & (ARENA_CHUNK - 1)), dst, dstOffset, length);
+        return length;
+    }
+
+    String descriptionAt(int row) {
+        long offset = descOffsets[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        return new String(arena[(int) (offset >>> ARENA_BITS)], (int) (offset & (ARENA_CHUNK - 1)),
+                descriptionLengthAt(row), StandardCharsets.UTF_8);
+    }
+
+    Expense expenseAt(int row) {
+        return new Expense(idAt(row), descriptionAt(row), Money.ofMinor(amountAt(row)), currencyAt(row),
+                categoryAt(row), LocalDate.ofEpochDay(epochDayAt(row)));
+    }
+
+    int categoryCount() {
+        return categoryCount;
+    }
+
+    String categoryName(int categoryId) {
+        return categoryNames[categoryId];
+    }
+
+    /** Dictionary id of {@code category}, or -1 if no row has used it. */
+    int categoryIdOf(String category) {
+        Short id = categoryIds.get(category);
+        return id != null ? id : -1;
+    }
+
+    short intern(String category) {
+        Short id = categoryIds.get(category);
+        if (id != null) return id;
+        if (categoryCount == Short.MAX_VALUE) throw new IllegalStateException("Too many categories");
+        if (categoryCount == categoryNames.length) {
+            categoryNames = Arrays.copyOf(categoryNames, categoryCount * 2);
+        }
+        short newId = (short) categoryCount;
+        categoryNames[categoryCount++] = category;
+        categoryIds.put(category, newId);
+        return newId;
+    }
+
+    int currencyCount() {
+        return currencyCount;
+    }
+
+    String currencyName(int currencyId) {
+        return currencyNames[currencyId];
+    }
+
+    short internCurrency(String currency) {
+        Short id = currencyIds.get(currency);
+        if (id != null) return id;
+        if (currencyCount == Short.MAX_VALUE) throw new IllegalStateException("Too many currencies");
+        if (currencyCount == currencyNames.length) {
+            currencyNames = Arrays.copyOf(currencyNames, currencyCount * 2);
+        }
+        short newId = (short) currencyCount;
+        currencyNames[currencyCount++] = currency;
+        currencyIds.put(currency, newId);
+        return newId;
+    }
+
+    String displayCurrency() {
+        return display.target;
+    }
+
+    FxRates rates() {
+        return rates;
+    }
+
+    /**
+     * Converts amounts into the display currency, e.g. budgets and recurring
+     * expenses that are not rows. Belongs to the thread that writes the
+     * store, or to the reader of a snapshot.
+     */
+    FxRates.Converter displayConverter() {
+        return display;
+    }
+
+    /** The display currency and row currencies that the rate table has no rate for; they convert 1:1. */
+    List<String> unratedCurrencies() {
+        List<String> unrated = new ArrayList<>();
+        if (!rates.hasRates(display.target)) unrated.add(display.target);
+        for (int k = 0; k < currencyCount; k++) {
+            String currency = currencyNames[k];
+            if (!rates.hasRates(currency) && !currency.equals(display.target)) unrated.add(currency);
+        }
+        return unrated;
+    }
+
+    /** Adds each row's display amount into {@code totals[categoryId]}; {@code totals} must hold categoryCount() slots. */
+    void sumByCategory(long[] totals) {
+        int remaining = size;
+        for (int c = 0; remaining > 0; c++) {
+            long[] amountChunk = displayAmounts[c];
+            short[] categoryChunk = categories[c];
+            int n = Math.min(remaining, CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                totals[categoryChunk[i]] += amountChunk[i];
+            }
+            remaining -= n;
+        }
+    }
+
+    /** Visits every live row. */
+    void forEachRow(RowVisitor visitor) {
+        for (int row = 0; row < size; row++) {
+            if (!isDeleted(row)) visitor.visit(row);
+        }
+    }
+
+    /**
+     * Sums every row's display amount straight from the columns. The running
+     * {@link #totalMinor} makes this unnecessary on the UI path. It is kept
+     * for verifying the aggregates and for tools that hold a copied store.
+     */
+    long sumAmounts() {
+        long total = 0;
+        int remaining = size;
+        for (int c = 0; remaining > 0; c++) {
+            int n = Math.min(remaining, CHUNK_SIZE);
+            total += Money.sum(displayAmounts[c], 0, n);
+            remaining -= n;
+        }
+        return total;
+    }
+
+    private long writeLock() {
+        if (frozen) throw new IllegalStateException("Snapshots are read-only");
+        return lock.writeLock();
+    }
+
+    /** Gives chunk {@code c} its own column arrays if a snapshot shares them. */
+    private void unshare(int c) {
+        if (!sharedChunks[c]) return;
+        ids[c] = ids[c].clone();
+        amounts[c] = amounts[c].clone();
+        days[c] = days[c].clone();
+        categories[c] = categories[c].clone();
+        currencies[c] = currencies[c].clone();
+        displayAmounts[c] = displayAmounts[c].clone();
+        descOffsets[c] = descOffsets[c].clone();
+        descLengths[c] = descLengths[c].clone();
+        if (deleted[c] != null) deleted[c] = deleted[c].clone();
+        sharedChunks[c] = false;
+    }
+
+    /** Hands the write that started at size {@code first} to every listener. */
+    private void publish(int first) {
+        int from = changedFrom, to = changedTo;
+        int flipCount = flips, flipRow = flippedRow;
+        boolean compacted = rowsCompacted;
+        changedFrom = Integer.MAX_VALUE;
+        changedTo = Integer.MIN_VALUE;
+        flips = 0;
+        rowsCompacted = false;
+        // A compaction renumbers rows, so "appended" is only meaningful without one
+        int appendedFrom = compacted ? size : first;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.record(size, appendedFrom, from, to, flipCount, flipRow, compacted)) {
+                subscription.executor.execute(subscription);
+            }
+        }
+    }
+
+    /** One listener's pending, merged change; delivered by running it on the listener's executor. */
+    private static final class Subscription implements Runnable {
+        final ChangeListener listener;
+        final Executor executor;
+        // Guarded by this
+        private boolean scheduled;
+        private int size;
+        private int appendedFrom = Integer.MAX_VALUE;
+        private int updatedFrom = Integer.MAX_VALUE, updatedTo = Integer.MIN_VALUE;
+        private int flips, flippedRow;
+        private boolean compacted;
+
+        Subscription(ChangeListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        /** Merges one write; true if the caller must schedule a delivery. */
+        synchronized boolean record(int newSize, int from, int changedFrom, int changedTo,
+                                    int flipCount, int flipRow, boolean rowsCompacted) {
+            size = newSize;
+            appendedFrom = Math.min(appendedFrom, from);
+            updatedFrom = Math.min(updatedFrom, changedFrom);
+            updatedTo = Math.max(updatedTo, changedTo);
+            if (flipCount > 0) flippedRow = flipRow;
+            flips += flipCount;
+            compacted |= rowsCompacted;
+            if (scheduled) return false;
+            scheduled = true;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Change change;
+            synchronized (this) {
+                change = new Change(size, Math.min(appendedFrom, size), updatedFrom, Math.min(updatedTo, size),
+                        flips, flippedRow, compacted);
+                scheduled = false;
+                appendedFrom = Integer.MAX_VALUE;
+                updatedFrom = Integer.MAX_VALUE;
+                updatedTo = Integer.MIN_VALUE;
+                flips = 0;
+                compacted = false;
+            }
+            listener.storeChanged(change);
+        }
+    }
+
+    private int chunkCount() {
+        return (size + CHUNK_MASK) >>> CHUNK_BITS;
+    }
+
+    private void ensureCapacity(int rows) {
+        int needed = (rows + CHUNK_MASK) >>> CHUNK_BITS;
+        int have = ids.length;
+        if (needed <= have) return;
+        ids = Arrays.copyOf(ids, needed);
+        amounts = Arrays.copyOf(amounts, needed);
+        days = Arrays.copyOf(days, needed);
+        categories = Arrays.copyOf(categories, needed);
+        currencies = Arrays.copyOf(currencies, needed);
+        displayAmounts = Arrays.copyOf(displayAmounts, needed);
+        descOffsets = Arrays.copyOf(descOffsets, needed);
+        descLengths = Arrays.copyOf(descLengths, needed);
+        deleted = Arrays.copyOf(deleted, needed);
+        deletedInChunk = Arrays.copyOf(deletedInChunk, needed);
+        sharedChunks = Arrays.copyOf(sharedChunks, needed);
+        for (int c = have; c < needed; c++) {
+            ids[c] = new long[CHUNK_SIZE];
+            amounts[c] = new long[CHUNK_SIZE];
+            days[c] = new int[CHUNK_SIZE];
+            categories[c] = new short[CHUNK_SIZE];
+            currencies[c] = new short[CHUNK_SIZE];
+            displayAmounts[c] = new long[CHUNK_SIZE];
+            descOffsets[c] = new long[CHUNK_SIZE];
+            descLengths[c] = new int[CHUNK_SIZE];
+        }
+    }
+
+    private long appendToArena(byte[] src, int start, int length) {
+        if (length > ARENA_CHUNK) throw new IllegalArgumentException("Description too long");
+        int chunk = (int) (arenaUsed >>> ARENA_BITS);
+        int within = (int) (arenaUsed & (ARENA_CHUNK - 1));
+        if (within + length > ARENA_CHUNK) {
+            // Descriptions never straddle arena chunks
+            chunk++;
+            within = 0;
+        }
+        if (chunk >= arena.length) {
+            arena = Arrays.copyOf(arena, chunk + 1);
+            arena[chunk] = new byte[ARENA_CHUNK];
+        }
+        System.arraycopy(src, start, arena[chunk], within, length);
+        long offset = ((long) chunk << ARENA_BITS) | within;
+        arenaUsed = offset + length;
+        return offset;
+    }
+}
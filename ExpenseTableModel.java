@@ -0,0 +1,141 @@
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+
+/**
+ * Table model that reads cells straight from the {@link ExpenseStore}
+ * columns, through an {@link ExpenseView} that maps table rows to store rows.
+ *
+ * Nothing is copied or pre-formatted per row; cell text is produced only when
+ * the table asks for a (visible) row and kept in a small direct-mapped cache,
+ * so repaints and slow scrolling reuse the same strings.
+ *
+ * Cells are editable once an {@link EditHandler} is set. The model does not
+ * write the store itself; the handler validates the text and writes it, and
+ * the change comes back through the store's feed as a one-row event.
+ */
+class ExpenseTableModel extends AbstractTableModel {
+    /** Receives edited cell text; {@code column} uses the model's column order. */
+    interface EditHandler {
+        void cellEdited(int storeRow, int column, String text);
+    }
+
+    private static final String[] COLUMNS = {"Description", "Amount", "Category", "Date"};
+    private static final int CACHE_SLOTS = 256; // comfortably more than the rows on screen
+
+    private final ExpenseView view;
+    private final ExpenseStore store;
+    private final int[] cachedRow = new int[CACHE_SLOTS];
+    private final String[][] cachedText = new String[CACHE_SLOTS][COLUMNS.length];
+    private EditHandler editHandler;
+
+    ExpenseTableModel(ExpenseView view) {
+        this.view = view;
+        this.store = view.store();
+        invalidateCache();
+    }
+
+    @Override
+    public int getRowCount() {
+        return view.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    void setEditHandler(EditHandler editHandler) {
+        this.editHandler = editHandler;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return editHandler != null;
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (editHandler != null && row < view.size()) editHandler.cellEdited(view.storeRow(row), column, String.valueOf(value));
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int slot = row & (CACHE_SLOTS - 1);
+        String[] text = cachedText[slot];
+        if (cachedRow[slot] != row) {
+            cachedRow[slot] = row;
+            text[0] = null;
+            text[1] = null;
+            text[2] = null;
+            text[3] = null;
+        }
+        String value = text[column];
+        if (value == null) {
+            value = format(view.storeRow(row), column);
+            text[column] = value;
+        }
+        return value;
+    }
+
+    /** Drops cached cell text; call after rows are changed or reordered in place. */
+    void invalidateCache() {
+        java.util.Arrays.fill(cachedRow, -1);
+    }
+
+    /**
+     * Translates a change from the store's feed into table events. Store rows
+     * become table rows through their position among live rows, so a single
+     * edit, delete or undo is a single-row event.
+     */
+    void storeChanged(ExpenseStore.Change change) {
+        if (view.isFiltered() || change.compacted || change.flips > 1
+                || (change.flips == 1 && change.flippedRow >= change.appendedFrom)) {
+            // Rows may land anywhere in a filtered result, compaction renumbers
+            // them, and several deletes in one burst have no single position
+            viewChanged();
+            return;
+        }
+        if (change.flips == 1) {
+            invalidateCache();
+            int row = store.liveOrdinal(change.flippedRow);
+            if (store.isDeleted(change.flippedRow)) {
+                fireTableRowsDeleted(row, row);
+            } else {
+                fireTableRowsInserted(row, row);
+            }
+        }
+        if (change.hasUpdates()) {
+            invalidateCache();
+            fireTableRowsUpdated(store.liveOrdinal(change.updatedFrom), store.liveOrdinal(change.updatedTo - 1));
+        }
+        if (change.hasAppends()) {
+            fireTableRowsInserted(store.liveOrdinal(change.appendedFrom), store.liveCount() - 1);
+        }
+    }
+
+    /** Re-evaluates the view (e.g. after a filter change) and redraws every row. */
+    void viewChanged() {
+        view.refresh();
+        invalidateCache();
+        fireTableDataChanged();
+    }
+
+    private String format(int row, int column) {
+        switch (column) {
+            case 0: return store.descriptionAt(row);
+            case 1: return FxRates.format(store.amountAt(row), store.currencyAt(row));
+            case 2: return store.categoryAt(row);
+            default: return LocalDate.ofEpochDay(store.epochDayAt(row)).toString();
+        }
+    }
+}
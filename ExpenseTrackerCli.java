@@ -0,0 +1,281 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Headless entry point for scripts and batch jobs:
+ *
+ * <pre>
+ * java ExpenseTrackerCli stats  [--by=category|month] [--currency=CODE] LEDGER...
+ * java ExpenseTrackerCli report [--format=text|csv|json|html] [--out=DIR] [--currency=CODE] LEDGER...
+ * java ExpenseTrackerCli import --into=LEDGER FILE...
+ * </pre>
+ *
+ * A LEDGER is a directory holding the app's expenses.* files, or a
+ * {@code jdbc:} URL for the SQL backend. Several ledgers are processed in
+ * parallel, one per core, and their output is printed in argument order.
+ * Output is tab-separated and errors go to stderr. Totals are in rupees, or
+ * in {@code --currency} at the rates in the ledger's rates.txt (the working
+ * directory's for a {@code jdbc:} ledger). The exit code is 0 on
+ * success, 1 if any ledger failed and 2 for bad usage.
+ *
+ * This class touches only the storage, aggregation and report code, never
+ * AWT or Swing. Started directly, the JVM loads no UI classes at all.
+ * {@code ModernExpenseTrackerApp --headless} forwards here too, but as a
+ * JFrame subclass it still loads Swing classes when it starts.
+ */
+class ExpenseTrackerCli {
+    private static final String USAGE = String.join("\n",
+            "Usage: java ExpenseTrackerCli <command> [options] <args>",
+            "  stats  [--by=category|month] [--currency=CODE] LEDGER...   totals per ledger",
+            "  report [--format=text|csv|json|html] [--out=DIR] [--currency=CODE] LEDGER...",
+            "  import --into=LEDGER FILE...                       add bank/card statements",
+            "LEDGER is a directory with expenses.* files, or a jdbc: URL.");
+
+    /** Reports bad arguments; exits with code 2. */
+    private static final class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /** Work for one ledger; returns its lines of output. */
+    private interface LedgerTask {
+        String run(String ledger) throws Exception;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        try {
+            if (args.length == 0 || args[0].equals("--help") || args[0].equals("-h")) {
+                out.println(USAGE);
+                return args.length == 0 ? 2 : 0;
+            }
+            String command = args[0];
+            List<String> operands = new ArrayList<>();
+            String by = null, format = "text", outDir = null, into = null, currency = FxRates.BASE;
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--by=")) by = arg.substring(5);
+                else if (arg.startsWith("--format=")) format = arg.substring(9);
+                else if (arg.startsWith("--out=")) outDir = arg.substring(6);
+                else if (arg.startsWith("--into=")) into = arg.substring(7);
+                else if (arg.startsWith("--currency=")) currency = arg.substring(11).toUpperCase(Locale.ROOT);
+                else if (arg.startsWith("--")) throw new UsageException("Unknown option " + arg);
+                else operands.add(arg);
+            }
+            if (!FxRates.isCurrency(currency)) throw new UsageException("--currency must be a three-letter code such as USD");
+            String display = currency;
+            if (operands.isEmpty()) throw new UsageException("No " + (command.equals("import") ? "files" : "ledgers") + " given");
+
+            switch (command) {
+                case "stats": {
+                    if (by != null && !by.equals("category") && !by.equals("month")) {
+                        throw new UsageException("--by must be category or month");
+                    }
+                    String groupBy = by;
+                    if (groupBy == null) out.println("ledger\trows\ttotal\tfirst\tlast");
+                    return forEachLedger(operands, out, err, ledger -> stats(ledger, groupBy, display, err));
+                }
+                case "report": {
+                    ReportWriter.Format reportFormat = parseFormat(format);
+                    Path reportDir = outDir == null ? null : Paths.get(outDir);
+                    if (reportDir != null) Files.createDirectories(reportDir);
+                    out.println("ledger\trows\tfile");
+                    return forEachLedger(operands, out, err, ledger -> report(ledger, reportFormat, reportDir, display, err));
+                }
+                case "import": {
+                    if (into == null) throw new UsageException("import needs --into=LEDGER");
+                    out.println("file\tadded\tduplicates\trejected");
+                    return importFiles(into, operands, out, err);
+                }
+                default:
+                    throw new UsageException("Unknown command " + command);
+            }
+        } catch (UsageException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 1;
+        }
+    }
+
+    /** Runs {@code task} for every ledger on a pool sized to the cores, printing results in order. */
+    private static int forEachLedger(List<String> ledgers, PrintStream out, PrintStream err, LedgerTask task) {
+        int threads = Math.min(ledgers.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ledger-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (String ledger : ledgers) results.add(pool.submit(() -> task.run(ledger)));
+            int status = 0;
+            for (int i = 0; i < ledgers.size(); i++) {
+                try {
+                    out.print(results.get(i).get());
+                } catch (ExecutionException e) {
+                    err.println(ledgers.get(i) + ": " + e.getCause().getMessage());
+                    status = 1;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return 1;
+                }
+            }
+            out.flush();
+            return status;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String stats(String ledger, String by, String currency, PrintStream err) throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        StorageBackend storage = open(ledger, store);
+        storage.close();
+        convert(ledger, store, currency, err);
+        ExpenseAggregates totals = store.aggregates();
+        StringBuilder lines = new StringBuilder();
+        if (by == null) {
+            lines.append(ledger).append('\t').append(store.liveCount()).append('\t').append(Money.format(totals.total()));
+            if (store.isEmpty()) {
+                lines.append("\t-\t-\n");
+            } else {
+                lines.append('\t').append(LocalDate.ofEpochDay(totals.firstDay()))
+                        .append('\t').append(LocalDate.ofEpochDay(totals.lastDay())).append('\n');
+            }
+        } else if (by.equals("category")) {
+            for (int cat = 0; cat < store.categoryCount(); cat++) {
+                long amount = totals.categoryTotal(cat);
+                if (amount == 0) continue;
+                lines.append(ledger).append('\t').append(store.categoryName(cat)).append('\t').append(Money.format(amount)).append('\n');
+            }
+        } else if (!store.isEmpty()) {
+            int last = ExpenseAggregates.monthIndexOfDay(totals.lastDay());
+            for (int month = ExpenseAggregates.monthIndexOfDay(totals.firstDay()); month <= last; month++) {
+                long amount = totals.monthTotal(month);
+                if (amount == 0) continue;
+                lines.append(ledger).append('\t').append(BudgetPlan.formatMonth(month)).append('\t').append(Money.format(amount)).append('\n');
+            }
+        }
+        return lines.toString();
+    }
+
+    private static String report(String ledger, ReportWriter.Format format, Path outDir, String currency,
+                                 PrintStream err) throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        StorageBackend storage = open(ledger, store);
+        storage.close();
+        convert(ledger, store, currency, err);
+        boolean sql = ledger.startsWith("jdbc:");
+        long budget = 0;
+        RecurringPlan recurring = new RecurringPlan();
+        if (!sql) {
+            int month = ExpenseAggregates.monthIndexOfDay((int) LocalDate.now().toEpochDay());
+            budget = BudgetPlan.load(Paths.get(ledger, "budget.txt")).monthlyLimit(null, month);
+            recurring = RecurringPlan.load(Paths.get(ledger, "recurring.txt"));
+        }
+        String name = "expense_report_" + LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + "." + format.extension;
+        Path file;
+        if (outDir == null) {
+            file = sql ? Paths.get(name) : Paths.get(ledger, name);
+        } else {
+            // Several ledgers share the directory, so each report is prefixed with its ledger's name
+            String prefix = sql ? "sql" : Paths.get(ledger).toAbsolutePath().normalize().getFileName().toString();
+            file = outDir.resolve(prefix + "-" + name);
+        }
+        ReportGenerator.generate(store, budget, recurring, format, file, new ReportGenerator.Progress() {
+            @Override
+            public void update(int rowsWritten, int totalRows) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return false;
+            }
+        });
+        return ledger + "\t" + store.liveCount() + "\t" + file + "\n";
+    }
+
+    /** Imports each file in turn into one ledger; parsing is already parallel within a file. */
+    private static int importFiles(String ledger, List<String> files, PrintStream out, PrintStream err) throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        StorageBackend storage = open(ledger, store);
+        int status = 0;
+        try {
+            for (String name : files) {
+                Path file = Paths.get(name);
+                try {
+                    ExpenseImporter.Batch batch = ExpenseImporter.parse(file, ImportSchema.forFile(file), ForkJoinPool.commonPool());
+                    ExpenseImporter.Result result = ExpenseImporter.commit(batch, store, storage);
+                    out.println(name + "\t" + result.added + "\t" + result.duplicates + "\t" + batch.rejected());
+                } catch (IOException | RuntimeException e) {
+                    err.println(name + ": " + e.getMessage());
+                    status = 1;
+                }
+            }
+        } finally {
+            // Flushes the journal; the next GUI start compacts it if it grew large
+            storage.close();
+        }
+        return status;
+    }
+
+    /** Opens a ledger directory or JDBC URL and reads every row of it into {@code store}. */
+    private static StorageBackend open(String ledger, ExpenseStore store) throws IOException {
+        StorageBackend storage;
+        if (ledger.startsWith("jdbc:")) {
+            try {
+                SqlStorage.checkDriver(ledger);
+            } catch (java.sql.SQLException e) {
+                throw new IOException("No JDBC driver on the class path for " + ledger);
+            }
+            storage = new SqlStorage(ledger);
+        } else {
+            File dir = new File(ledger);
+            if (!dir.isDirectory()) throw new IOException("Not a directory");
+            storage = new ExpenseJournal(dir, "expenses");
+            if (storage.isEmpty()) throw new IOException("No ledger found");
+        }
+        storage.open(store, rows -> { });
+        storage.ensureLoaded(store, ExpenseFilter.ANY_DAY_FROM, ExpenseFilter.ANY_DAY_TO);
+        return storage;
+    }
+
+    /** Shows {@code store}'s totals in {@code currency}, warning about currencies rates.txt has no rates for. */
+    private static void convert(String ledger, ExpenseStore store, String currency, PrintStream err) throws IOException {
+        Path ratesFile = ledger.startsWith("jdbc:") ? Paths.get("rates.txt") : Paths.get(ledger, "rates.txt");
+        FxRates rates = FxRates.load(ratesFile);
+        store.setDisplayCurrency(currency, rates);
+        List<String> unrated = store.unratedCurrencies();
+        if (!unrated.isEmpty()) {
+            err.println(ledger + ": no rates for " + String.join(", ", unrated) + " in " + ratesFile + "; converted 1:1");
+        }
+    }
+
+    private static ReportWriter.Format parseFormat(String name) throws UsageException {
+        for (ReportWriter.Format format : ReportWriter.Format.values()) {
+            if (format.name().equalsIgnoreCase(name) || format.extension.equals(name)) return format;
+        }
+        throw new UsageException("Unknown report format " + name);
+    }
+}
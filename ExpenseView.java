@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * The slice of the ledger currently on screen: either every live row of the
+ * store or the rows matching an {@link ExpenseFilter}. The table model maps view
+ * rows through it and the pie chart reads its category totals, so both follow
+ * the active filter. Filtered results are recomputed from the indexes only
+ * when the filter or the underlying store changes. Text matches computed on
+ * the search thread can be handed in with {@link #offerTextMatches} so the
+ * EDT does not repeat the query.
+ */
+class ExpenseView {
+    private final ExpenseStore store;
+    private ExpenseFilter filter;
+    private int[] rows;
+    private long[] categoryTotals = new long[0];
+    private long total;
+    private long sourceVersion = -1;
+    private long version;
+
+    private String offeredText;
+    private int[] offeredRows;
+    private long offeredVersion = -1;
+
+    ExpenseView(ExpenseStore store) {
+        this.store = store;
+    }
+
+    ExpenseStore store() {
+        return store;
+    }
+
+    boolean isFiltered() {
+        return filter != null;
+    }
+
+    ExpenseFilter filter() {
+        return filter;
+    }
+
+    void setFilter(ExpenseFilter filter) {
+        this.filter = filter == null || filter.isEmpty() ? null : filter;
+        sourceVersion = -1;
+        refresh();
+    }
+
+    /**
+     * Supplies the rows matching {@code text} as of store version
+     * {@code storeVersion}. They are used by the next evaluation of a filter
+     * with that text, unless the store has changed since.
+     */
+    void offerTextMatches(String text, int[] rows, long storeVersion) {
+        offeredText = text;
+        offeredRows = rows;
+        offeredVersion = storeVersion;
+    }
+
+    /** Re-runs the filter if the store changed since the last evaluation. */
+    void refresh() {
+        long storeVersion = store.aggregates().version();
+        if (storeVersion == sourceVersion) return;
+        sourceVersion = storeVersion;
+        version++;
+        if (filter == null) {
+            rows = null;
+            return;
+        }
+        PerfEvents.Aggregate event = new PerfEvents.Aggregate();
+        int[] matches = filter.hasDateRange() || filter.hasCategory() ? store.index().query(filter) : null;
+        if (filter.hasText()) {
+            int[] textRows = filter.text.equals(offeredText) && offeredVersion == storeVersion
+                    ? offeredRows : store.search().queryNow(filter.text);
+            matches = matches == null ? textRows : intersect(matches, textRows);
+        }
+        rows = matches;
+        categoryTotals = new long[store.categoryCount()];
+        total = 0;
+        for (int row : rows) {
+            long amount = store.displayAmountAt(row);
+            categoryTotals[store.categoryIdAt(row)] += amount;
+            total += amount;
+        }
+        event.rows = rows.length;
+        event.finish();
+    }
+
+    /** Intersection of two ascending row arrays. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    int size() {
+        return rows == null ? store.liveCount() : rows.length;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int storeRow(int viewRow) {
+        return rows == null ? store.liveRow(viewRow) : rows[viewRow];
+    }
+
+    long total() {
+        return rows == null ? store.totalMinor() : total;
+    }
+
+    long categoryTotal(int categoryId) {
+        if (rows == null) return store.aggregates().categoryTotal(categoryId);
+        return categoryId < categoryTotals.length ? categoryTotals[categoryId] : 0;
+    }
+
+    /** Changes whenever the visible rows or totals may have changed. */
+    long version() {
+        refresh();
+        return version;
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Exchange rates from a local table, for ledgers kept in more than one
+ * currency.
+ *
+ * rates.txt holds one rate per line, "yyyy-MM-dd&lt;tab&gt;CUR&lt;tab&gt;rate",
+ * meaning one unit of CUR cost {@code rate} rupees from that day until the
+ * next line for CUR. Lines may come in any order, and # starts a comment.
+ * Each currency keeps a sorted column of days and a parallel column of
+ * rates, so the rate on any day is a binary search, O(log n). A day before
+ * a currency's first rate uses that first rate. A currency with no rates at
+ * all converts 1:1, and {@link #hasRates} lets callers warn about it.
+ *
+ * A {@link Conversion} answers for one pair of currencies. It remembers the
+ * range of days its last rate holds for, so a pass over rows searches once
+ * per rate change rather than once per row. Conversions cache state and
+ * belong to one thread; the table itself is immutable and shared freely.
+ *
+ * Amounts of every currency are held in hundredths, like rupees in paise.
+ */
+final class FxRates {
+    /** The currency rates are quoted in, and of every row written before currencies existed. */
+    static final String BASE = "INR";
+    /** No rates: every currency converts 1:1. */
+    static final FxRates NONE = new FxRates(Collections.emptyMap());
+
+    /** Rates of one currency by day; {@code days} is ascending. */
+    private static final class Series {
+        final int[] days;
+        final double[] rates;
+
+        Series(int[] days, double[] rates) {
+            this.days = days;
+            this.rates = rates;
+        }
+
+        /** Index of the rate in force on {@code day}, or -1 before the first. */
+        int floor(int day) {
+            int low = 0, high = days.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (days[mid] <= day) low = mid + 1;
+                else high = mid - 1;
+            }
+            return high;
+        }
+
+        double rateAt(int k) {
+            return rates[Math.max(k, 0)];
+        }
+
+        int firstDayOf(int k) {
+            return k < 0 ? Integer.MIN_VALUE : days[k];
+        }
+
+        int lastDayOf(int k) {
+            return k + 1 < days.length ? days[k + 1] - 1 : Integer.MAX_VALUE;
+        }
+    }
+
+    /** Converts amounts from one currency into another. Not thread-safe. */
+    static final class Conversion {
+        private final Series from;
+        private final Series to;
+        private final boolean identity;
+        // The factor holds for days [validFrom, validTo]; empty until the first lookup
+        private int validFrom = 1, validTo = 0;
+        private double factor;
+
+        private Conversion(Series from, Series to, boolean identity) {
+            this.from = from;
+            this.to = to;
+            this.identity = identity;
+        }
+
+        /** {@code amountMinor} at the rates in force on {@code epochDay}, rounded to the nearest hundredth. */
+        long convert(long amountMinor, int epochDay) {
+            if (identity) return amountMinor;
+            if (epochDay < validFrom || epochDay > validTo) lookUp(epochDay);
+            return Math.round(amountMinor * factor);
+        }
+
+        private void lookUp(int day) {
+            double rate = 1;
+            int first = Integer.MIN_VALUE, last = Integer.MAX_VALUE;
+            if (from != null) {
+                int k = from.floor(day);
+                rate = from.rateAt(k);
+                first = from.firstDayOf(k);
+                last = from.lastDayOf(k);
+            }
+            if (to != null) {
+                int k = to.floor(day);
+                rate /= to.rateAt(k);
+                first = Math.max(first, to.firstDayOf(k));
+                last = Math.min(last, to.lastDayOf(k));
+            }
+            factor = rate;
+            validFrom = first;
+            validTo = last;
+        }
+    }
+
+    /** Conversions into one currency, one per source currency. Not thread-safe. */
+    static final class Converter {
+        final String target;
+        private final FxRates rates;
+        private final HashMap<String, Conversion> conversions = new HashMap<>();
+
+        private Converter(FxRates rates, String target) {
+            this.rates = rates;
+            this.target = target;
+        }
+
+        Conversion from(String currency) {
+            return conversions.computeIfAbsent(currency, code -> rates.conversion(code, target));
+        }
+
+        long convert(long amountMinor, String currency, int epochDay) {
+            return from(currency).convert(amountMinor, epochDay);
+        }
+    }
+
+    private final Map<String, Series> series;
+
+    private FxRates(Map<String, Series> series) {
+        this.series = series;
+    }
+
+    /** True for the base currency and any currency the table has a rate for. */
+    boolean hasRates(String currency) {
+        return currency.equals(BASE) || series.containsKey(currency);
+    }
+
+    /** The base currency followed by every rated currency, alphabetically. */
+    List<String> currencies() {
+        List<String> codes = new ArrayList<>();
+        codes.add(BASE);
+        codes.addAll(new TreeSet<>(series.keySet()));
+        return codes;
+    }
+
+    /** Rupees per unit of {@code currency} on {@code epochDay}; 1 for a currency without rates. */
+    double rate(String currency, int epochDay) {
+        Series s = series.get(currency);
+        return s == null ? 1 : s.rateAt(s.floor(epochDay));
+    }
+
+    Conversion conversion(String from, String to) {
+        Series source = series.get(from), target = series.get(to);
+        return new Conversion(source, target, from.equals(to) || source == null && target == null);
+    }
+
+    Converter converter(String target) {
+        return new Converter(this, target);
+    }
+
+    /** Reads rates.txt; a missing file is an empty table. */
+    static FxRates load(Path file) throws IOException {
+        if (!Files.exists(file)) return NONE;
+        Map<String, TreeMap<Integer, Double>> byCurrency = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String text = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (text.isEmpty()) continue;
+                String[] fields = text.split("\\s+");
+                if (fields.length != 3) throw new IOException("Expected date, currency and rate: " + line);
+                try {
+                    int day = (int) LocalDate.parse(fields[0]).toEpochDay();
+                    String currency = normalize(fields[1]);
+                    if (currency.equals(BASE)) throw new IllegalArgumentException("rates are quoted in " + BASE);
+                    double rate = Double.parseDouble(fields[2]);
+                    if (!(rate > 0) || Double.isInfinite(rate)) throw new IllegalArgumentException("rate must be positive");
+                    // A later line for the same day wins
+                    byCurrency.computeIfAbsent(currency, c -> new TreeMap<>()).put(day, rate);
+                } catch (RuntimeException e) {
+                    throw new IOException("Bad rate '" + line + "': " + e.getMessage(), e);
+                }
+            }
+        }
+        Map<String, Series> series = new HashMap<>();
+        for (Map.Entry<String, TreeMap<Integer, Double>> currency : byCurrency.entrySet()) {
+            TreeMap<Integer, Double> rates = currency.getValue();
+            int[] days = new int[rates.size()];
+            double[] values = new double[rates.size()];
+            int k = 0;
+            for (Map.Entry<Integer, Double> rate : rates.entrySet()) {
+                days[k] = rate.getKey();
+                values[k++] = rate.getValue();
+            }
+            series.put(currency.getKey(), new Series(days, values));
+        }
+        return new FxRates(series);
+    }
+
+    /** Upper-cases a three-letter ISO 4217 code; throws IllegalArgumentException for anything else. */
+    static String normalize(String code) {
+        String currency = code.trim().toUpperCase(Locale.ROOT);
+        if (!isCurrency(currency)) throw new IllegalArgumentException("Not a currency code: '" + code + "'");
+        return currency;
+    }
+
+    static boolean isCurrency(String code) {
+        if (code.length() != 3) return false;
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || c > 'Z') return false;
+        }
+        return true;
+    }
+
+    /** Prefix for amounts in {@code currency}: "Rs." for rupees as before, else the code and a space. */
+    static String symbol(String currency) {
+        return currency.equals(BASE) ? "Rs." : currency + " ";
+    }
+
+    static String format(long amountMinor, String currency) {
+        return symbol(currency) + Money.format(amountMinor);
+    }
+
+    /**
+     * Splits "12.50", "12.50 USD", "USD 12.50" or "Rs.12.50" into the
+     * amount text and the currency, which is {@code otherwise} if none is
+     * given.
+     */
+    static String[] splitAmount(String text, String otherwise) {
+        String value = text.trim();
+        if (value.startsWith("Rs.")) return new String[]{value.substring(3).trim(), BASE};
+        String[] words = value.split("\\s+");
+        if (words.length == 2) {
+            boolean leading = Character.isLetter(words[0].charAt(0));
+            return new String[]{leading ? words[1] : words[0], normalize(leading ? words[0] : words[1])};
+        }
+        return new String[]{value, otherwise};
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Maps the columns of a delimited file onto expense fields for
+ * {@link ExpenseImporter}.
+ *
+ * A schema is read from a properties file such as:
+ * <pre>
+ * delimiter=,
+ * header=true
+ * description=Narration
+ * amount=Withdrawal Amt.
+ * date=Date
+ * datePattern=dd/MM/yy
+ * category=-
+ * defaultCategory=Other
+ * currency=-
+ * defaultCurrency=INR
+ * debitsNegative=false
+ * </pre>
+ * Columns are header names or 0-based indexes, and "-" means the file has no
+ * such column. Rows with no currency, or a blank one, are in
+ * {@code defaultCurrency}. When {@code debitsNegative} is set, amounts are negated
+ * first. This suits statements that show spending as negative numbers.
+ * Rows whose final amount is not positive (credits, refunds) are skipped.
+ */
+class ImportSchema {
+    static final int NONE = -1;
+
+    final char delimiter;
+    final boolean header;
+    final String descriptionColumn;
+    final String amountColumn;
+    final String categoryColumn;
+    final String dateColumn;
+    final DateTimeFormatter datePattern;   // null for ISO yyyy-MM-dd
+    final String defaultCategory;
+    final String currencyColumn;
+    final String defaultCurrency;
+    final boolean debitsNegative;
+
+    ImportSchema(char delimiter, boolean header, String descriptionColumn, String amountColumn,
+                 String categoryColumn, String dateColumn, String datePattern,
+                 String defaultCategory, String currencyColumn, String defaultCurrency, boolean debitsNegative) {
+        this.delimiter = delimiter;
+        this.header = header;
+        this.descriptionColumn = descriptionColumn;
+        this.amountColumn = amountColumn;
+        this.categoryColumn = categoryColumn;
+        this.dateColumn = dateColumn;
+        this.datePattern = datePattern == null || datePattern.isEmpty()
+                ? null : DateTimeFormatter.ofPattern(datePattern, Locale.ROOT);
+        this.defaultCategory = defaultCategory;
+        this.currencyColumn = currencyColumn;
+        this.defaultCurrency = defaultCurrency;
+        this.debitsNegative = debitsNegative;
+    }
+
+    /** The "description,amount,category,date[,currency]" layout written by Export CSV. */
+    static ImportSchema legacy() {
+        return new ImportSchema(',', false, "0", "1", "2", "3", null, "Other", "4", FxRates.BASE, false);
+    }
+
+    static ImportSchema load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(in);
+        }
+        String delimiter = props.getProperty("delimiter", ",");
+        if (delimiter.equals("\\t") || delimiter.equalsIgnoreCase("tab")) delimiter = "\t";
+        if (delimiter.length() != 1) throw new IOException("Delimiter must be a single character: " + delimiter);
+        String description = props.getProperty("description");
+        String amount = props.getProperty("amount");
+        String date = props.getProperty("date");
+        if (description == null || amount == null || date == null) {
+            throw new IOException("Schema must map description, amount and date");
+        }
+        String defaultCategory = props.getProperty("defaultCategory", "Other");
+        if (defaultCategory.isEmpty() || defaultCategory.length() > Expense.MAX_CATEGORY_LENGTH) {
+            throw new IOException("defaultCategory must be 1 to " + Expense.MAX_CATEGORY_LENGTH + " characters");
+        }
+        String defaultCurrency;
+        try {
+            defaultCurrency = FxRates.normalize(props.getProperty("defaultCurrency", FxRates.BASE));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        return new ImportSchema(delimiter.charAt(0),
+                Boolean.parseBoolean(props.getProperty("header", "true")),
+                description, amount, props.getProperty("category", "-"), date,
+                props.getProperty("datePattern"),
+                defaultCategory,
+                props.getProperty("currency", "-"), defaultCurrency,
+                Boolean.parseBoolean(props.getProperty("debitsNegative", "false")));
+    }
+
+    /**
+     * Picks the schema for {@code csv}: a sibling "&lt;name&gt;.schema" file, else
+     * "import-schema.properties" in the working directory, else the legacy layout.
+     */
+    static ImportSchema forFile(Path csv) throws IOException {
+        Path sibling = csv.resolveSibling(csv.getFileName() + ".schema");
+        if (Files.exists(sibling)) return load(sibling);
+        Path shared = Paths.get("import-schema.properties");
+        if (Files.exists(shared)) return load(shared);
+        return legacy();
+    }
+
+    /** Resolves a column reference to an index, using the header row if there is one. */
+    int resolve(String column, String[] headerNames) throws IOException {
+        if (column == null || column.equals("-")) return NONE;
+        String name = column.trim();
+        if (headerNames != null) {
+            for (int i = 0; i < headerNames.length; i++) {
+                if (headerNames[i].trim().equalsIgnoreCase(name)) return i;
+            }
+        }
+        try {
+            return Integer.parseInt(name);
+        } catch (NumberFormatException e) {
+            throw new IOException("No column named '" + name + "'");
+        }
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Versioned binary columnar ledger format.
+ *
+ * <pre>
+ * header   magic "EXPL", version, rowCount, categoryCount, nextId,
+ *          offsets of ids, amounts, days, cats, descOffs and heap,
+ *          currencyCount, padding, offset of curs (sections 8-byte aligned)
+ * dict     categoryCount x (u16 length, UTF-8 bytes), then currencyCount more
+ * ids      rowCount x i64
+ * amounts  rowCount x i64   fixed-point minor units (hundredths)
+ * days     rowCount x i32   epoch day
+ * cats     rowCount x i16   index into the categories of dict
+ * curs     rowCount x i16   index into the currencies of dict
+ * descOffs (rowCount + 1) x i32  offsets into the string heap
+ * heap     UTF-8 description bytes
+ * </pre>
+ *
+ * Files are read through a {@link MappedByteBuffer} with bulk column copies,
+ * so loading involves no per-row parsing.
+ */
+class LedgerFile {
+    private static final int MAGIC = 0x4558504C; // "EXPL"
+    static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 6 * 8 + 4 + 4 + 8;
+
+    /** Decoded columns of a ledger file. */
+    static class Contents {
+        final long nextId;
+        final String[] categories;
+        final long[] ids;
+        final long[] amounts;
+        final int[] epochDays;
+        final short[] categoryIds;
+        final String[] currencies;
+        final short[] currencyIds;
+        final int[] descOffsets;
+        final byte[] heap;
+
+        Contents(long nextId, String[] categories, long[] ids, long[] amounts, int[] epochDays,
+                 short[] categoryIds, String[] currencies, short[] currencyIds, int[] descOffsets, byte[] heap) {
+            this.nextId = nextId;
+            this.categories = categories;
+            this.ids = ids;
+            this.amounts = amounts;
+            this.epochDays = epochDays;
+            this.categoryIds = categoryIds;
+            this.currencies = currencies;
+            this.currencyIds = currencyIds;
+            this.descOffsets = descOffsets;
+            this.heap = heap;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        String descriptionAt(int row) {
+            return new String(heap, descOffsets[row], descOffsets[row + 1] - descOffsets[row], StandardCharsets.UTF_8);
+        }
+    }
+
+    static boolean isLedgerFile(Path file) {
+        if (!Files.isRegularFile(file)) return false;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void write(Path file, ExpenseStore store, long nextId) throws IOException {
+        // Deleted rows are dropped, so a rewritten ledger loads without tombstones
+        int[] rows = new int[store.liveCount()];
+        int n = 0;
+        for (int row = 0; row < store.size(); row++) if (!store.isDeleted(row)) rows[n++] = row;
+        write(file, store, rows, n, nextId);
+    }
+
+    /** Writes the first {@code n} of {@code rows}, which must be live rows of {@code store}. */
+    static void write(Path file, ExpenseStore store, int[] rows, int n, long nextId) throws IOException {
+        int categoryCount = store.categoryCount();
+        int currencyCount = store.currencyCount();
+        byte[][] dictBytes = new byte[categoryCount + currencyCount][];
+        int dictLength = 0;
+        for (int k = 0; k < dictBytes.length; k++) {
+            String name = k < categoryCount ? store.categoryName(k) : store.currencyName(k - categoryCount);
+            dictBytes[k] = name.getBytes(StandardCharsets.UTF_8);
+            // The length is written as a u16; a longer name would corrupt the segment
+            if (dictBytes[k].length > 0xFFFF) throw new IOException("Name too long for a ledger file: " + dictBytes[k].length + " bytes");
+            dictLength += 2 + dictBytes[k].length;
+        }
+
+        long dictOff = HEADER_BYTES;
+        long idsOff = align(dictOff + dictLength);
+        long amountsOff = idsOff + 8L * n;
+        long daysOff = amountsOff + 8L * n;
+        long catsOff = align(daysOff + 4L * n);
+        long cursOff = align(catsOff + 2L * n);
+        long descOffsOff = align(cursOff + 2L * n);
+        long heapOff = align(descOffsOff + 4L * (n + 1));
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             ColumnOutput out = new ColumnOutput(ch)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(categoryCount);
+            out.writeLong(nextId);
+            out.writeLong(idsOff);
+            out.writeLong(amountsOff);
+            out.writeLong(daysOff);
+            out.writeLong(catsOff);
+            out.writeLong(descOffsOff);
+            out.writeLong(heapOff);
+            out.writeInt(currencyCount);
+            out.writeInt(0);
+            out.writeLong(cursOff);
+
+            for (byte[] name : dictBytes) {
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            out.padTo(idsOff);
+            for (int j = 0; j < n; j++) out.writeLong(store.idAt(rows[j]));
+            for (int j = 0; j < n; j++) out.writeLong(store.amountAt(rows[j]));
+            for (int j = 0; j < n; j++) out.writeInt(store.epochDayAt(rows[j]));
+            out.padTo(catsOff);
+            for (int j = 0; j < n; j++) out.writeShort(store.categoryIdAt(rows[j]));
+            out.padTo(cursOff);
+            for (int j = 0; j < n; j++) out.writeShort(store.currencyIdAt(rows[j]));
+            out.padTo(descOffsOff);
+            long offset = 0;
+            for (int j = 0; j < n; j++) {
+                out.writeInt((int) offset);
+                offset += store.descriptionLengthAt(rows[j]);
+            }
+            if (offset > Integer.MAX_VALUE) throw new IOException("Description heap too large");
+            out.writeInt((int) offset);
+            out.padTo(heapOff);
+            byte[] desc = new byte[256];
+            for (int j = 0; j < n; j++) {
+                int row = rows[j];
+                int length = store.descriptionLengthAt(row);
+                if (length > desc.length) desc = new byte[Math.max(length, desc.length * 2)];
+                store.copyDescription(row, desc, 0);
+                out.write(desc, 0, length);
+            }
+            out.flush();
+            ch.force(true);
+        }
+    }
+
+    static Contents read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES) throw new IOException("Truncated ledger: " + file);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC) throw new IOException("Not a ledger file: " + file);
+            int version = buf.getInt();
+            if (version != VERSION) throw new IOException("Unsupported ledger version " + version);
+            int n = buf.getInt();
+            int categoryCount = buf.getInt();
+            long nextId = buf.getLong();
+            long idsOff = buf.getLong();
+            long amountsOff = buf.getLong();
+            long daysOff = buf.getLong();
+            long catsOff = buf.getLong();
+            long descOffsOff = buf.getLong();
+            long heapOff = buf.getLong();
+            int currencyCount = buf.getInt();
+            buf.getInt();
+            long cursOff = buf.getLong();
+            if (n < 0 || heapOff > size) throw new IOException("Corrupt ledger header: " + file);
+
+            String[] categories = readNames(buf, categoryCount);
+            String[] currencies = readNames(buf, currencyCount);
+
+            long[] ids = new long[n];
+            long[] amounts = new long[n];
+            int[] days = new int[n];
+            short[] cats = new short[n];
+            short[] curs = new short[n];
+            int[] descOffsets = new int[n + 1];
+            section(buf, idsOff).asLongBuffer().get(ids);
+            section(buf, amountsOff).asLongBuffer().get(amounts);
+            section(buf, daysOff).asIntBuffer().get(days);
+            section(buf, catsOff).asShortBuffer().get(cats);
+            section(buf, cursOff).asShortBuffer().get(curs);
+            section(buf, descOffsOff).asIntBuffer().get(descOffsets);
+            byte[] heap = new byte[descOffsets[n]];
+            section(buf, heapOff).get(heap);
+            return new Contents(nextId, categories, ids, amounts, days, cats, currencies, curs, descOffsets, heap);
+        } catch (RuntimeException e) {
+            // Buffer under/overflows mean the file is truncated or corrupt
+            throw new IOException("Corrupt ledger: " + file, e);
+        }
+    }
+
+    private static String[] readNames(ByteBuffer buf, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buf.getShort() & 0xFFFF];
+            buf.get(name);
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static ByteBuffer section(ByteBuffer buf, long offset) {
+        ByteBuffer slice = buf.duplicate();
+        slice.position((int) offset);
+        return slice.slice();
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /** Buffered big-endian writer over a file channel that tracks its absolute offset. */
+    private static class ColumnOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private long written;
+
+        ColumnOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void writeLong(long v) throws IOException {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void writeShort(int v) throws IOException {
+            ensure(2);
+            buf.putShort((short) v);
+        }
+
+        void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ensure(1);
+                int n = Math.min(len, buf.remaining());
+                buf.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        void padTo(long offset) throws IOException {
+            while (written + buf.position() < offset) {
+                ensure(1);
+                buf.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) written += channel.write(buf);
+            buf.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from {@code long} keys to non-negative {@code int}
+ * values, with no boxing. {@link #get} returns -1 for missing keys.
+ */
+class LongIntMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys = newKeys(16);
+    private int[] values = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) return values[slot];
+            if (k == EMPTY) return -1;
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == EMPTY) throw new IllegalArgumentException("Reserved key");
+        if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        if (keys[slot] == EMPTY) size++;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) return;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = EMPTY;
+        size--;
+        // Re-insert the rest of the probe run so lookups past the hole still succeed
+        for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            long k = keys[next];
+            int v = values[next];
+            keys[next] = EMPTY;
+            size--;
+            put(k, v);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = newKeys(capacity);
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] k = new long[capacity];
+        Arrays.fill(k, EMPTY);
+        return k;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency histograms, cheap enough to leave on.
+ *
+ * A histogram keeps log-linear buckets in the manner of HdrHistogram: values
+ * below 16 get a bucket each, and every power of two above is split into 16
+ * equal buckets. Any recorded value is thus known to within 1/16 of itself,
+ * with 1K fixed counters and no allocation per sample. Recording is a couple
+ * of atomic adds, so any thread may record while the diagnostics card reads.
+ */
+final class Metrics {
+    private static final ConcurrentHashMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> LATENCIES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** Histogram of durations in nanoseconds. */
+    static Histogram latency(String name) {
+        return LATENCIES.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    static Map<String, Counter> counters() {
+        return new TreeMap<>(COUNTERS);
+    }
+
+    static Map<String, Histogram> latencies() {
+        return new TreeMap<>(LATENCIES);
+    }
+
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void add(long delta) {
+            value.add(delta);
+        }
+
+        long get() {
+            return value.sum();
+        }
+    }
+
+    static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            long seen = max.get();
+            while (value > seen && !max.compareAndSet(seen, value)) seen = max.get();
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        long mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        /** The value at {@code quantile} (0 to 1), as the middle of its bucket; 0 if empty. */
+        long percentile(double quantile) {
+            long n = count.sum();
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * n));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += counts.get(b);
+                if (seen >= rank) return Math.min(lowerBound(b) + bucketWidth(b) / 2, max.get());
+            }
+            return max.get();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+            return (long) (SUB_COUNT + bucket % SUB_COUNT) << (exponent - SUB_BITS);
+        }
+
+        private static long bucketWidth(int bucket) {
+            if (bucket < SUB_COUNT) return 1;
+            return 1L << (bucket / SUB_COUNT - 1);
+        }
+    }
+}
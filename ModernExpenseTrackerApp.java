@@ -4,10 +4,14 @@ import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
 public class ModernExpenseTrackerApp extends JFrame {
     // Colors
@@ -24,30 +28,71 @@ public class ModernExpenseTrackerApp extends JFrame {
     private static final Font HEADING_FONT = new Font("Segoe UI", Font.BOLD, 14);
     private static final Font REGULAR_FONT = new Font("Segoe UI", Font.PLAIN, 13);
     
-    private JTextField descField, amountField, dateField, budgetField;
-    private JComboBox<String> categoryBox;
-    private JLabel totalLabel, budgetUsedLabel, titleLabel;
+    private static final String[] CATEGORIES = {"Food", "Travel", "Bills", "Entertainment", "Shopping", "Health", "Education", "Other"};
+    private static final Path BUDGET_FILE = Paths.get("budget.txt");
+    private static final Path RECURRING_FILE = Paths.get("recurring.txt");
+    private static final Path RATES_FILE = Paths.get("rates.txt");
+    private static final String[] REPEAT_CHOICES = {"Does not repeat", "Daily", "Weekly", "Monthly", "Yearly", "Custom..."};
+    
+    private JTextField descField, amountField, dateField, untilField, budgetField;
+    private JComboBox<String> categoryBox, repeatBox, filterCategoryBox, budgetPeriodBox, budgetCategoryBox;
+    private JComboBox<String> currencyBox, displayCurrencyBox;
+    private JTextField filterFromField, filterToField, searchField;
+    private Timer searchDebounce;
+    private SearchWorker searchWorker;
+    private JLabel totalLabel, budgetUsedLabel, budgetMonthLabel, titleLabel;
     private JTable table;
-    private DefaultTableModel tableModel;
-    private ArrayList<Expense> expenses;
-    private double totalExpense = 0;
-    private double budget = 0;
+    private ExpenseTableModel tableModel;
+    private ExpenseStore store;
+    private ExpenseView view;
+    private final StorageBackend storage;
+    private boolean loaded;
+    private boolean olderPending;
+    private BudgetPlan budgets = new BudgetPlan();
+    private RecurringPlan recurring = new RecurringPlan();
+    private FxRates rates = FxRates.NONE;
+    // Month shown by the budget panel, as year * 12 + (month - 1)
+    private int budgetMonth = ExpenseAggregates.monthIndexOfDay((int) LocalDate.now().toEpochDay());
     private JProgressBar budgetProgressBar;
     private JPanel cardPanel;
     private CardLayout cardLayout;
     private JPanel dashboardPanel, expensePanel;
     private JButton addExpenseViewBtn, dashboardViewBtn;
+    private JButton reportButton, recurringButton, undoButton, redoButton;
+    private final EditHistory history = new EditHistory();
+    private ReportWorker reportWorker;
+    private ImportWorker importWorker;
     private JPanel statusPanel;
-    private JLabel statusLabel;
+    private JLabel statusLabel, saveLabel;
+    private final AutoSaver autoSaver = new AutoSaver(this::fileSaved);
+    private StatusNotifier status;
+    private final PieChartRenderer pieChart = new PieChartRenderer();
+    private final TrendChartRenderer trendChart = new TrendChartRenderer();
 
-    public ModernExpenseTrackerApp() {
+    public ModernExpenseTrackerApp(StorageBackend storage) {
+        this.storage = storage;
         setTitle("Personal Expense Tracker");
         setSize(900, 700);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
         getContentPane().setBackground(BG_COLOR);
         
-        expenses = new ArrayList<>();
+        store = new ExpenseStore();
+        view = new ExpenseView(store);
+        
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                autoSaver.close();
+                try {
+                    storage.close();
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(ModernExpenseTrackerApp.this,
+                            "The last changes may not have been saved: " + ex.getMessage(),
+                            "Expense Tracker", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
         
         // Create main components
         createNavBar();
@@ -55,20 +100,32 @@ public class ModernExpenseTrackerApp extends JFrame {
         createDashboardPanel();
         createExpensePanel();
         createStatusBar();
+        storage.setFailureListener(this::storageFailed);
+        // Every write, whoever makes it, reaches the table, totals and chart through the store's feed
+        store.addChangeListener(this::storeChanged, SwingUtilities::invokeLater);
         
         // Add main panels to card layout
         cardPanel.add(dashboardPanel, "dashboard");
         cardPanel.add(expensePanel, "expense");
+        // Hidden: Ctrl+Shift+D shows timings and heap use; the nav buttons lead back
+        DiagnosticsPanel diagnosticsPanel = new DiagnosticsPanel(store);
+        cardPanel.add(diagnosticsPanel, "diagnostics");
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_D,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx() | InputEvent.SHIFT_DOWN_MASK), "diagnostics");
+        getRootPane().getActionMap().put("diagnostics", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                diagnosticsPanel.refresh();
+                cardLayout.show(cardPanel, "diagnostics");
+            }
+        });
         cardLayout.show(cardPanel, "dashboard");
         
-        // Load saved data
-        loadExpensesFromFile();
-        loadBudgetFromFile();
-        updateTotals();
-        updateCategoryChart();
-        
         setVisible(true);
         setLocationRelativeTo(null);
+        
+        // Load saved data in the background so the window is usable immediately
+        new ExpenseLoader().execute();
     }
     
     private void createNavBar() {
@@ -148,6 +205,11 @@ public class ModernExpenseTrackerApp extends JFrame {
         budgetTitle.setFont(HEADING_FONT);
         budgetTitle.setForeground(TEXT_COLOR);
         
+        JPanel budgetHeader = new JPanel(new GridLayout(2, 1, 0, 5));
+        budgetHeader.setOpaque(false);
+        budgetHeader.add(budgetTitle);
+        budgetHeader.add(createBudgetPeriodBar());
+        
         JPanel budgetInputPanel = new JPanel(new BorderLayout(10, 0));
         budgetInputPanel.setOpaque(false);
         
@@ -155,9 +217,10 @@ public class ModernExpenseTrackerApp extends JFrame {
         stylizeTextField(budgetField);
         budgetField.setFont(new Font("Segoe UI", Font.BOLD, 18));
         
-        JLabel currencyLabel = new JLabel("₹");
-        // Use Unicode escape sequence for Rupee symbol or fallback to "Rs."
-        currencyLabel.setText("Rs.");  // Safer option than using ₹ directly
+        // Budgets are entered and kept in rupees whatever the display currency
+        JLabel currencyLabel = new JLabel(FxRates.symbol(FxRates.BASE).trim());
+        currencyLabel.setToolTipText("Budgets are set in " + FxRates.BASE
+                + "; the budget line shows them in the display currency");
         currencyLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
         currencyLabel.setForeground(TEXT_COLOR);
         
@@ -180,11 +243,11 @@ public class ModernExpenseTrackerApp extends JFrame {
         JPanel budgetLabelsPanel = new JPanel(new GridLayout(2, 1, 0, 5));
         budgetLabelsPanel.setOpaque(false);
         
-        totalLabel = new JLabel("Total Spent: ₹0.00");
+        totalLabel = new JLabel("Total Spent: " + displayMoney(0));
         totalLabel.setFont(REGULAR_FONT);
         totalLabel.setForeground(TEXT_COLOR);
         
-        budgetUsedLabel = new JLabel("Budget Used: ₹0.00 / ₹0.00");
+        budgetUsedLabel = new JLabel("Budget Used: " + displayMoney(0) + " / " + displayMoney(0));
         budgetUsedLabel.setFont(REGULAR_FONT);
         budgetUsedLabel.setForeground(TEXT_COLOR);
         
@@ -196,11 +259,11 @@ public class ModernExpenseTrackerApp extends JFrame {
         budgetStatusPanel.add(budgetLabelsPanel, BorderLayout.NORTH);
         budgetStatusPanel.add(budgetProgressBar, BorderLayout.SOUTH);
         
-        budgetPanel.add(budgetTitle, BorderLayout.NORTH);
+        budgetPanel.add(budgetHeader, BorderLayout.NORTH);
         budgetPanel.add(budgetInputPanel, BorderLayout.CENTER);
         budgetPanel.add(budgetStatusPanel, BorderLayout.SOUTH);
         
-        // Chart panel (placeholder for category distribution)
+        // Chart panel: category distribution or spending over time
         JPanel chartPanel = createRoundedPanel(new BorderLayout());
         chartPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
         
@@ -212,13 +275,49 @@ public class ModernExpenseTrackerApp extends JFrame {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                drawCategoryPieChart(g);
+                pieChart.paint(g, getWidth(), getHeight(), view);
             }
         };
         categoryChartPanel.setOpaque(false);
         
-        chartPanel.add(chartTitle, BorderLayout.NORTH);
-        chartPanel.add(categoryChartPanel, BorderLayout.CENTER);
+        CardLayout chartCards = new CardLayout();
+        JPanel chartCardPanel = new JPanel(chartCards);
+        chartCardPanel.setOpaque(false);
+        chartCardPanel.add(categoryChartPanel, "categories");
+        chartCardPanel.add(createTrendChartPanel(), "trend");
+        
+        JComboBox<String> chartBox = new JComboBox<>(new String[]{"Categories", "Trend (line)", "Trend (bar)"});
+        stylizeComboBox(chartBox);
+        chartBox.addActionListener(e -> {
+            int choice = chartBox.getSelectedIndex();
+            chartTitle.setText(choice == 0 ? "Expense Categories" : "Spending Over Time");
+            trendChart.setStyle(choice == 2 ? TrendChartRenderer.Style.BAR : TrendChartRenderer.Style.LINE);
+            chartCards.show(chartCardPanel, choice == 0 ? "categories" : "trend");
+            chartCardPanel.repaint();
+        });
+        
+        // Totals, charts and budgets in another currency; filled in once rates.txt is read
+        displayCurrencyBox = new JComboBox<>(new String[]{FxRates.BASE});
+        stylizeComboBox(displayCurrencyBox);
+        displayCurrencyBox.setToolTipText("Show amounts in");
+        displayCurrencyBox.addActionListener(e -> showInCurrency((String) displayCurrencyBox.getSelectedItem()));
+        
+        JPanel chartChoices = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        chartChoices.setOpaque(false);
+        JLabel showInLabel = new JLabel("Show in");
+        showInLabel.setFont(REGULAR_FONT);
+        showInLabel.setForeground(TEXT_COLOR);
+        chartChoices.add(showInLabel);
+        chartChoices.add(displayCurrencyBox);
+        chartChoices.add(chartBox);
+        
+        JPanel chartHeader = new JPanel(new BorderLayout());
+        chartHeader.setOpaque(false);
+        chartHeader.add(chartTitle, BorderLayout.WEST);
+        chartHeader.add(chartChoices, BorderLayout.EAST);
+        
+        chartPanel.add(chartHeader, BorderLayout.NORTH);
+        chartPanel.add(chartCardPanel, BorderLayout.CENTER);
         
         // Add both panels to top section
         topPanel.add(budgetPanel);
@@ -235,20 +334,50 @@ public class ModernExpenseTrackerApp extends JFrame {
         tableTitle.setFont(HEADING_FONT);
         tableTitle.setForeground(TEXT_COLOR);
         
-        JButton reportButton = new JButton("Generate Report");
+        reportButton = new JButton("Generate Report");
         stylizeButton(reportButton, PRIMARY_COLOR);
         reportButton.addActionListener(e -> generateReport());
         
+        recurringButton = new JButton("Recurring");
+        stylizeButton(recurringButton, PRIMARY_COLOR);
+        recurringButton.addActionListener(e -> manageRecurring());
+        
+        JButton importButton = new JButton("Import CSV");
+        stylizeButton(importButton, PRIMARY_COLOR);
+        importButton.addActionListener(e -> importCsv());
+        
+        JButton exportButton = new JButton("Export CSV");
+        stylizeButton(exportButton, PRIMARY_COLOR);
+        exportButton.addActionListener(e -> exportCsv());
+        
+        JButton deleteButton = new JButton("Delete");
+        stylizeButton(deleteButton, DANGER_COLOR);
+        deleteButton.addActionListener(e -> deleteSelected());
+        
+        undoButton = new JButton("Undo");
+        stylizeButton(undoButton, ACCENT_COLOR);
+        undoButton.addActionListener(e -> undo());
+        redoButton = new JButton("Redo");
+        stylizeButton(redoButton, ACCENT_COLOR);
+        redoButton.addActionListener(e -> redo());
+        updateUndoButtons();
+        
+        JPanel tableButtonsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
+        tableButtonsPanel.setOpaque(false);
+        tableButtonsPanel.add(undoButton);
+        tableButtonsPanel.add(redoButton);
+        tableButtonsPanel.add(deleteButton);
+        tableButtonsPanel.add(recurringButton);
+        tableButtonsPanel.add(importButton);
+        tableButtonsPanel.add(exportButton);
+        tableButtonsPanel.add(reportButton);
+        
         tableHeaderPanel.add(tableTitle, BorderLayout.WEST);
-        tableHeaderPanel.add(reportButton, BorderLayout.EAST);
+        tableHeaderPanel.add(tableButtonsPanel, BorderLayout.EAST);
+        tableHeaderPanel.add(createFilterBar(), BorderLayout.SOUTH);
         
         // Create table
-        tableModel = new DefaultTableModel(new String[]{"Description", "Amount (Rs.)", "Category", "Date"}, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new ExpenseTableModel(view);
         table = new JTable(tableModel);
         table.setFont(REGULAR_FONT);
         table.setRowHeight(30);
@@ -265,9 +394,31 @@ public class ModernExpenseTrackerApp extends JFrame {
         centerRenderer.setHorizontalAlignment(JLabel.CENTER);
         table.getColumnModel().getColumn(1).setCellRenderer(centerRenderer);
         
+        // Cells are edited in place; the category column offers the usual categories
+        tableModel.setEditHandler(this::editCell);
+        JComboBox<String> categoryEditor = new JComboBox<>(CATEGORIES);
+        categoryEditor.setEditable(true);
+        table.getColumnModel().getColumn(2).setCellEditor(new DefaultCellEditor(categoryEditor));
+        table.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0), "deleteExpenses");
+        table.getActionMap().put("deleteExpenses", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                deleteSelected();
+            }
+        });
+        
         JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         scrollPane.getViewport().setBackground(Color.WHITE);
+        // Scrolling to the end of the table reads the next older year still on disk
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            Adjustable bar = e.getAdjustable();
+            if (loaded && !olderPending && !view.isFiltered()
+                    && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()) {
+                olderPending = true;
+                SwingUtilities.invokeLater(this::loadOlderHistory);
+            }
+        });
         
         tableContainer.add(tableHeaderPanel, BorderLayout.NORTH);
         tableContainer.add(scrollPane, BorderLayout.CENTER);
@@ -275,6 +426,339 @@ public class ModernExpenseTrackerApp extends JFrame {
         // Add components to dashboard
         dashboardPanel.add(topPanel, BorderLayout.NORTH);
         dashboardPanel.add(tableContainer, BorderLayout.CENTER);
+        
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        InputMap keys = dashboardPanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK), "redo");
+        dashboardPanel.getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        dashboardPanel.getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
+    }
+    
+    /**
+     * Spending over the whole ledger. The wheel zooms around the pointer,
+     * dragging pans and a double-click shows everything again. Each change
+     * only repaints; the renderer reads a bounded number of rollup buckets.
+     */
+    private JPanel createTrendChartPanel() {
+        JPanel trendPanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                trendChart.paint(g, getWidth(), getHeight(), store.aggregates());
+            }
+        };
+        trendPanel.setOpaque(false);
+        trendPanel.setToolTipText("Scroll to zoom, drag to pan, double-click to show all");
+        
+        MouseAdapter navigation = new MouseAdapter() {
+            private int lastX;
+            
+            @Override
+            public void mousePressed(MouseEvent e) {
+                lastX = e.getX();
+            }
+            
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                trendChart.pan(e.getX() - lastX, trendPanel.getWidth());
+                lastX = e.getX();
+                trendPanel.repaint();
+            }
+            
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    trendChart.fitAll();
+                    trendPanel.repaint();
+                }
+            }
+            
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                trendChart.zoom(Math.pow(1.2, e.getPreciseWheelRotation()), e.getX(), trendPanel.getWidth());
+                trendPanel.repaint();
+            }
+        };
+        trendPanel.addMouseListener(navigation);
+        trendPanel.addMouseMotionListener(navigation);
+        trendPanel.addMouseWheelListener(navigation);
+        return trendPanel;
+    }
+    
+    /** Month stepper plus the period and category the budget bar tracks. */
+    private JPanel createBudgetPeriodBar() {
+        JPanel periodPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        periodPanel.setOpaque(false);
+        
+        JButton previousMonth = new JButton("<");
+        stylizeButton(previousMonth, ACCENT_COLOR);
+        previousMonth.addActionListener(e -> showBudgetMonth(budgetMonth - 1));
+        JButton nextMonth = new JButton(">");
+        stylizeButton(nextMonth, ACCENT_COLOR);
+        nextMonth.addActionListener(e -> showBudgetMonth(budgetMonth + 1));
+        
+        budgetMonthLabel = new JLabel(BudgetPlan.formatMonth(budgetMonth));
+        budgetMonthLabel.setFont(REGULAR_FONT);
+        budgetMonthLabel.setForeground(TEXT_COLOR);
+        
+        BudgetPlan.Period[] periods = BudgetPlan.Period.values();
+        String[] periodNames = new String[periods.length];
+        for (int i = 0; i < periods.length; i++) periodNames[i] = periods[i].toString();
+        budgetPeriodBox = new JComboBox<>(periodNames);
+        stylizeComboBox(budgetPeriodBox);
+        budgetPeriodBox.addActionListener(e -> updateTotals());
+        
+        budgetCategoryBox = new JComboBox<>(new String[]{"All Categories"});
+        stylizeComboBox(budgetCategoryBox);
+        for (String category : CATEGORIES) budgetCategoryBox.addItem(category);
+        budgetCategoryBox.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e) {
+                // Imported statements can bring categories the entry form does not offer
+                for (int i = 0; i < store.categoryCount(); i++) {
+                    String category = store.categoryName(i);
+                    if (((DefaultComboBoxModel<String>) budgetCategoryBox.getModel()).getIndexOf(category) < 0) {
+                        budgetCategoryBox.addItem(category);
+                    }
+                }
+            }
+            
+            @Override
+            public void popupMenuWillBecomeInvisible(javax.swing.event.PopupMenuEvent e) {
+            }
+            
+            @Override
+            public void popupMenuCanceled(javax.swing.event.PopupMenuEvent e) {
+            }
+        });
+        budgetCategoryBox.addActionListener(e -> showBudgetMonth(budgetMonth));
+        
+        periodPanel.add(previousMonth);
+        periodPanel.add(budgetMonthLabel);
+        periodPanel.add(nextMonth);
+        periodPanel.add(budgetPeriodBox);
+        periodPanel.add(budgetCategoryBox);
+        return periodPanel;
+    }
+    
+    /** Moves the budget panel to another month; only bucket reads, nothing is rescanned. */
+    private void showBudgetMonth(int monthIndex) {
+        budgetMonth = monthIndex;
+        budgetMonthLabel.setText(BudgetPlan.formatMonth(monthIndex));
+        long limit = budgets.monthlyLimit(budgetCategory(), monthIndex);
+        budgetField.setText(limit > 0 ? Money.format(limit) : "");
+        updateTotals();
+    }
+    
+    /** Category the budget panel is showing, or null for the overall budget. */
+    private String budgetCategory() {
+        return budgetCategoryBox.getSelectedIndex() > 0 ? budgetCategoryBox.getSelectedItem().toString() : null;
+    }
+    
+    private JPanel createFilterBar() {
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        filterPanel.setOpaque(false);
+        filterPanel.setBorder(BorderFactory.createEmptyBorder(10, 0, 0, 0));
+        
+        filterCategoryBox = new JComboBox<>(new String[]{"All Categories"});
+        stylizeComboBox(filterCategoryBox);
+        filterCategoryBox.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e) {
+                refreshFilterCategories();
+            }
+            
+            @Override
+            public void popupMenuWillBecomeInvisible(javax.swing.event.PopupMenuEvent e) {
+            }
+            
+            @Override
+            public void popupMenuCanceled(javax.swing.event.PopupMenuEvent e) {
+            }
+        });
+        
+        filterFromField = new JTextField(8);
+        stylizeTextField(filterFromField);
+        filterFromField.setToolTipText("From date (YYYY-MM-DD), blank for no limit");
+        filterToField = new JTextField(8);
+        stylizeTextField(filterToField);
+        filterToField.setToolTipText("To date (YYYY-MM-DD), blank for no limit");
+        
+        JButton applyButton = new JButton("Filter");
+        stylizeButton(applyButton, ACCENT_COLOR);
+        applyButton.addActionListener(e -> applyFilter());
+        
+        JButton clearButton = new JButton("Clear");
+        stylizeButton(clearButton, ACCENT_COLOR);
+        clearButton.addActionListener(e -> clearFilter());
+        
+        JLabel fromLabel = new JLabel("From");
+        fromLabel.setFont(REGULAR_FONT);
+        fromLabel.setForeground(TEXT_COLOR);
+        JLabel toLabel = new JLabel("To");
+        toLabel.setFont(REGULAR_FONT);
+        toLabel.setForeground(TEXT_COLOR);
+        
+        searchField = new JTextField(14);
+        stylizeTextField(searchField);
+        searchField.setToolTipText("Search descriptions");
+        // Re-run the search once typing pauses rather than on every keystroke
+        searchDebounce = new Timer(150, e -> startSearch());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                searchDebounce.restart();
+            }
+        });
+        
+        JLabel searchLabel = new JLabel("Search");
+        searchLabel.setFont(REGULAR_FONT);
+        searchLabel.setForeground(TEXT_COLOR);
+        
+        filterPanel.add(searchLabel);
+        filterPanel.add(searchField);
+        filterPanel.add(filterCategoryBox);
+        filterPanel.add(fromLabel);
+        filterPanel.add(filterFromField);
+        filterPanel.add(toLabel);
+        filterPanel.add(filterToField);
+        filterPanel.add(applyButton);
+        filterPanel.add(clearButton);
+        return filterPanel;
+    }
+    
+    private void refreshFilterCategories() {
+        Object selected = filterCategoryBox.getSelectedItem();
+        filterCategoryBox.removeAllItems();
+        filterCategoryBox.addItem("All Categories");
+        for (int i = 0; i < store.categoryCount(); i++) {
+            filterCategoryBox.addItem(store.categoryName(i));
+        }
+        filterCategoryBox.setSelectedItem(selected);
+    }
+    
+    private void applyFilter() {
+        try {
+            int fromDay = parseFilterDay(filterFromField, ExpenseFilter.ANY_DAY_FROM);
+            int toDay = parseFilterDay(filterToField, ExpenseFilter.ANY_DAY_TO);
+            if (fromDay > toDay) {
+                showStatus("From date must not be after To date", DANGER_COLOR);
+                return;
+            }
+            String category = filterCategoryBox.getSelectedIndex() > 0
+                    ? filterCategoryBox.getSelectedItem().toString() : null;
+            ExpenseFilter filter = new ExpenseFilter(fromDay, toDay, category, searchField.getText());
+            if (!filter.isEmpty() && !loadHistory(fromDay, toDay)) return;
+            view.setFilter(filter);
+            tableModel.viewChanged();
+            updateCategoryChart();
+            String message = view.isFiltered() ? view.size() + " matching expenses" : "Showing all expenses";
+            if (view.isFiltered() && !filter.hasText()) {
+                // Counted for just this range; an open end stops at today
+                int today = (int) LocalDate.now().toEpochDay();
+                RecurringPlan.Projection projected = recurring.project(fromDay,
+                        toDay == ExpenseFilter.ANY_DAY_TO ? today : toDay, category, store.displayConverter());
+                if (projected.count > 0) {
+                    message += ", plus " + projected.count + " recurring not yet added ("
+                            + displayMoney(projected.amountMinor) + ")";
+                }
+            }
+            showStatus(message, SUCCESS_COLOR);
+        } catch (DateTimeParseException ex) {
+            showStatus("Please enter filter dates as YYYY-MM-DD", DANGER_COLOR);
+        }
+    }
+    
+    private int parseFilterDay(JTextField field, int blank) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? blank : (int) LocalDate.parse(text).toEpochDay();
+    }
+    
+    private void clearFilter() {
+        searchField.setText("");
+        filterCategoryBox.setSelectedIndex(0);
+        filterFromField.setText("");
+        filterToField.setText("");
+        view.setFilter(null);
+        tableModel.viewChanged();
+        updateCategoryChart();
+    }
+    
+    private void startSearch() {
+        if (searchWorker != null) searchWorker.cancel(true);
+        String text = searchField.getText().trim();
+        if (text.isEmpty()) {
+            searchWorker = null;
+            showSearchResult(null);
+            return;
+        }
+        if (!loadHistory(ExpenseFilter.ANY_DAY_FROM, ExpenseFilter.ANY_DAY_TO)) return;
+        searchWorker = new SearchWorker(text, store.aggregates().version());
+        searchWorker.execute();
+    }
+    
+    private void showSearchResult(String text) {
+        ExpenseFilter current = view.filter();
+        view.setFilter(current == null
+                ? new ExpenseFilter(ExpenseFilter.ANY_DAY_FROM, ExpenseFilter.ANY_DAY_TO, null, text)
+                : current.withText(text));
+        tableModel.viewChanged();
+        updateCategoryChart();
+    }
+    
+    /** Runs a description search off the EDT; only the most recent search is applied. */
+    private class SearchWorker extends SwingWorker<int[], Void> {
+        private final String text;
+        private final long storeVersion;
+        
+        SearchWorker(String text, long storeVersion) {
+            this.text = text;
+            this.storeVersion = storeVersion;
+        }
+        
+        @Override
+        protected int[] doInBackground() {
+            if (text == null) {
+                store.search().warm();
+                return null;
+            }
+            return store.search().query(text);
+        }
+        
+        @Override
+        protected void done() {
+            if (text == null || isCancelled() || searchWorker != this) return;
+            searchWorker = null;
+            try {
+                view.offerTextMatches(text, get(), storeVersion);
+                showSearchResult(text);
+            } catch (Exception e) {
+                showStatus("Search failed", DANGER_COLOR);
+            }
+        }
     }
     
     private void createExpensePanel() {
@@ -289,7 +773,7 @@ public class ModernExpenseTrackerApp extends JFrame {
         formTitle.setFont(HEADING_FONT);
         formTitle.setForeground(TEXT_COLOR);
         
-        JPanel inputsPanel = new JPanel(new GridLayout(4, 2, 15, 15));
+        JPanel inputsPanel = new JPanel(new GridLayout(5, 2, 15, 15));
         inputsPanel.setOpaque(false);
         
         // Description field
@@ -306,13 +790,18 @@ public class ModernExpenseTrackerApp extends JFrame {
         // Amount field
         JPanel amountPanel = new JPanel(new BorderLayout());
         amountPanel.setOpaque(false);
-        JLabel amountLabel = new JLabel("Amount (Rs.)");
+        JLabel amountLabel = new JLabel("Amount");
         amountLabel.setFont(REGULAR_FONT);
         amountLabel.setForeground(TEXT_COLOR);
         amountField = new JTextField();
         stylizeTextField(amountField);
+        // Editable, so a currency without rates yet can still be typed in
+        currencyBox = new JComboBox<>(new String[]{FxRates.BASE});
+        currencyBox.setEditable(true);
+        stylizeComboBox(currencyBox);
         amountPanel.add(amountLabel, BorderLayout.NORTH);
         amountPanel.add(amountField, BorderLayout.CENTER);
+        amountPanel.add(currencyBox, BorderLayout.EAST);
         
         // Category field
         JPanel categoryPanel = new JPanel(new BorderLayout());
@@ -320,7 +809,7 @@ public class ModernExpenseTrackerApp extends JFrame {
         JLabel categoryLabel = new JLabel("Category");
         categoryLabel.setFont(REGULAR_FONT);
         categoryLabel.setForeground(TEXT_COLOR);
-        categoryBox = new JComboBox<>(new String[]{"Food", "Travel", "Bills", "Entertainment", "Shopping", "Health", "Education", "Other"});
+        categoryBox = new JComboBox<>(CATEGORIES);
         stylizeComboBox(categoryBox);
         categoryPanel.add(categoryLabel, BorderLayout.NORTH);
         categoryPanel.add(categoryBox, BorderLayout.CENTER);
@@ -336,10 +825,33 @@ public class ModernExpenseTrackerApp extends JFrame {
         datePanel.add(dateLabel, BorderLayout.NORTH);
         datePanel.add(dateField, BorderLayout.CENTER);
         
+        // Repeat fields
+        JPanel repeatPanel = new JPanel(new BorderLayout());
+        repeatPanel.setOpaque(false);
+        JLabel repeatLabel = new JLabel("Repeats");
+        repeatLabel.setFont(REGULAR_FONT);
+        repeatLabel.setForeground(TEXT_COLOR);
+        repeatBox = new JComboBox<>(REPEAT_CHOICES);
+        stylizeComboBox(repeatBox);
+        repeatPanel.add(repeatLabel, BorderLayout.NORTH);
+        repeatPanel.add(repeatBox, BorderLayout.CENTER);
+        
+        JPanel untilPanel = new JPanel(new BorderLayout());
+        untilPanel.setOpaque(false);
+        JLabel untilLabel = new JLabel("Repeats until (YYYY-MM-DD, optional)");
+        untilLabel.setFont(REGULAR_FONT);
+        untilLabel.setForeground(TEXT_COLOR);
+        untilField = new JTextField();
+        stylizeTextField(untilField);
+        untilPanel.add(untilLabel, BorderLayout.NORTH);
+        untilPanel.add(untilField, BorderLayout.CENTER);
+        
         inputsPanel.add(descPanel);
         inputsPanel.add(amountPanel);
         inputsPanel.add(categoryPanel);
         inputsPanel.add(datePanel);
+        inputsPanel.add(repeatPanel);
+        inputsPanel.add(untilPanel);
         
         JButton addButton = new JButton("Add Expense");
         stylizeButton(addButton, ACCENT_COLOR);
@@ -373,11 +885,35 @@ public class ModernExpenseTrackerApp extends JFrame {
         statusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         statusLabel.setForeground(TEXT_COLOR);
         
+        saveLabel = new JLabel();
+        saveLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        saveLabel.setForeground(new Color(120, 120, 120));
+        
         statusPanel.add(statusLabel, BorderLayout.WEST);
+        statusPanel.add(saveLabel, BorderLayout.EAST);
+        status = new StatusNotifier(statusLabel, TEXT_COLOR);
         
         add(statusPanel, BorderLayout.SOUTH);
     }
     
+    /** Called on the autosave thread after each background file write. */
+    private void fileSaved(Path file, long latencyMillis, int queued, IOException failure) {
+        if (failure != null) {
+            status.post("Failed to save " + file.getFileName(), DANGER_COLOR, StatusNotifier.Priority.HIGH);
+        }
+        String text = failure != null ? "Save failed" : "Saved " + file.getFileName() + " in " + latencyMillis + " ms";
+        SwingUtilities.invokeLater(() -> updateSaveLabel(text, queued));
+    }
+    
+    /** Called on the storage thread when a background sync or compaction fails. */
+    private void storageFailed(String action, IOException failure) {
+        status.post(action + " failed: " + failure.getMessage(), DANGER_COLOR, StatusNotifier.Priority.HIGH);
+    }
+    
+    private void updateSaveLabel(String text, int queued) {
+        saveLabel.setText(queued > 0 ? text + " (" + queued + " queued)" : text);
+    }
+    
     private JPanel createRoundedPanel(LayoutManager layout) {
         JPanel panel = new JPanel(layout) {
             @Override
@@ -445,51 +981,124 @@ public class ModernExpenseTrackerApp extends JFrame {
     }
     
     private void addExpense() {
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            return;
+        }
         try {
             String desc = descField.getText().trim();
             if (desc.isEmpty()) {
                 showStatus("Description cannot be empty", DANGER_COLOR);
                 return;
             }
+            if (desc.length() > Expense.MAX_DESCRIPTION_LENGTH) {
+                showStatus("Description must be at most " + Expense.MAX_DESCRIPTION_LENGTH + " characters", DANGER_COLOR);
+                return;
+            }
             
-            double amount = Double.parseDouble(amountField.getText());
-            if (amount <= 0) {
+            Money amount = Money.parse(amountField.getText());
+            if (!amount.isPositive()) {
                 showStatus("Amount must be greater than zero", DANGER_COLOR);
                 return;
             }
             
+            String currency = FxRates.normalize(String.valueOf(currencyBox.getSelectedItem()));
             String category = categoryBox.getSelectedItem().toString();
+            if (category.length() > Expense.MAX_CATEGORY_LENGTH) {
+                showStatus("Category must be at most " + Expense.MAX_CATEGORY_LENGTH + " characters", DANGER_COLOR);
+                return;
+            }
             LocalDate date = LocalDate.parse(dateField.getText());
             
-            Expense exp = new Expense(desc, amount, category, date);
-            expenses.add(exp);
-            tableModel.addRow(new Object[]{desc, String.format("%.2f", amount), category, date});
+            Schedule schedule = null;
+            int lastDay = ExpenseFilter.ANY_DAY_TO;
+            if (repeatBox.getSelectedIndex() > 0) {
+                String spec = repeatBox.getSelectedIndex() < REPEAT_CHOICES.length - 1
+                        ? repeatBox.getSelectedItem().toString()
+                        : JOptionPane.showInputDialog(this, "Repeat on, e.g. \"every 2 weeks on mon,thu\", "
+                                + "\"monthly last\" or \"1,15 * *\" (day of month, month, weekday)",
+                                "Custom Schedule", JOptionPane.PLAIN_MESSAGE);
+                if (spec == null) return;
+                try {
+                    schedule = Schedule.parse(spec);
+                } catch (IllegalArgumentException ex) {
+                    showStatus(ex.getMessage(), DANGER_COLOR);
+                    return;
+                }
+                String until = untilField.getText().trim();
+                if (!until.isEmpty()) lastDay = (int) LocalDate.parse(until).toEpochDay();
+                if (lastDay < date.toEpochDay()) {
+                    showStatus("Repeats until must not be before the date", DANGER_COLOR);
+                    return;
+                }
+            }
             
-            totalExpense += amount;
-            updateTotals();
-            updateCategoryChart();
-            saveExpensesToFile();
+            Expense exp = new Expense(storage.allocateId(), desc, amount, currency, category, date);
+            PerfEvents.Add event = new PerfEvents.Add();
+            if (!writeChange(null, exp)) return;
+            event.rows = 1;
+            event.finish();
+            history.record("Add", null, exp);
+            updateUndoButtons();
+            if (!rates.hasRates(currency)) warnUnrated();
+            if (schedule != null) {
+                // This occurrence is in the ledger now; later ones stay virtual until confirmed
+                int day = (int) date.toEpochDay();
+                recurring.add(desc, amount, currency, category, schedule, day, lastDay, day);
+                saveRecurring();
+                updateTotals();
+            }
             
             descField.setText("");
             amountField.setText("");
             dateField.setText(LocalDate.now().toString());
+            repeatBox.setSelectedIndex(0);
+            untilField.setText("");
             
-            showStatus("Expense added successfully", SUCCESS_COLOR);
+            showStatus(schedule == null ? "Expense added successfully" : "Expense added, repeating " + schedule, SUCCESS_COLOR);
             cardLayout.show(cardPanel, "dashboard");
             
         } catch (NumberFormatException ex) {
             showStatus("Please enter a valid amount", DANGER_COLOR);
+        } catch (IllegalArgumentException ex) {
+            // An unknown currency code, or whatever else rejected the input, says what was wrong
+            showStatus(ex.getMessage(), DANGER_COLOR);
         } catch (Exception ex) {
             showStatus("Invalid input. Please check all fields", DANGER_COLOR);
         }
     }
     
     private void updateTotals() {
-        totalLabel.setText("Total Spent: Rs." + String.format("%.2f", totalExpense));
-        budgetUsedLabel.setText("Budget Used: Rs." + String.format("%.2f", totalExpense) + " / Rs." + String.format("%.2f", budget));
-        
-        if (budget > 0) {
-            int percentUsed = (int) ((totalExpense / budget) * 100);
+        int today = (int) LocalDate.now().toEpochDay();
+        FxRates.Converter display = store.displayConverter();
+        RecurringPlan.Projection due = recurring.project(ExpenseFilter.ANY_DAY_FROM, today, null, display);
+        totalLabel.setText("Total Spent: " + displayMoney(store.totalMinor())
+                + (due.count == 0 ? "" : " (+" + displayMoney(due.amountMinor) + " recurring due)"));
+        recurringButton.setText(due.count == 0 ? "Recurring" : "Recurring (" + due.count + " due)");
+        
+        // Both sides are bucket lookups, so this stays cheap on every add and month switch
+        BudgetPlan.Period period = BudgetPlan.Period.values()[budgetPeriodBox.getSelectedIndex()];
+        String category = budgetCategory();
+        int categoryId = category == null ? -1 : store.categoryIdOf(category);
+        int anchorDay = budgetAnchorDay();
+        long actual = category != null && categoryId < 0 ? 0
+                : BudgetPlan.spent(store.aggregates(), period, categoryId, budgetMonth, anchorDay);
+        // Recurring expenses not yet added count towards the period they fall in, rent due later this month included
+        RecurringPlan.Projection projected = recurring.project(BudgetPlan.firstDay(period, budgetMonth, anchorDay),
+                BudgetPlan.lastDay(period, budgetMonth, anchorDay), category, display);
+        Money spent = Money.ofMinor(actual + projected.amountMinor);
+        // Budgets are set in rupees; shown in another currency they follow today's rate
+        Money budget = Money.ofMinor(display.convert(budgets.limit(period, category, budgetMonth), FxRates.BASE, today));
+        budgetUsedLabel.setText(period + ": " + displayMoney(spent.minor()) + " / " + displayMoney(budget.minor())
+                + (projected.count == 0 ? "" : " (incl. " + displayMoney(projected.amountMinor) + " recurring)"));
+        
+        if (!budget.isPositive()) {
+            budgetProgressBar.setValue(0);
+            budgetProgressBar.setString("No budget set");
+            budgetProgressBar.setForeground(SUCCESS_COLOR);
+            budgetProgressBar.setToolTipText(null);
+        } else {
+            int percentUsed = spent.percentOf(budget);
             budgetProgressBar.setValue(Math.min(percentUsed, 100));
             budgetProgressBar.setString(percentUsed + "% Used");
             
@@ -503,28 +1112,35 @@ public class ModernExpenseTrackerApp extends JFrame {
                 budgetProgressBar.setForeground(DANGER_COLOR);
                 budgetProgressBar.setToolTipText("Critical: Budget usage over 90%!");
                 
-                if (totalExpense > budget && budget > 0) {
+                if (spent.compareTo(budget) > 0) {
                     showStatus("Warning: You have exceeded your budget!", DANGER_COLOR);
                 }
             }
         }
     }
     
+    /** Last day of the rolling window: today, or the end of the month shown if that is earlier. */
+    private int budgetAnchorDay() {
+        LocalDate monthEnd = LocalDate.of(Math.floorDiv(budgetMonth, 12), Math.floorMod(budgetMonth, 12) + 1, 1)
+                .plusMonths(1).minusDays(1);
+        return (int) Math.min(monthEnd.toEpochDay(), LocalDate.now().toEpochDay());
+    }
+    
     private void setBudget() {
         try {
-            budget = Double.parseDouble(budgetField.getText());
-            if (budget <= 0) {
+            Money newBudget = Money.parse(budgetField.getText());
+            if (!newBudget.isPositive()) {
                 showStatus("Budget must be greater than zero", DANGER_COLOR);
                 return;
             }
+            budgets.set(budgetCategory(), budgetMonth, newBudget);
             
             updateTotals();
-            showStatus("Budget set successfully", SUCCESS_COLOR);
+            showStatus("Budget set from " + BudgetPlan.formatMonth(budgetMonth), SUCCESS_COLOR);
             
-            // Save budget to file
-            try (PrintWriter writer = new PrintWriter("budget.txt")) {
-                writer.println(budget);
-            }
+            // Written in the background from a copy; quick successive changes become one write
+            autoSaver.markDirty(BUDGET_FILE, budgets.copy()::writeTo);
+            updateSaveLabel("Saving...", autoSaver.queueDepth());
             
         } catch (NumberFormatException e) {
             showStatus("Please enter a valid budget amount", DANGER_COLOR);
@@ -534,245 +1150,670 @@ public class ModernExpenseTrackerApp extends JFrame {
     }
     
     private void generateReport() {
-        try {
-            // Get current date for filename
-            String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            String fileName = "expense_report_" + dateStr + ".txt";
-            
-            try (PrintWriter writer = new PrintWriter(fileName)) {
-                writer.println("===== EXPENSE REPORT =====");
-                writer.println("Generated on: " + LocalDate.now());
-                writer.println("---------------------------");
-                writer.println();
-                writer.println("SUMMARY");
-                writer.println("---------------------------");
-                writer.println("Total Spent: Rs." + String.format("%.2f", totalExpense));
-                writer.println("Budget: Rs." + String.format("%.2f", budget));
-                writer.println("Remaining: Rs." + String.format("%.2f", budget - totalExpense));
-                writer.println();
-                
-                HashMap<String, Double> categoryTotals = new HashMap<>();
-                for (Expense exp : expenses) {
-                    categoryTotals.put(exp.getCategory(), categoryTotals.getOrDefault(exp.getCategory(), 0.0) + exp.getAmount());
+        if (reportWorker != null) {
+            reportWorker.cancel(false);
+            return;
+        }
+        ReportWriter.Format format = (ReportWriter.Format) JOptionPane.showInputDialog(this,
+                "Choose a report format", "Generate Report", JOptionPane.PLAIN_MESSAGE, null,
+                ReportWriter.Format.values(), ReportWriter.Format.TEXT);
+        if (format == null) return;
+        
+        // Get current date for filename
+        String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String fileName = "expense_report_" + dateStr + "." + format.extension;
+        
+        if (!loadHistory(ExpenseFilter.ANY_DAY_FROM, ExpenseFilter.ANY_DAY_TO)) return;
+        // The worker reads a private copy, so edits made meanwhile cannot tear the report
+        reportWorker = new ReportWorker(store.snapshot(), budgets.monthlyLimit(null, ExpenseAggregates.monthIndexOfDay((int) LocalDate.now().toEpochDay())),
+                recurring.copy(), format, fileName);
+        reportButton.setText("Cancel Report");
+        reportWorker.execute();
+    }
+    
+    /** Streams a report on a worker thread, showing progress in the status bar. */
+    private class ReportWorker extends SwingWorker<Boolean, Integer> implements ReportGenerator.Progress {
+        private final ExpenseStore snapshot;
+        private final long budgetMinor;
+        private final RecurringPlan recurring;
+        private final ReportWriter.Format format;
+        private final String fileName;
+        
+        ReportWorker(ExpenseStore snapshot, long budgetMinor, RecurringPlan recurring, ReportWriter.Format format, String fileName) {
+            this.snapshot = snapshot;
+            this.budgetMinor = budgetMinor;
+            this.recurring = recurring;
+            this.format = format;
+            this.fileName = fileName;
+        }
+        
+        @Override
+        protected Boolean doInBackground() throws Exception {
+            return ReportGenerator.generate(snapshot, budgetMinor, recurring, format, new File(fileName).toPath(), this);
+        }
+        
+        @Override
+        public void update(int rowsWritten, int totalRows) {
+            publish(totalRows == 0 ? 100 : (int) (rowsWritten * 100L / totalRows));
+        }
+        
+        @Override
+        protected void process(List<Integer> percents) {
+            if (isCancelled()) return;
+            status.progress("Generating report... " + percents.get(percents.size() - 1) + "%");
+        }
+        
+        @Override
+        protected void done() {
+            reportWorker = null;
+            status.progress(null);
+            reportButton.setText("Generate Report");
+            if (isCancelled()) {
+                showStatus("Report cancelled", WARNING_COLOR);
+                return;
+            }
+            try {
+                if (get()) {
+                    showStatus("Report generated as '" + fileName + "'", SUCCESS_COLOR);
+                } else {
+                    showStatus("Report cancelled", WARNING_COLOR);
                 }
-                
-                writer.println("CATEGORY BREAKDOWN");
-                writer.println("---------------------------");
-                for (String cat : categoryTotals.keySet()) {
-                    double amount = categoryTotals.get(cat);
-                    double percentage = (amount / totalExpense) * 100;
-                    writer.println(cat + ": Rs." + String.format("%.2f", amount) + 
-                                  " (" + String.format("%.1f", percentage) + "%)");
+            } catch (Exception e) {
+                showStatus("Failed to generate report", DANGER_COLOR);
+            }
+        }
+    }
+    
+    /**
+     * Lists the recurring expenses. Occurrences due by today can be added to
+     * the ledger or skipped, and selected rules stopped.
+     */
+    private void manageRecurring() {
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            return;
+        }
+        List<RecurringPlan.Rule> rules = recurring.rules();
+        if (rules.isEmpty()) {
+            showStatus("No recurring expenses yet; choose how one repeats when adding it", WARNING_COLOR);
+            return;
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        List<RecurringPlan.Occurrence> due = recurring.occurrences(ExpenseFilter.ANY_DAY_FROM, today);
+        long dueMinor = 0;
+        for (RecurringPlan.Occurrence occurrence : due) {
+            RecurringPlan.Rule rule = occurrence.rule;
+            dueMinor += store.displayConverter().convert(rule.amountMinor, rule.currency, occurrence.day);
+        }
+        
+        JList<RecurringPlan.Rule> ruleList = new JList<>(rules.toArray(new RecurringPlan.Rule[0]));
+        ruleList.setFont(REGULAR_FONT);
+        ruleList.setVisibleRowCount(Math.min(rules.size(), 8));
+        JLabel dueLabel = new JLabel(due.isEmpty() ? "Nothing is due." : due.size() + " due by today, " + displayMoney(dueMinor) + " in all.");
+        dueLabel.setFont(REGULAR_FONT);
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.add(dueLabel, BorderLayout.NORTH);
+        content.add(new JScrollPane(ruleList), BorderLayout.CENTER);
+        
+        String[] options = due.isEmpty() ? new String[]{"Stop Selected", "Close"}
+                : new String[]{"Add Due", "Skip Due", "Stop Selected", "Close"};
+        int choice = JOptionPane.showOptionDialog(this, content, "Recurring Expenses", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        String picked = choice < 0 ? "Close" : options[choice];
+        switch (picked) {
+            case "Add Due": {
+                Expense[] added = new Expense[due.size()];
+                int done = 0;
+                for (; done < added.length; done++) {
+                    RecurringPlan.Occurrence occurrence = due.get(done);
+                    added[done] = occurrence.rule.toExpense(storage.allocateId(), occurrence.day);
+                    if (!writeChange(null, added[done])) break;
+                    // Confirmed one by one, so after a failure only the rest are offered again
+                    recurring.confirm(occurrence);
                 }
-                writer.println();
-                
-                writer.println("EXPENSE DETAILS");
-                writer.println("---------------------------");
-                for (Expense exp : expenses) {
-                    writer.println(exp.getDate() + " | " + 
-                                  exp.getCategory() + " | Rs." + 
-                                  String.format("%.2f", exp.getAmount()) + " | " + 
-                                  exp.getDescription());
+                if (done > 0) {
+                    history.record(new EditHistory.Step(done == 1 ? "Add recurring" : "Add " + done + " recurring",
+                            new Expense[done], Arrays.copyOf(added, done)));
+                    updateUndoButtons();
                 }
+                if (done < added.length) break;
+                recurring.confirmThrough(today);
+                showStatus("Added " + added.length + " recurring expenses", SUCCESS_COLOR);
+                break;
             }
-            
-            showStatus("Report generated as '" + fileName + "'", SUCCESS_COLOR);
-        } catch (IOException e) {
-            showStatus("Failed to generate report", DANGER_COLOR);
+            case "Skip Due":
+                recurring.confirmThrough(today);
+                showStatus("Skipped " + due.size() + " recurring expenses", SUCCESS_COLOR);
+                break;
+            case "Stop Selected": {
+                List<RecurringPlan.Rule> selected = ruleList.getSelectedValuesList();
+                if (selected.isEmpty()) {
+                    showStatus("Select the recurring expenses to stop", WARNING_COLOR);
+                    return;
+                }
+                for (RecurringPlan.Rule rule : selected) recurring.remove(rule.id);
+                showStatus("Stopped " + selected.size() + " recurring expenses", SUCCESS_COLOR);
+                break;
+            }
+            default:
+                return;
         }
+        saveRecurring();
+        updateTotals();
     }
     
-    private void saveExpensesToFile() {
-        try (PrintWriter writer = new PrintWriter("expenses.csv")) {
-            for (Expense exp : expenses) {
-                writer.println(exp.getDescription() + "," + exp.getAmount() + "," + exp.getCategory() + "," + exp.getDate());
+    private void saveRecurring() {
+        // Written in the background from a copy, like the budget
+        autoSaver.markDirty(RECURRING_FILE, recurring.copy()::writeTo);
+        updateSaveLabel("Saving...", autoSaver.queueDepth());
+    }
+    
+    /**
+     * Writes one expense's change to storage and then to the store. {@code from}
+     * is null for a new row and {@code to} is null for a delete. False, with a
+     * message, if storage failed; the store is then left as it was.
+     */
+    private boolean writeChange(Expense from, Expense to) {
+        // One small append per change; a flat-file ledger is only
+        // rewritten by background compaction once its journal grows large
+        try {
+            // A year still on disk is loaded before it changes, e.g. by a backdated add.
+            // Both years in one call, so loading one cannot drop the other
+            if (from == null) {
+                storage.ensureDaysLoaded(store, (int) to.getDate().toEpochDay());
+            } else if (to == null) {
+                storage.ensureDaysLoaded(store, (int) from.getDate().toEpochDay());
+            } else {
+                storage.ensureDaysLoaded(store, (int) from.getDate().toEpochDay(), (int) to.getDate().toEpochDay());
             }
-            showStatus("Expenses saved successfully", SUCCESS_COLOR);
-        } catch (IOException e) {
-            showStatus("Failed to save expenses", DANGER_COLOR);
-        }
-    }
-    
-    private void loadExpensesFromFile() {
-        File file = new File("expenses.csv");
-        if (!file.exists()) return;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    Expense exp = new Expense(parts[0], Double.parseDouble(parts[1]), parts[2], LocalDate.parse(parts[3]));
-                    expenses.add(exp);
-                    tableModel.addRow(new Object[]{parts[0], String.format("%.2f", exp.getAmount()), parts[2], parts[3]});
-                    totalExpense += exp.getAmount();
+            // Storage first: if the append fails nothing has changed on screen either
+            if (to == null) {
+                storage.appendDelete(from);
+                store.delete(from.getId());
+            } else {
+                if (from == null) {
+                    storage.appendAdd(to);
+                } else {
+                    storage.appendEdit(from, to);
                 }
+                store.put(to);
             }
-            showStatus("Previous expenses loaded", SUCCESS_COLOR);
         } catch (IOException e) {
-            showStatus("Failed to load previous expenses", DANGER_COLOR);
+            showStatus("Failed to save expense", DANGER_COLOR);
+            return false;
+        }
+        // A running import's journaled rows reach the store only when it finishes; it compacts then
+        if (importWorker == null) storage.maybeCompact(() -> store.snapshot());
+        return true;
+    }
+    
+    /**
+     * Makes sure rows dated {@code [fromDay, toDay]} are in the store before
+     * a query or report reads them; false, with a message, if reading failed.
+     * Until loading finishes the rows read so far are used as they are.
+     */
+    private boolean loadHistory(int fromDay, int toDay) {
+        if (!loaded) return true;
+        try {
+            storage.ensureLoaded(store, fromDay, toDay);
+            return true;
+        } catch (IOException e) {
+            showStatus("Failed to load older expenses", DANGER_COLOR);
+            return false;
+        }
+    }
+    
+    private void loadOlderHistory() {
+        olderPending = false;
+        try {
+            storage.loadOlder(store);
+        } catch (IOException e) {
+            showStatus("Failed to load older expenses", DANGER_COLOR);
         }
     }
     
-    private void loadBudgetFromFile() {
-        File file = new File("budget.txt");
-        if (!file.exists()) return;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line = reader.readLine();
-            if (line != null) {
-                budget = Double.parseDouble(line);
-                budgetField.setText(String.format("%.2f", budget));
-                showStatus("Budget loaded successfully", SUCCESS_COLOR);
+    /** Applies text typed into a table cell, if it is valid. */
+    private void editCell(int row, int column, String text) {
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            return;
+        }
+        Expense before = store.expenseAt(row);
+        String value = text.trim();
+        String description = before.getDescription();
+        Money amount = before.getAmount();
+        String currency = before.getCurrency();
+        String category = before.getCategory();
+        LocalDate date = before.getDate();
+        try {
+            switch (column) {
+                case 0: description = value; break;
+                case 1: {
+                    // "12.50" keeps the currency; "12.50 USD" or "Rs.12.50" changes it
+                    String[] parts = FxRates.splitAmount(value, currency);
+                    amount = Money.parse(parts[0]);
+                    currency = parts[1];
+                    break;
+                }
+                case 2: category = value; break;
+                default: date = LocalDate.parse(value);
             }
-        } catch (IOException | NumberFormatException e) {
-            showStatus("Failed to load budget", DANGER_COLOR);
+        } catch (NumberFormatException | ArithmeticException e) {
+            showStatus("Please enter a valid amount", DANGER_COLOR);
+            return;
+        } catch (IllegalArgumentException e) {
+            showStatus(e.getMessage(), DANGER_COLOR);
+            return;
+        } catch (DateTimeParseException e) {
+            showStatus("Please enter the date as YYYY-MM-DD", DANGER_COLOR);
+            return;
+        }
+        if (description.isEmpty() || category.isEmpty()) {
+            showStatus(description.isEmpty() ? "Description cannot be empty" : "Category cannot be empty", DANGER_COLOR);
+            return;
+        }
+        if (description.length() > Expense.MAX_DESCRIPTION_LENGTH) {
+            showStatus("Description must be at most " + Expense.MAX_DESCRIPTION_LENGTH + " characters", DANGER_COLOR);
+            return;
+        }
+        if (category.length() > Expense.MAX_CATEGORY_LENGTH) {
+            showStatus("Category must be at most " + Expense.MAX_CATEGORY_LENGTH + " characters", DANGER_COLOR);
+            return;
+        }
+        if (!amount.isPositive()) {
+            showStatus("Amount must be greater than zero", DANGER_COLOR);
+            return;
         }
+        if (description.equals(before.getDescription()) && amount.equals(before.getAmount())
+                && currency.equals(before.getCurrency()) && category.equals(before.getCategory())
+                && date.equals(before.getDate())) {
+            return;
+        }
+        Expense after = new Expense(before.getId(), description, amount, currency, category, date);
+        if (!writeChange(before, after)) return;
+        history.record("Edit", before, after);
+        updateUndoButtons();
+        showStatus("Expense updated", SUCCESS_COLOR);
     }
     
-    private void showStatus(String message, Color color) {
-        statusLabel.setText(message);
-        statusLabel.setForeground(color);
-        
-        // Reset the status color after a delay
-        new Timer(3000, e -> {
-            statusLabel.setText("Ready");
-            statusLabel.setForeground(TEXT_COLOR);
-        }).start();
+    private void deleteSelected() {
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            return;
+        }
+        int[] selected = table.getSelectedRows();
+        if (selected.length == 0) {
+            showStatus("Select the expenses to delete", WARNING_COLOR);
+            return;
+        }
+        if (table.isEditing()) table.getCellEditor().cancelCellEditing();
+        // Resolve every row before deleting any, since deletes shift table rows
+        Expense[] before = new Expense[selected.length];
+        for (int i = 0; i < selected.length; i++) before[i] = store.expenseAt(view.storeRow(selected[i]));
+        int done = 0;
+        while (done < before.length && writeChange(before[done], null)) done++;
+        if (done == 0) return;
+        // What was deleted before a failure is still one undoable step
+        history.record(new EditHistory.Step(done == 1 ? "Delete" : "Delete " + done,
+                Arrays.copyOf(before, done), new Expense[done]));
+        updateUndoButtons();
+        table.clearSelection();
+        if (done < before.length) return;
+        showStatus(before.length == 1 ? "Expense deleted" : before.length + " expenses deleted", SUCCESS_COLOR);
     }
     
-    private void updateCategoryChart() {
-        // This will trigger a repaint of the chart panel
-        SwingUtilities.invokeLater(() -> dashboardPanel.repaint());
+    private void undo() {
+        if (table.isEditing()) return;
+        EditHistory.Step step = history.undo();
+        if (step == null) {
+            showStatus("Nothing to undo", WARNING_COLOR);
+            return;
+        }
+        for (int i = step.before.length - 1; i >= 0; i--) {
+            if (!writeChange(step.after[i], step.before[i])) {
+                history.undoFailed(step, i);
+                updateUndoButtons();
+                return;
+            }
+        }
+        updateUndoButtons();
+        showStatus("Undid " + step.label.toLowerCase(), SUCCESS_COLOR);
     }
     
-    private void drawCategoryPieChart(Graphics g) {
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        int width = g.getClipBounds().width;
-        int height = g.getClipBounds().height;
-        
-        // Calculate center and radius
-        int centerX = width / 2;
-        int centerY = height / 2;
-        int radius = Math.min(width, height) / 2 - 30;
-        
-        // Create category map
-        HashMap<String, Double> categoryMap = new HashMap<>();
-        
-        // Return if no expenses
-        if (expenses.isEmpty() || totalExpense == 0) {
-            g2d.setColor(new Color(220, 220, 220));
-            g2d.fillOval(centerX - radius, centerY - radius, radius * 2, radius * 2);
-            
-            g2d.setColor(TEXT_COLOR);
-            g2d.setFont(new Font("Segoe UI", Font.BOLD, 14));
-            String noDataMsg = "No expense data";
-            FontMetrics fm = g2d.getFontMetrics();
-            int msgWidth = fm.stringWidth(noDataMsg);
-            g2d.drawString(noDataMsg, centerX - msgWidth / 2, centerY + 5);
+    private void redo() {
+        if (table.isEditing()) return;
+        EditHistory.Step step = history.redo();
+        if (step == null) {
+            showStatus("Nothing to redo", WARNING_COLOR);
             return;
         }
-        
-        // Calculate category totals
-        for (Expense exp : expenses) {
-            String category = exp.getCategory();
-            double amount = exp.getAmount();
-            categoryMap.put(category, categoryMap.getOrDefault(category, 0.0) + amount);
+        for (int i = 0; i < step.before.length; i++) {
+            if (!writeChange(step.before[i], step.after[i])) {
+                history.redoFailed(step, i);
+                updateUndoButtons();
+                return;
+            }
+        }
+        updateUndoButtons();
+        showStatus("Redid " + step.label.toLowerCase(), SUCCESS_COLOR);
+    }
+    
+    private void updateUndoButtons() {
+        undoButton.setEnabled(history.canUndo());
+        redoButton.setEnabled(history.canRedo());
+    }
+    
+    private void importCsv() {
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            return;
+        }
+        if (importWorker != null) {
+            showStatus("An import is already running", WARNING_COLOR);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser(new File("."));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        importWorker = new ImportWorker(chooser.getSelectedFile().toPath());
+        importWorker.execute();
+        status.progress("Importing " + chooser.getSelectedFile().getName() + "...");
+    }
+    
+    /**
+     * Parses, deduplicates and journals an import off the EDT. The EDT only
+     * adds older years the file falls in, which were read here first, and
+     * finally the new rows.
+     */
+    private class ImportWorker extends SwingWorker<ExpenseImporter.Staged, Void> {
+        private final java.nio.file.Path file;
+        
+        ImportWorker(java.nio.file.Path file) {
+            this.file = file;
         }
         
-        // Define colors for categories
-        Color[] colors = {
-            new Color(52, 152, 219),  // Blue
-            new Color(155, 89, 182),  // Purple
-            new Color(52, 73, 94),    // Dark Blue
-            new Color(231, 76, 60),   // Red
-            new Color(241, 196, 15),  // Yellow
-            new Color(46, 204, 113),  // Green
-            new Color(230, 126, 34),  // Orange
-            new Color(149, 165, 166)  // Gray
-        };
-        
-        // Draw pie chart
-        int colorIndex = 0;
-        int startAngle = 0;
-        
-        // Create a map to store legends
-        HashMap<String, Color> legendMap = new HashMap<>();
+        @Override
+        protected ExpenseImporter.Staged doInBackground() throws Exception {
+            ExpenseImporter.Batch batch = ExpenseImporter.parse(file, ImportSchema.forFile(file), java.util.concurrent.ForkJoinPool.commonPool());
+            int[] days = ExpenseImporter.dayRange(batch);
+            while (true) {
+                if (days != null) storage.prefetch(days[0], days[1]);
+                ExpenseStore[] existing = new ExpenseStore[1];
+                IOException[] failed = new IOException[1];
+                SwingUtilities.invokeAndWait(() -> {
+                    try {
+                        if (days != null) storage.ensureLoaded(store, days[0], days[1]);
+                    } catch (IOException e) {
+                        failed[0] = e;
+                    }
+                    existing[0] = store.snapshot();
+                });
+                if (failed[0] != null) throw failed[0];
+                ExpenseImporter.Staged staged = ExpenseImporter.stage(batch, existing[0], storage);
+                try {
+                    storage.appendAdds(staged.rows, 0, staged.rows.size());
+                    return staged;
+                } catch (IllegalStateException e) {
+                    // A year was dropped from memory again before the batch was written; none of it was
+                }
+            }
+        }
         
-        for (String category : categoryMap.keySet()) {
-            // Get category amount and calculate percentage
-            double amount = categoryMap.get(category);
-            double percentage = (amount / totalExpense) * 100;
-            int arcAngle = (int) Math.round(360 * (amount / totalExpense));
-            
-            // Set color (cycle through the color array)
-            Color color = colors[colorIndex % colors.length];
-            legendMap.put(category, color);
+        @Override
+        protected void done() {
+            importWorker = null;
+            status.progress(null);
+            try {
+                ExpenseImporter.Staged staged = get();
+                ExpenseImporter.Result result = ExpenseImporter.publish(staged, store);
+                storage.maybeCompact(() -> store.snapshot());
+                String skipped = result.duplicates + staged.rejected == 0 ? ""
+                        : " (" + result.duplicates + " duplicates, " + staged.rejected + " invalid rows skipped)";
+                showStatus("Imported " + result.added + " expenses" + skipped, SUCCESS_COLOR);
+            } catch (Exception e) {
+                showStatus("Failed to import CSV", DANGER_COLOR);
+            }
+        }
+    }
+    
+    private void exportCsv() {
+        JFileChooser chooser = new JFileChooser(new File("."));
+        chooser.setSelectedFile(new File("expenses_export.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        if (!loadHistory(ExpenseFilter.ANY_DAY_FROM, ExpenseFilter.ANY_DAY_TO)) return;
+        try {
+            ExpenseCsv.write(chooser.getSelectedFile(), store);
+            showStatus("Exported " + store.liveCount() + " expenses", SUCCESS_COLOR);
+        } catch (IOException e) {
+            showStatus("Failed to export CSV", DANGER_COLOR);
+        }
+    }
+    
+    /**
+     * Replays the ledger into a private store on a worker thread, then hands
+     * rows to the EDT in chunks, so the frame is interactive while large
+     * ledgers are still loading.
+     */
+    private class ExpenseLoader extends SwingWorker<BudgetPlan, Integer> {
+        private static final int CHUNK_SIZE = 5000;
+        private final ExpenseStore loading = new ExpenseStore();
+        // What the EDT may copy from; replaced before each publish
+        private volatile ExpenseStore visible = loading.snapshot();
+        private int published;
+        private boolean migrated;
+        private RecurringPlan savedRecurring;
+        private FxRates savedRates;
+        private String budgetError;
+        
+        @Override
+        protected BudgetPlan doInBackground() throws Exception {
+            boolean migrateCsv = storage.isEmpty();
+            if (migrateCsv && !(storage instanceof ExpenseJournal)) {
+                ExpenseJournal flatFiles = new ExpenseJournal(new File("."), "expenses");
+                if (!flatFiles.isEmpty()) {
+                    // First start on another backend: carry the flat-file ledger over
+                    flatFiles.open(loading);
+                    migrated = !loading.isEmpty();
+                    migrateCsv = false;
+                }
+                flatFiles.close();
+            }
+            // Rows can be shown while a paged backend is still reading
+            storage.open(loading, rows -> {
+                visible = loading.snapshot();
+                publish(rows);
+            });
+            File legacyCsv = new File("expenses.csv");
+            if (migrateCsv && legacyCsv.exists()) {
+                for (Expense exp : ExpenseCsv.read(legacyCsv, storage::allocateId)) {
+                    loading.put(exp);
+                }
+                migrated = !loading.isEmpty();
+            }
             
-            // Draw arc
-            g2d.setColor(color);
-            g2d.fillArc(centerX - radius, centerY - radius, radius * 2, radius * 2, startAngle, arcAngle);
+            // The loading store is complete and no longer written from here on
+            visible = loading;
+            int total = loading.size();
+            for (int end = CHUNK_SIZE; end - CHUNK_SIZE < total && !isCancelled(); end += CHUNK_SIZE) {
+                publish(Math.min(end, total));
+            }
             
-            // Move to next position and color
-            startAngle += arcAngle;
-            colorIndex++;
+            try {
+                savedRecurring = RecurringPlan.load(RECURRING_FILE);
+            } catch (IOException e) {
+                budgetError = "Failed to load recurring expenses";
+            }
+            try {
+                savedRates = FxRates.load(RATES_FILE);
+            } catch (IOException e) {
+                budgetError = "Failed to load exchange rates: " + e.getMessage();
+            }
+            try {
+                return BudgetPlan.load(BUDGET_FILE);
+            } catch (IOException | NumberFormatException | ArithmeticException e) {
+                budgetError = "Failed to load budget";
+                return null;
+            }
         }
         
-        // Draw legends
-        int legendY = 20;
-        int legendX = width - 120;
-        int boxSize = 15;
-        
-        g2d.setFont(new Font("Segoe UI", Font.PLAIN, 12));
-        FontMetrics fm = g2d.getFontMetrics();
+        @Override
+        protected void process(List<Integer> chunkEnds) {
+            // Several chunks may arrive together; insert them as one event
+            ExpenseStore source = visible;
+            int end = Math.min(chunkEnds.get(chunkEnds.size() - 1), source.size());
+            // A backend's progress and the final chunking can both cover a range
+            if (end <= published) return;
+            store.appendRows(source, published, end);
+            published = end;
+            status.progress("Loading expenses... " + published + " / " + source.size());
+        }
         
-        for (String category : legendMap.keySet()) {
-            double amount = categoryMap.get(category);
-            double percentage = (amount / totalExpense) * 100;
-            
-            // Only show in legend if significant (>1%)
-            if (percentage > 1.0) {
-                Color color = legendMap.get(category);
-                
-                // Draw color box
-                g2d.setColor(color);
-                g2d.fillRect(legendX, legendY, boxSize, boxSize);
-                
-                // Draw category name and percentage
-                g2d.setColor(TEXT_COLOR);
-                String text = category + " (" + String.format("%.0f", percentage) + "%)";
-                g2d.drawString(text, legendX + boxSize + 5, legendY + boxSize - 2);
-                
-                legendY += boxSize + 10;
+        @Override
+        protected void done() {
+            status.progress(null);
+            try {
+                BudgetPlan savedBudgets = get();
+                loaded = true;
+                if (savedRates != null) {
+                    rates = savedRates;
+                    // Rows so far were converted without rates; segment totals follow the new ones
+                    store.setDisplayCurrency(store.displayCurrency(), rates);
+                }
+                // Years left on disk count towards totals from here on
+                storage.attach(store);
+                refreshCurrencyChoices();
+                if (savedRecurring != null) recurring = savedRecurring;
+                if (savedBudgets != null) {
+                    budgets = savedBudgets;
+                    showBudgetMonth(budgetMonth);
+                }
+                if (migrated) {
+                    storage.appendAdds(store, 0, store.size());
+                }
+                if (migrated || storage.needsCompaction()) {
+                    storage.compactNow(store.snapshot());
+                }
+                updateTotals();
+                updateCategoryChart();
+                // Build the search index in the background so the first search is fast
+                new SearchWorker(null, 0).execute();
+                int due = recurring.project(ExpenseFilter.ANY_DAY_FROM, (int) LocalDate.now().toEpochDay(), null,
+                        store.displayConverter()).count;
+                if (budgetError != null) {
+                    showStatus(budgetError, DANGER_COLOR);
+                } else if (due > 0) {
+                    showStatus(due + " recurring expenses are due; use Recurring to add them", WARNING_COLOR);
+                } else if (!warnUnrated()) {
+                    showStatus(store.isEmpty() ? "Ready" : "Loaded " + store.liveCount() + " expenses", SUCCESS_COLOR);
+                }
+            } catch (Exception e) {
+                showStatus("Failed to load previous expenses", DANGER_COLOR);
             }
         }
     }
     
+    /** Converts every amount into {@code currency} for totals, charts and budgets. */
+    private void showInCurrency(String currency) {
+        if (currency == null || currency.equals(store.displayCurrency())) return;
+        if (!loaded) {
+            showStatus("Please wait, expenses are still loading", WARNING_COLOR);
+            displayCurrencyBox.setSelectedItem(store.displayCurrency());
+            return;
+        }
+        long start = System.nanoTime();
+        store.setDisplayCurrency(currency, rates);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (!warnUnrated()) {
+            showStatus("Showing amounts in " + currency + " (" + store.liveCount() + " expenses converted in "
+                    + millis + " ms)", SUCCESS_COLOR);
+        }
+    }
+    
+    /** Offers the rated currencies plus any the ledger holds, in both currency boxes. */
+    private void refreshCurrencyChoices() {
+        List<String> codes = new ArrayList<>(rates.currencies());
+        for (int k = 0; k < store.currencyCount(); k++) {
+            if (!codes.contains(store.currencyName(k))) codes.add(store.currencyName(k));
+        }
+        String entered = String.valueOf(currencyBox.getSelectedItem());
+        currencyBox.setModel(new DefaultComboBoxModel<>(codes.toArray(new String[0])));
+        currencyBox.setSelectedItem(entered);
+        // Swapping the model fires the listener; it ignores the current currency
+        displayCurrencyBox.setModel(new DefaultComboBoxModel<>(codes.toArray(new String[0])));
+        displayCurrencyBox.setSelectedItem(store.displayCurrency());
+    }
+    
+    /** Warns if amounts were converted 1:1 for lack of rates; returns whether it did. */
+    private boolean warnUnrated() {
+        List<String> unrated = store.unratedCurrencies();
+        if (unrated.isEmpty()) return false;
+        showStatus("No exchange rates for " + String.join(", ", unrated) + " in " + RATES_FILE
+                + "; converted 1:1", WARNING_COLOR);
+        return true;
+    }
+    
+    private String displayMoney(long amountMinor) {
+        return FxRates.format(amountMinor, store.displayCurrency());
+    }
+    
+    /** Change-feed subscriber; runs on the EDT once per burst of writes. */
+    private void storeChanged(ExpenseStore.Change change) {
+        tableModel.storeChanged(change);
+        updateTotals();
+        updateCategoryChart();
+    }
+    
+    private void showStatus(String message, Color color) {
+        StatusNotifier.Priority priority = color == DANGER_COLOR ? StatusNotifier.Priority.HIGH
+                : color == WARNING_COLOR ? StatusNotifier.Priority.NORMAL : StatusNotifier.Priority.LOW;
+        status.post(message, color, priority);
+    }
+    
+    private void updateCategoryChart() {
+        // This will trigger a repaint of the chart panel
+        SwingUtilities.invokeLater(() -> dashboardPanel.repaint());
+    }
+    
+    /**
+     * Options: {@code --storage=files} (the default) keeps the ledger in
+     * expenses.* files in the working directory; {@code --storage=sql} uses an
+     * embedded H2 database, and {@code --storage=sql:<jdbc-url>} any other JDBC
+     * URL. {@code --headless <command> ...} runs {@link ExpenseTrackerCli}
+     * instead of opening a window.
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            // Before any look-and-feel or toolkit is initialised
+            ExpenseTrackerCli.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
-        SwingUtilities.invokeLater(() -> new ModernExpenseTrackerApp());
-    }
-}
-
-class Expense {
-    private String description;
-    private double amount;
-    private String category;
-    private LocalDate date;
-
-    public Expense(String description, double amount, String category, LocalDate date) {
-        this.description = description;
-        this.amount = amount;
-        this.category = category;
-        this.date = date;
+        String storageOption = "files";
+        for (String arg : args) {
+            if (arg.startsWith("--storage=")) storageOption = arg.substring("--storage=".length());
+        }
+        StorageBackend storage;
+        if (storageOption.equals("files")) {
+            storage = new ExpenseJournal(new File("."), "expenses");
+        } else if (storageOption.equals("sql") || storageOption.startsWith("sql:")) {
+            String url = storageOption.equals("sql") ? SqlStorage.DEFAULT_URL : storageOption.substring("sql:".length());
+            try {
+                SqlStorage.checkDriver(url);
+            } catch (java.sql.SQLException e) {
+                JOptionPane.showMessageDialog(null, "No JDBC driver on the class path for " + url,
+                        "Expense Tracker", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+                return;
+            }
+            storage = new SqlStorage(url);
+        } else {
+            System.err.println("Unknown storage '" + storageOption + "'; expected files, sql or sql:<jdbc-url>");
+            System.exit(2);
+            return;
+        }
+        SwingUtilities.invokeLater(() -> new ModernExpenseTrackerApp(storage));
     }
-
-    public String getDescription() { return description; }
-    public double getAmount() { return amount; }
-    public String getCategory() { return category; }
-    public LocalDate getDate() { return date; }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An exact amount of rupees held as a {@code long} count of paise.
+ *
+ * Amounts are parsed straight from their decimal text, so "0.10" is exactly
+ * ten paise and never an approximation of it. Sums are plain {@code long}
+ * additions and do not drift no matter how many rows are added. The store
+ * keeps amounts as raw {@code long} columns and only wraps them in a
+ * {@code Money} at the edges (entry, budget, persistence). Bulk totals go
+ * through {@link #sum}.
+ */
+final class Money implements Comparable<Money> {
+    static final Money ZERO = new Money(0);
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * Parses "1234", "1234.5" or "1234.50". More than two decimals is an
+     * error rather than a silent rounding.
+     */
+    static Money parse(String text) {
+        BigDecimal value = new BigDecimal(text.trim());
+        if (value.scale() > 2) {
+            value = value.stripTrailingZeros();
+            if (value.scale() > 2) throw new NumberFormatException("More than two decimals: " + text);
+        }
+        return ofMinor(value.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    long minor() {
+        return minor;
+    }
+
+    boolean isPositive() {
+        return minor > 0;
+    }
+
+    Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    /** Whole percent of {@code whole} this amount is, rounded down; 0 if {@code whole} is not positive. */
+    int percentOf(Money whole) {
+        if (whole.minor <= 0) return 0;
+        return (int) Math.min(Integer.MAX_VALUE, BigDecimal.valueOf(minor).multiply(BigDecimal.valueOf(100))
+                .divideToIntegralValue(BigDecimal.valueOf(whole.minor)).longValue());
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return format(minor);
+    }
+
+    /** Formats an amount in minor units as "1234.50" without going through String.format. */
+    static String format(long minor) {
+        StringBuilder sb = new StringBuilder(20);
+        long units = minor / 100;
+        long fraction = Math.abs(minor % 100);
+        if (minor < 0 && units == 0) sb.append('-');
+        sb.append(units).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction).toString();
+    }
+
+    /**
+     * Sums {@code values[from, to)}. The body is a counted loop over a
+     * primitive array with four independent accumulators, which C2 unrolls
+     * and vectorizes, so a 16K-row chunk is summed at memory bandwidth.
+     */
+    static long sum(long[] values, int from, int to) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int end = to - 3; i < end; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < to; i++) s0 += values[i];
+        return s0 + s1 + s2 + s3;
+    }
+}
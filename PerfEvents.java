@@ -0,0 +1,187 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events for the paths that decide how the app feels:
+ * load, save, add, aggregate, currency conversion, chart paint and report.
+ *
+ * Each event is created when the work starts and {@link Timed#finish}ed when
+ * it ends. That commits the event when a recording wants it, and always
+ * adds the duration to the matching {@link Metrics} histogram for the
+ * diagnostics card. Record with e.g.
+ * {@code java -XX:StartFlightRecording=filename=tracker.jfr ...} and open
+ * the file in JDK Mission Control under "Expense Tracker".
+ */
+final class PerfEvents {
+    private PerfEvents() {
+    }
+
+    @Category("Expense Tracker")
+    abstract static class Timed extends Event {
+        // Transient fields are not recorded
+        private transient final String metric;
+        private transient final long startNanos;
+
+        Timed(String metric) {
+            this.metric = metric;
+            this.startNanos = System.nanoTime();
+            begin();
+        }
+
+        void finish() {
+            Metrics.latency(metric).record(System.nanoTime() - startNanos);
+            commit();
+        }
+    }
+
+    @Name("expensetracker.Load")
+    @Label("Ledger Load")
+    @Description("Rows read from storage at startup or on demand")
+    static final class Load extends Timed {
+        @Label("Scope")
+        String scope;
+        @Label("Rows")
+        long rows;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        Load(String scope) {
+            super("load." + scope);
+            this.scope = scope;
+        }
+
+        @Override
+        void finish() {
+            Metrics.counter("rows.loaded").add(rows);
+            super.finish();
+        }
+    }
+
+    @Name("expensetracker.Save")
+    @Label("Save")
+    @Description("A file written in the background: a budget save or a ledger compaction")
+    static final class Save extends Timed {
+        @Label("File")
+        String file;
+        @Label("Rows")
+        long rows;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        Save(String file) {
+            super("save");
+            this.file = file;
+        }
+
+        @Override
+        void finish() {
+            Metrics.counter("bytes.saved").add(bytes);
+            super.finish();
+        }
+    }
+
+    @Name("expensetracker.Add")
+    @Label("Add Expenses")
+    @Description("Rows added to the store and journal, by hand or by an import")
+    static final class Add extends Timed {
+        @Label("Rows")
+        long rows;
+
+        Add() {
+            super("add");
+        }
+
+        @Override
+        void finish() {
+            Metrics.counter("rows.added").add(rows);
+            super.finish();
+        }
+    }
+
+    @Name("expensetracker.Aggregate")
+    @Label("Aggregate")
+    @Description("Totals recomputed over the rows matching a filter")
+    static final class Aggregate extends Timed {
+        @Label("Rows")
+        long rows;
+
+        Aggregate() {
+            super("aggregate");
+        }
+    }
+
+    @Name("expensetracker.Convert")
+    @Label("Currency Conversion")
+    @Description("Every amount converted to a new display currency and the totals rebuilt")
+    static final class Convert extends Timed {
+        @Label("Currency")
+        String currency;
+        @Label("Rows")
+        long rows;
+
+        Convert(String currency) {
+            super("convert");
+            this.currency = currency;
+        }
+    }
+
+    @Name("expensetracker.ChartPaint")
+    @Label("Chart Paint")
+    @Description("One paint of a chart; rendered is false when the cached image was reused")
+    static final class ChartPaint extends Timed {
+        @Label("Chart")
+        String chart;
+        @Label("Width")
+        int width;
+        @Label("Height")
+        int height;
+        @Label("Rendered")
+        boolean rendered;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        ChartPaint(String chart, int width, int height) {
+            super("paint." + chart);
+            this.chart = chart;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        void finish() {
+            if (rendered) Metrics.counter("paint." + chart + ".rendered").add(1);
+            super.finish();
+        }
+    }
+
+    @Name("expensetracker.Report")
+    @Label("Report")
+    @Description("A report written to a file")
+    static final class Report extends Timed {
+        @Label("Format")
+        String format;
+        @Label("Rows")
+        long rows;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        Report(String format) {
+            super("report");
+            this.format = format;
+        }
+
+        @Override
+        void finish() {
+            Metrics.counter("bytes.reported").add(bytes);
+            super.finish();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the category pie chart and legend into a cached image.
+ *
+ * The image is keyed on panel size, device scale and the view version,
+ * so ordinary repaints (window drags, card switches, hover) just blit the
+ * cached pixels and only a data or size change re-rasterizes the chart.
+ */
+class PieChartRenderer {
+    private static final Color TEXT_COLOR = new Color(50, 50, 50);
+    private static final Color EMPTY_COLOR = new Color(220, 220, 220);
+    private static final Font EMPTY_FONT = new Font("Segoe UI", Font.BOLD, 14);
+    private static final Font LEGEND_FONT = new Font("Segoe UI", Font.PLAIN, 12);
+    private static final Color[] COLORS = {
+        new Color(52, 152, 219),  // Blue
+        new Color(155, 89, 182),  // Purple
+        new Color(52, 73, 94),    // Dark Blue
+        new Color(231, 76, 60),   // Red
+        new Color(241, 196, 15),  // Yellow
+        new Color(46, 204, 113),  // Green
+        new Color(230, 126, 34),  // Orange
+        new Color(149, 165, 166)  // Gray
+    };
+
+    private BufferedImage cache;
+    private int cachedWidth = -1;
+    private int cachedHeight = -1;
+    private double cachedScale;
+    private long cachedVersion = -1;
+
+    /** Forces the next paint to re-render, e.g. after a category rename. */
+    void invalidate() {
+        cachedVersion = -1;
+    }
+
+    void paint(Graphics g, int width, int height, ExpenseView view) {
+        if (width <= 0 || height <= 0) return;
+        PerfEvents.ChartPaint event = new PerfEvents.ChartPaint("pie", width, height);
+        Graphics2D g2d = (Graphics2D) g;
+        AffineTransform tx = g2d.getTransform();
+        double scale = Math.max(tx.getScaleX(), 1.0);
+        long version = view.version();
+
+        if (cache == null || width != cachedWidth || height != cachedHeight
+                || scale != cachedScale || version != cachedVersion) {
+            render(g2d.getDeviceConfiguration(), width, height, scale, view);
+            event.rendered = true;
+            cachedWidth = width;
+            cachedHeight = height;
+            cachedScale = scale;
+            cachedVersion = version;
+        }
+        g2d.drawImage(cache, 0, 0, width, height, null);
+        event.bytes = 4L * cache.getWidth() * cache.getHeight();
+        event.finish();
+    }
+
+    private void render(GraphicsConfiguration config, int width, int height, double scale, ExpenseView view) {
+        int pixelWidth = (int) Math.ceil(width * scale);
+        int pixelHeight = (int) Math.ceil(height * scale);
+        if (cache == null || cache.getWidth() != pixelWidth || cache.getHeight() != pixelHeight) {
+            cache = config != null
+                    ? config.createCompatibleImage(pixelWidth, pixelHeight, Transparency.TRANSLUCENT)
+                    : new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D g2d = cache.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, pixelWidth, pixelHeight);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.scale(scale, scale);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            drawChart(g2d, width, height, view);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    private void drawChart(Graphics2D g2d, int width, int height, ExpenseView view) {
+        // Calculate center and radius
+        int centerX = width / 2;
+        int centerY = height / 2;
+        int radius = Math.max(Math.min(width, height) / 2 - 30, 0);
+
+        ExpenseStore store = view.store();
+        double totalExpense = view.total() / 100.0;
+
+        // Return if no expenses
+        if (view.isEmpty() || totalExpense == 0) {
+            g2d.setColor(EMPTY_COLOR);
+            g2d.fillOval(centerX - radius, centerY - radius, radius * 2, radius * 2);
+
+            g2d.setColor(TEXT_COLOR);
+            g2d.setFont(EMPTY_FONT);
+            String noDataMsg = "No expense data";
+            FontMetrics fm = g2d.getFontMetrics();
+            int msgWidth = fm.stringWidth(noDataMsg);
+            g2d.drawString(noDataMsg, centerX - msgWidth / 2, centerY + 5);
+            return;
+        }
+
+        int categoryCount = store.categoryCount();
+
+        // Draw pie chart
+        int startAngle = 0;
+        for (int category = 0; category < categoryCount; category++) {
+            double amount = view.categoryTotal(category) / 100.0;
+            if (amount == 0) continue;
+            int arcAngle = (int) Math.round(360 * (amount / totalExpense));
+
+            g2d.setColor(COLORS[category % COLORS.length]);
+            g2d.fillArc(centerX - radius, centerY - radius, radius * 2, radius * 2, startAngle, arcAngle);
+            startAngle += arcAngle;
+        }
+
+        // Draw legends
+        int legendY = 20;
+        int legendX = width - 120;
+        int boxSize = 15;
+
+        g2d.setFont(LEGEND_FONT);
+        for (int category = 0; category < categoryCount; category++) {
+            double amount = view.categoryTotal(category) / 100.0;
+            double percentage = (amount / totalExpense) * 100;
+
+            // Only show in legend if significant (>1%)
+            if (percentage > 1.0) {
+                g2d.setColor(COLORS[category % COLORS.length]);
+                g2d.fillRect(legendX, legendY, boxSize, boxSize);
+
+                g2d.setColor(TEXT_COLOR);
+                String text = store.categoryName(category) + " (" + Math.round(percentage) + "%)";
+                g2d.drawString(text, legendX + boxSize + 5, legendY + boxSize - 2);
+
+                legendY += boxSize + 10;
+            }
+        }
+    }
+}
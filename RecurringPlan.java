@@ -0,0 +1,249 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Recurring expenses such as rent, subscriptions and EMIs.
+ *
+ * A {@link Rule} describes every occurrence of one expense, on a
+ * {@link Schedule} between a first and an optional last day. Occurrences
+ * are virtual. Budgets, filters and reports compute them for the days
+ * they ask about, and a total over any range is a count per rule times its
+ * amount. Nothing is stored per occurrence, so an open-ended rule costs
+ * the same as one that ends next month. An occurrence becomes a row of the
+ * ledger only when the user confirms it. Each rule remembers the last day
+ * it was confirmed through, and only later occurrences are still pending.
+ *
+ * recurring.txt holds one rule per line:
+ * "schedule&lt;tab&gt;first&lt;tab&gt;last&lt;tab&gt;confirmedThrough&lt;tab&gt;amount&lt;tab&gt;category&lt;tab&gt;description",
+ * with dates as yyyy-MM-dd and "*" for no last day or "-" for nothing
+ * confirmed yet. The amount is followed by a currency code, as in
+ * "12.99 USD", unless it is in rupees.
+ *
+ * Rules keep their own currency. A projection is converted into the display
+ * currency at the rate on the last day of the range, since it stands for
+ * spending that has not happened yet.
+ */
+class RecurringPlan {
+    /** One recurring expense. Immutable; confirming replaces it. */
+    static final class Rule {
+        final long id;
+        final String description;
+        final long amountMinor;
+        final String currency;
+        final String category;
+        final Schedule schedule;
+        final int firstDay;
+        // Inclusive; ExpenseFilter.ANY_DAY_TO for a rule with no end
+        final int lastDay;
+        // Occurrences up to this day have been added to the ledger or skipped
+        final int confirmedThrough;
+
+        Rule(long id, String description, long amountMinor, String currency, String category, Schedule schedule,
+             int firstDay, int lastDay, int confirmedThrough) {
+            this.id = id;
+            this.description = description;
+            this.amountMinor = amountMinor;
+            this.currency = currency;
+            this.category = category;
+            this.schedule = schedule;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.confirmedThrough = confirmedThrough;
+        }
+
+        /** First pending occurrence on or after {@code day}, or {@link Schedule#NEVER}. */
+        int nextPending(int day) {
+            int from = Math.max(day, confirmedThrough == Integer.MIN_VALUE ? day : confirmedThrough + 1);
+            int next = schedule.next(from, firstDay);
+            return next <= lastDay ? next : Schedule.NEVER;
+        }
+
+        /** Pending occurrences in {@code [fromDay, toDay]}. */
+        int pendingCount(int fromDay, int toDay) {
+            int from = confirmedThrough == Integer.MIN_VALUE ? fromDay : Math.max(fromDay, confirmedThrough + 1);
+            int to = Math.min(toDay, lastDay);
+            return from > to ? 0 : schedule.count(from, to, firstDay);
+        }
+
+        Expense toExpense(long id, int day) {
+            return new Expense(id, description, Money.ofMinor(amountMinor), currency, category, LocalDate.ofEpochDay(day));
+        }
+
+        @Override
+        public String toString() {
+            return description + " - " + FxRates.format(amountMinor, currency) + " " + schedule + " from "
+                    + LocalDate.ofEpochDay(firstDay) + (lastDay == ExpenseFilter.ANY_DAY_TO ? "" : " to " + LocalDate.ofEpochDay(lastDay));
+        }
+    }
+
+    /** A pending occurrence of a rule. */
+    static final class Occurrence {
+        final Rule rule;
+        final int day;
+
+        Occurrence(Rule rule, int day) {
+            this.rule = rule;
+            this.day = day;
+        }
+    }
+
+    /** Number and summed amount of the pending occurrences in a range. */
+    static final class Projection {
+        final int count;
+        final long amountMinor;
+
+        Projection(int count, long amountMinor) {
+            this.count = count;
+            this.amountMinor = amountMinor;
+        }
+    }
+
+    private static final Projection NONE = new Projection(0, 0);
+
+    private final List<Rule> rules = new ArrayList<>();
+    private long nextId = 1;
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    List<Rule> rules() {
+        return new ArrayList<>(rules);
+    }
+
+    /**
+     * Adds a rule with occurrences from {@code firstDay} through
+     * {@code lastDay}, the ones up to {@code confirmedThrough} being in the
+     * ledger already.
+     */
+    Rule add(String description, Money amount, String currency, String category, Schedule schedule,
+             int firstDay, int lastDay, int confirmedThrough) {
+        // Tabs and line breaks would split the line in recurring.txt
+        String flat = description.replaceAll("[\\t\\r\\n]+", " ");
+        Rule rule = new Rule(nextId++, flat, amount.minor(), currency, category, schedule, firstDay, lastDay,
+                confirmedThrough);
+        rules.add(rule);
+        return rule;
+    }
+
+    /** Stops a rule; occurrences already in the ledger stay there. */
+    boolean remove(long id) {
+        return rules.removeIf(rule -> rule.id == id);
+    }
+
+    /**
+     * Pending occurrences in {@code [fromDay, toDay]} for {@code category}
+     * (null for any), in {@code display}'s currency. Counted per rule, not
+     * enumerated, so the range may span years. {@code toDay} must be a real
+     * day, not an open end.
+     */
+    Projection project(int fromDay, int toDay, String category, FxRates.Converter display) {
+        int count = 0;
+        long amount = 0;
+        for (Rule rule : rules) {
+            if (category != null && !category.equals(rule.category)) continue;
+            int n = rule.pendingCount(fromDay, toDay);
+            if (n == 0) continue;
+            count += n;
+            amount += display.convert(n * rule.amountMinor, rule.currency, toDay);
+        }
+        return count == 0 ? NONE : new Projection(count, amount);
+    }
+
+    /** The pending occurrences in {@code [fromDay, toDay]}, by day. */
+    List<Occurrence> occurrences(int fromDay, int toDay) {
+        List<Occurrence> occurrences = new ArrayList<>();
+        for (Rule rule : rules) {
+            for (int day = rule.nextPending(fromDay); day <= toDay && day != Schedule.NEVER;
+                 day = day == toDay ? Schedule.NEVER : rule.nextPending(day + 1)) {
+                occurrences.add(new Occurrence(rule, day));
+            }
+        }
+        occurrences.sort(Comparator.comparingInt((Occurrence o) -> o.day).thenComparingLong(o -> o.rule.id));
+        return occurrences;
+    }
+
+    /** Marks {@code occurrence}, and any earlier one of its rule, as handled. */
+    void confirm(Occurrence occurrence) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (rule.id != occurrence.rule.id || rule.confirmedThrough >= occurrence.day) continue;
+            rules.set(i, new Rule(rule.id, rule.description, rule.amountMinor, rule.currency, rule.category,
+                    rule.schedule, rule.firstDay, rule.lastDay, occurrence.day));
+        }
+    }
+
+    /** Marks every occurrence up to {@code day} as handled, whether it was added or skipped. */
+    void confirmThrough(int day) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (rule.confirmedThrough >= day) continue;
+            rules.set(i, new Rule(rule.id, rule.description, rule.amountMinor, rule.currency, rule.category,
+                    rule.schedule, rule.firstDay, rule.lastDay, day));
+        }
+    }
+
+    /** Reads recurring.txt; a missing file is an empty plan. */
+    static RecurringPlan load(Path file) throws IOException {
+        RecurringPlan plan = new RecurringPlan();
+        if (!Files.exists(file)) return plan;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] fields = line.split("\t", 7);
+                if (fields.length != 7) throw new IOException("Expected 7 fields: " + line);
+                try {
+                    String[] amount = FxRates.splitAmount(fields[4], FxRates.BASE);
+                    plan.add(fields[6], Money.parse(amount[0]), amount[1], fields[5], Schedule.parse(fields[0]),
+                            (int) LocalDate.parse(fields[1].trim()).toEpochDay(), parseDay(fields[2], ExpenseFilter.ANY_DAY_TO),
+                            parseDay(fields[3], Integer.MIN_VALUE));
+                } catch (RuntimeException e) {
+                    throw new IOException("Bad recurring expense '" + line + "': " + e.getMessage(), e);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /** Independent copy, so a save can write it while this plan keeps changing. */
+    RecurringPlan copy() {
+        RecurringPlan copy = new RecurringPlan();
+        copy.rules.addAll(rules);
+        copy.nextId = nextId;
+        return copy;
+    }
+
+    /** Writes recurring.txt lines to {@code out}; see {@link AutoSaver#replace} for replacing the file. */
+    void writeTo(OutputStream out) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (Rule rule : rules) {
+            writer.write(rule.schedule.toString());
+            writer.write('\t');
+            writer.write(LocalDate.ofEpochDay(rule.firstDay).toString());
+            writer.write('\t');
+            writer.write(rule.lastDay == ExpenseFilter.ANY_DAY_TO ? "*" : LocalDate.ofEpochDay(rule.lastDay).toString());
+            writer.write('\t');
+            writer.write(rule.confirmedThrough == Integer.MIN_VALUE ? "-" : LocalDate.ofEpochDay(rule.confirmedThrough).toString());
+            writer.write('\t');
+            writer.write(Money.format(rule.amountMinor));
+            if (!rule.currency.equals(FxRates.BASE)) writer.write(" " + rule.currency);
+            writer.write('\t');
+            writer.write(rule.category);
+            writer.write('\t');
+            writer.write(rule.description);
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    private static int parseDay(String text, int none) {
+        String day = text.trim();
+        return day.equals("*") || day.equals("-") ? none : (int) LocalDate.parse(day).toEpochDay();
+    }
+}
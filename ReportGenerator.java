@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Streams a report for an {@link ExpenseStore} through a {@link ReportWriter}.
+ * Meant to run on a worker thread over a store nobody else is mutating; it
+ * reports progress every few thousand rows and stops early when cancelled.
+ * Recurring expenses not yet added are listed after the ledger's rows, up to
+ * {@link #RECURRING_DAYS} days ahead.
+ *
+ * The report is in the store's display currency. Budgets are kept in
+ * rupees, so the budget is converted at today's rate.
+ */
+class ReportGenerator {
+    private static final int PROGRESS_INTERVAL = 4096;
+    static final int RECURRING_DAYS = 30;
+
+    interface Progress {
+        void update(int rowsWritten, int totalRows);
+
+        boolean isCancelled();
+    }
+
+    /**
+     * Writes the report to {@code file}. Returns false (and removes the partial
+     * file) if {@code progress} reports cancellation.
+     */
+    static boolean generate(ExpenseStore store, long budgetMinor, ReportWriter.Format format,
+                            Path file, Progress progress) throws IOException {
+        return generate(store, budgetMinor, new RecurringPlan(), format, file, progress);
+    }
+
+    /** As above, also listing {@code recurring}'s pending occurrences; the plan must not change meanwhile. */
+    static boolean generate(ExpenseStore store, long budgetMinor, RecurringPlan recurring, ReportWriter.Format format,
+                            Path file, Progress progress) throws IOException {
+        boolean complete = false;
+        PerfEvents.Report event = new PerfEvents.Report(format.name());
+        try (ReportOutput out = new ReportOutput(file)) {
+            ReportWriter writer = ReportWriter.create(format, out, store.displayCurrency());
+            ExpenseAggregates aggregates = store.aggregates();
+            long total = aggregates.total();
+            int today = (int) LocalDate.now().toEpochDay();
+
+            writer.begin(today, total, store.displayConverter().convert(budgetMinor, FxRates.BASE, today));
+            for (int cat = 0; cat < store.categoryCount(); cat++) {
+                long amount = aggregates.categoryTotal(cat);
+                if (amount != 0) writer.category(store.categoryName(cat), amount, total);
+            }
+
+            int rows = store.size();
+            writer.beginDetails(store.liveCount());
+            for (int row = 0; row < rows; row++) {
+                if ((row & (PROGRESS_INTERVAL - 1)) == 0) {
+                    if (progress.isCancelled()) return false;
+                    progress.update(row, rows);
+                }
+                if (!store.isDeleted(row)) writer.row(store, row);
+            }
+            int through = today + RECURRING_DAYS;
+            List<RecurringPlan.Occurrence> pending = recurring.occurrences(ExpenseFilter.ANY_DAY_FROM, through);
+            writer.beginRecurring(pending.size(), through);
+            for (RecurringPlan.Occurrence occurrence : pending) {
+                RecurringPlan.Rule rule = occurrence.rule;
+                writer.recurring(occurrence.day, rule.category, rule.amountMinor, rule.currency, rule.description);
+            }
+            writer.end();
+            progress.update(rows, rows);
+            complete = true;
+        } finally {
+            if (!complete) Files.deleteIfExists(file);
+        }
+        event.rows = store.liveCount();
+        event.bytes = Files.size(file);
+        event.finish();
+        return true;
+    }
+}
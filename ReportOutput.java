@@ -0,0 +1,221 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reusable UTF-8 output buffer over a {@link FileChannel}.
+ *
+ * Numbers, money and dates are written digit by digit and description bytes
+ * are copied straight out of the store's arena, so streaming a report row
+ * allocates nothing. Escaping works on raw UTF-8 bytes: every character that
+ * needs escaping is ASCII, and ASCII bytes never occur inside multi-byte
+ * sequences.
+ */
+class ReportOutput implements Closeable {
+    enum Escape { NONE, CSV, JSON, HTML }
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    private final byte[] digits = new byte[20];
+    private byte[] scratch = new byte[256];
+
+    ReportOutput(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    ReportOutput append(char c) throws IOException {
+        if (c < 0x80) {
+            ensure(1);
+            buf.put((byte) c);
+        } else {
+            append(String.valueOf(c));
+        }
+        return this;
+    }
+
+    ReportOutput append(String s) throws IOException {
+        return append(s, Escape.NONE);
+    }
+
+    ReportOutput append(String s, Escape escape) throws IOException {
+        if (isPlainAscii(s, escape)) {
+            // Labels, separators and category names: copy chars directly, no byte[] per call
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) buf.put((byte) s.charAt(i));
+            return this;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        return appendBytes(bytes, 0, bytes.length, escape);
+    }
+
+    ReportOutput newline() throws IOException {
+        return append('\n');
+    }
+
+    /** Writes the description of {@code row} without decoding it into a String. */
+    ReportOutput appendDescription(ExpenseStore store, int row, Escape escape) throws IOException {
+        int length = store.descriptionLengthAt(row);
+        if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        store.copyDescription(row, scratch, 0);
+        return appendBytes(scratch, 0, length, escape);
+    }
+
+    ReportOutput appendLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) return append(Long.toString(value));
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(digits.length - pos);
+        buf.put(digits, pos, digits.length - pos);
+        return this;
+    }
+
+    /** Writes minor units as "1234.50". */
+    ReportOutput appendMinor(long minor) throws IOException {
+        if (minor < 0) {
+            append('-');
+            minor = -minor;
+        }
+        appendLong(minor / 100);
+        long fraction = minor % 100;
+        append('.');
+        append((char) ('0' + fraction / 10));
+        return append((char) ('0' + fraction % 10));
+    }
+
+    /** Writes {@code numerator / denominator} as a percentage with one decimal, e.g. "12.5". */
+    ReportOutput appendPercent(long numerator, long denominator) throws IOException {
+        long tenths = denominator == 0 ? 0 : Math.round(numerator * 1000.0 / denominator);
+        appendLong(tenths / 10);
+        append('.');
+        return append((char) ('0' + Math.abs(tenths % 10)));
+    }
+
+    /** Writes an epoch day as ISO "yyyy-MM-dd". */
+    ReportOutput appendDate(int epochDay) throws IOException {
+        long z = epochDay + 719468L;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        appendLong(year);
+        append('-');
+        appendTwoDigits(month);
+        append('-');
+        return appendTwoDigits(day);
+    }
+
+    void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** True if {@code s} is ASCII and contains nothing {@code escape} would rewrite. */
+    private boolean isPlainAscii(String s, Escape escape) {
+        if (s.length() > buf.capacity()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) return false;
+            switch (escape) {
+                case CSV:
+                    if (c == ',' || c == '"' || c == '\n' || c == '\r') return false;
+                    break;
+                case JSON:
+                    if (c == '"' || c == '\\' || c < 0x20) return false;
+                    break;
+                case HTML:
+                    if (c == '<' || c == '>' || c == '&' || c == '"') return false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private ReportOutput appendTwoDigits(long value) throws IOException {
+        append((char) ('0' + value / 10));
+        return append((char) ('0' + value % 10));
+    }
+
+    private ReportOutput appendBytes(byte[] bytes, int offset, int length, Escape escape) throws IOException {
+        if (escape == Escape.CSV) {
+            boolean quote = false;
+            for (int i = offset; i < offset + length && !quote; i++) {
+                byte b = bytes[i];
+                quote = b == ',' || b == '"' || b == '\n' || b == '\r';
+            }
+            if (!quote) escape = Escape.NONE;
+            else append('"');
+        }
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            switch (escape) {
+                case CSV:
+                    if (b == '"') append('"');
+                    break;
+                case JSON:
+                    if (b == '"' || b == '\\') {
+                        append('\\');
+                    } else if (b >= 0 && b < 0x20) {
+                        appendJsonControl(b);
+                        continue;
+                    }
+                    break;
+                case HTML:
+                    if (b == '<') { append("&lt;"); continue; }
+                    if (b == '>') { append("&gt;"); continue; }
+                    if (b == '&') { append("&amp;"); continue; }
+                    if (b == '"') { append("&quot;"); continue; }
+                    break;
+                default:
+                    break;
+            }
+            ensure(1);
+            buf.put(b);
+        }
+        if (escape == Escape.CSV) append('"');
+        return this;
+    }
+
+    private void appendJsonControl(byte b) throws IOException {
+        switch (b) {
+            case '\n': append("\\n"); return;
+            case '\r': append("\\r"); return;
+            case '\t': append("\\t"); return;
+            default:
+                append("\\u00");
+                append(Character.forDigit(b >> 4, 16));
+                append(Character.forDigit(b & 0xF, 16));
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buf.remaining() < bytes) flush();
+    }
+}
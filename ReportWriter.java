@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Pluggable report layout. {@link ReportGenerator} drives a writer through
+ * summary, category breakdown, per-expense rows and recurring expenses not
+ * yet added; each format decides how to lay them out on a shared
+ * {@link ReportOutput}.
+ *
+ * Totals are in the report's currency, the store's display currency. Each
+ * row shows its own amount and currency, and rows in another currency also
+ * show the converted amount the totals were built from.
+ */
+abstract class ReportWriter {
+    enum Format {
+        TEXT("Text", "txt"),
+        CSV("CSV", "csv"),
+        JSON("JSON", "json"),
+        HTML("HTML", "html");
+
+        final String label;
+        final String extension;
+
+        Format(String label, String extension) {
+            this.label = label;
+            this.extension = extension;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    protected final ReportOutput out;
+    protected final String currency;
+    protected final String symbol;
+
+    protected ReportWriter(ReportOutput out, String currency) {
+        this.out = out;
+        this.currency = currency;
+        this.symbol = FxRates.symbol(currency);
+    }
+
+    static ReportWriter create(Format format, ReportOutput out, String currency) {
+        switch (format) {
+            case CSV: return new Csv(out, currency);
+            case JSON: return new Json(out, currency);
+            case HTML: return new Html(out, currency);
+            default: return new Text(out, currency);
+        }
+    }
+
+    /** True if {@code row} is in another currency than the report, so it has a converted amount too. */
+    protected boolean converted(ExpenseStore store, int row) {
+        return !store.currencyAt(row).equals(currency);
+    }
+
+    abstract void begin(int generatedDay, long totalMinor, long budgetMinor) throws IOException;
+
+    abstract void category(String name, long amountMinor, long totalMinor) throws IOException;
+
+    abstract void beginDetails(int rowCount) throws IOException;
+
+    abstract void row(ExpenseStore store, int row) throws IOException;
+
+    abstract void beginRecurring(int count, int throughDay) throws IOException;
+
+    abstract void recurring(int day, String category, long amountMinor, String currency, String description)
+            throws IOException;
+
+    abstract void end() throws IOException;
+
+    /** The original plain-text layout. */
+    static class Text extends ReportWriter {
+        Text(ReportOutput out, String currency) {
+            super(out, currency);
+        }
+
+        @Override
+        void begin(int generatedDay, long totalMinor, long budgetMinor) throws IOException {
+            out.append("===== EXPENSE REPORT =====").newline();
+            out.append("Generated on: ").appendDate(generatedDay).newline();
+            out.append("---------------------------").newline();
+            out.newline();
+            out.append("SUMMARY").newline();
+            out.append("---------------------------").newline();
+            out.append("Total Spent: ").append(symbol).appendMinor(totalMinor).newline();
+            out.append("Budget: ").append(symbol).appendMinor(budgetMinor).newline();
+            out.append("Remaining: ").append(symbol).appendMinor(budgetMinor - totalMinor).newline();
+            out.newline();
+            out.append("CATEGORY BREAKDOWN").newline();
+            out.append("---------------------------").newline();
+        }
+
+        @Override
+        void category(String name, long amountMinor, long totalMinor) throws IOException {
+            out.append(name).append(": ").append(symbol).appendMinor(amountMinor)
+                    .append(" (").appendPercent(amountMinor, totalMinor).append("%)").newline();
+        }
+
+        @Override
+        void beginDetails(int rowCount) throws IOException {
+            out.newline();
+            out.append("EXPENSE DETAILS").newline();
+            out.append("---------------------------").newline();
+        }
+
+        @Override
+        void row(ExpenseStore store, int row) throws IOException {
+            out.appendDate(store.epochDayAt(row)).append(" | ")
+                    .append(store.categoryAt(row)).append(" | ")
+                    .append(FxRates.symbol(store.currencyAt(row))).appendMinor(store.amountAt(row));
+            if (converted(store, row)) out.append(" (").append(symbol).appendMinor(store.displayAmountAt(row)).append(')');
+            out.append(" | ").appendDescription(store, row, ReportOutput.Escape.NONE).newline();
+        }
+
+        @Override
+        void beginRecurring(int count, int throughDay) throws IOException {
+            if (count == 0) return;
+            out.newline();
+            out.append("RECURRING, NOT YET ADDED (through ").appendDate(throughDay).append(')').newline();
+            out.append("---------------------------").newline();
+        }
+
+        @Override
+        void recurring(int day, String category, long amountMinor, String currency, String description)
+                throws IOException {
+            out.appendDate(day).append(" | ").append(category).append(" | ")
+                    .append(FxRates.symbol(currency)).appendMinor(amountMinor)
+                    .append(" | ").append(description).newline();
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    /** One row per expense with a header line; summary sections are omitted. */
+    static class Csv extends ReportWriter {
+        Csv(ReportOutput out, String currency) {
+            super(out, currency);
+        }
+
+        @Override
+        void begin(int generatedDay, long totalMinor, long budgetMinor) {
+        }
+
+        @Override
+        void category(String name, long amountMinor, long totalMinor) {
+        }
+
+        @Override
+        void beginDetails(int rowCount) throws IOException {
+            out.append("date,category,amount,currency,amount_").append(currency.toLowerCase(Locale.ROOT))
+                    .append(",description").newline();
+        }
+
+        @Override
+        void row(ExpenseStore store, int row) throws IOException {
+            out.appendDate(store.epochDayAt(row)).append(',')
+                    .append(store.categoryAt(row), ReportOutput.Escape.CSV).append(',')
+                    .appendMinor(store.amountAt(row)).append(',')
+                    .append(store.currencyAt(row)).append(',')
+                    .appendMinor(store.displayAmountAt(row)).append(',')
+                    .appendDescription(store, row, ReportOutput.Escape.CSV).newline();
+        }
+
+        @Override
+        void beginRecurring(int count, int throughDay) {
+        }
+
+        @Override
+        void recurring(int day, String category, long amountMinor, String currency, String description) {
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    static class Json extends ReportWriter {
+        private boolean first;
+
+        Json(ReportOutput out, String currency) {
+            super(out, currency);
+        }
+
+        @Override
+        void begin(int generatedDay, long totalMinor, long budgetMinor) throws IOException {
+            out.append("{\n  \"generatedOn\": \"").appendDate(generatedDay).append("\",\n");
+            out.append("  \"currency\": \"").append(currency).append("\",\n");
+            out.append("  \"totalSpent\": ").appendMinor(totalMinor).append(",\n");
+            out.append("  \"budget\": ").appendMinor(budgetMinor).append(",\n");
+            out.append("  \"remaining\": ").appendMinor(budgetMinor - totalMinor).append(",\n");
+            out.append("  \"categories\": [");
+            first = true;
+        }
+
+        @Override
+        void category(String name, long amountMinor, long totalMinor) throws IOException {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"name\": \"").append(name, ReportOutput.Escape.JSON)
+                    .append("\", \"amount\": ").appendMinor(amountMinor)
+                    .append(", \"percent\": ").appendPercent(amountMinor, totalMinor).append('}');
+        }
+
+        @Override
+        void beginDetails(int rowCount) throws IOException {
+            out.append("\n  ],\n  \"expenses\": [");
+            first = true;
+        }
+
+        @Override
+        void row(ExpenseStore store, int row) throws IOException {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"date\": \"").appendDate(store.epochDayAt(row))
+                    .append("\", \"category\": \"").append(store.categoryAt(row), ReportOutput.Escape.JSON)
+                    .append("\", \"amount\": ").appendMinor(store.amountAt(row))
+                    .append(", \"currency\": \"").append(store.currencyAt(row))
+                    .append("\", \"converted\": ").appendMinor(store.displayAmountAt(row))
+                    .append(", \"description\": \"").appendDescription(store, row, ReportOutput.Escape.JSON)
+                    .append("\"}");
+        }
+
+        @Override
+        void beginRecurring(int count, int throughDay) throws IOException {
+            out.append("\n  ],\n  \"recurringThrough\": \"").appendDate(throughDay).append("\",\n  \"recurring\": [");
+            first = true;
+        }
+
+        @Override
+        void recurring(int day, String category, long amountMinor, String currency, String description)
+                throws IOException {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"date\": \"").appendDate(day)
+                    .append("\", \"category\": \"").append(category, ReportOutput.Escape.JSON)
+                    .append("\", \"amount\": ").appendMinor(amountMinor)
+                    .append(", \"currency\": \"").append(currency).append('"')
+                    .append(", \"description\": \"").append(description, ReportOutput.Escape.JSON)
+                    .append("\"}");
+        }
+
+        @Override
+        void end() throws IOException {
+            out.append("\n  ]\n}\n");
+        }
+    }
+
+    /** Self-contained HTML page with inline styles and no external resources. */
+    static class Html extends ReportWriter {
+        Html(ReportOutput out, String currency) {
+            super(out, currency);
+        }
+
+        @Override
+        void begin(int generatedDay, long totalMinor, long budgetMinor) throws IOException {
+            out.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Expense Report</title>\n");
+            out.append("<style>body{font-family:'Segoe UI',sans-serif;color:#323232;background:#f5f5fa;margin:24px}")
+                    .append("h1{color:#4b0082}table{border-collapse:collapse;background:#fff;margin-bottom:24px}")
+                    .append("th,td{padding:6px 12px;border-bottom:1px solid #ddd;text-align:left}")
+                    .append("td.num{text-align:right}</style></head><body>\n");
+            out.append("<h1>Expense Report</h1>\n<p>Generated on ").appendDate(generatedDay).append("</p>\n");
+            out.append("<table><tr><th>Total Spent</th><td class=\"num\">").append(symbol).appendMinor(totalMinor).append("</td></tr>");
+            out.append("<tr><th>Budget</th><td class=\"num\">").append(symbol).appendMinor(budgetMinor).append("</td></tr>");
+            out.append("<tr><th>Remaining</th><td class=\"num\">").append(symbol).appendMinor(budgetMinor - totalMinor)
+                    .append("</td></tr></table>\n");
+            out.append("<h2>Category Breakdown</h2>\n<table><tr><th>Category</th><th>Amount</th><th>Share</th></tr>\n");
+        }
+
+        @Override
+        void category(String name, long amountMinor, long totalMinor) throws IOException {
+            out.append("<tr><td>").append(name, ReportOutput.Escape.HTML)
+                    .append("</td><td class=\"num\">").append(symbol).appendMinor(amountMinor)
+                    .append("</td><td class=\"num\">").appendPercent(amountMinor, totalMinor).append("%</td></tr>\n");
+        }
+
+        @Override
+        void beginDetails(int rowCount) throws IOException {
+            out.append("</table>\n<h2>Expense Details</h2>\n");
+            out.append("<table><tr><th>Date</th><th>Category</th><th>Amount</th><th>Description</th></tr>\n");
+        }
+
+        @Override
+        void row(ExpenseStore store, int row) throws IOException {
+            out.append("<tr><td>").appendDate(store.epochDayAt(row))
+                    .append("</td><td>").append(store.categoryAt(row), ReportOutput.Escape.HTML)
+                    .append("</td><td class=\"num\">").append(FxRates.symbol(store.currencyAt(row)))
+                    .appendMinor(store.amountAt(row));
+            if (converted(store, row)) out.append(" (").append(symbol).appendMinor(store.displayAmountAt(row)).append(')');
+            out.append("</td><td>").appendDescription(store, row, ReportOutput.Escape.HTML)
+                    .append("</td></tr>\n");
+        }
+
+        @Override
+        void beginRecurring(int count, int throughDay) throws IOException {
+            if (count == 0) return;
+            out.append("</table>\n<h2>Recurring, Not Yet Added (through ").appendDate(throughDay).append(")</h2>\n");
+            out.append("<table><tr><th>Date</th><th>Category</th><th>Amount</th><th>Description</th></tr>\n");
+        }
+
+        @Override
+        void recurring(int day, String category, long amountMinor, String currency, String description)
+                throws IOException {
+            out.append("<tr><td>").appendDate(day)
+                    .append("</td><td>").append(category, ReportOutput.Escape.HTML)
+                    .append("</td><td class=\"num\">").append(FxRates.symbol(currency)).appendMinor(amountMinor)
+                    .append("</td><td>").append(description, ReportOutput.Escape.HTML)
+                    .append("</td></tr>\n");
+        }
+
+        @Override
+        void end() throws IOException {
+            out.append("</table>\n</body></html>\n");
+        }
+    }
+}
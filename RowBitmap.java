@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Compressed set of row numbers, organised like a roaring bitmap: rows are
+ * grouped by their high 16 bits, and each group is a sorted {@code short}
+ * array while sparse or a 65536-bit bitmap once it holds more than 4096 rows.
+ * Rows arrive mostly in ascending order, so adds usually touch the last group.
+ */
+class RowBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+
+    private static final class Container {
+        short[] array = new short[4];   // sorted low bits while sparse
+        long[] bits;                    // 1024 words once dense
+        int cardinality;
+
+        boolean contains(int low) {
+            if (bits != null) return (bits[low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(array, 0, cardinality, (short) (low - 32768)) >= 0;
+        }
+
+        boolean add(int low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) return false;
+                bits[low >>> 6] |= mask;
+                cardinality++;
+                return true;
+            }
+            // Array values are biased by -32768 so signed short order matches row order
+            short key = (short) (low - 32768);
+            int pos = cardinality > 0 && array[cardinality - 1] < key
+                    ? -(cardinality + 1) : Arrays.binarySearch(array, 0, cardinality, key);
+            if (pos >= 0) return false;
+            pos = -(pos + 1);
+            if (cardinality == ARRAY_LIMIT) {
+                toBitmap();
+                return add(low);
+            }
+            if (cardinality == array.length) array = Arrays.copyOf(array, Math.min(array.length * 2, ARRAY_LIMIT));
+            System.arraycopy(array, pos, array, pos + 1, cardinality - pos);
+            array[pos] = key;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(int low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) == 0) return false;
+                bits[low >>> 6] &= ~mask;
+                cardinality--;
+                return true;
+            }
+            int pos = Arrays.binarySearch(array, 0, cardinality, (short) (low - 32768));
+            if (pos < 0) return false;
+            System.arraycopy(array, pos + 1, array, pos, cardinality - pos - 1);
+            cardinality--;
+            return true;
+        }
+
+        private void toBitmap() {
+            bits = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                int low = array[i] + 32768;
+                bits[low >>> 6] |= 1L << low;
+            }
+            array = null;
+        }
+
+        void orInto(int high, long[] out) {
+            int base = high << 10;
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    int row = (high << 16) | (array[i] + 32768);
+                    out[row >>> 6] |= 1L << row;
+                }
+                return;
+            }
+            int words = Math.min(bits.length, out.length - base);
+            for (int w = 0; w < words; w++) out[base + w] |= bits[w];
+        }
+
+        int fill(int high, int[] out, int pos) {
+            int base = high << 16;
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) out[pos++] = base | (array[i] + 32768);
+                return pos;
+            }
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    out[pos++] = base | (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return pos;
+        }
+    }
+
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+    private int cardinality;
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean contains(int row) {
+        int c = find(row >>> 16);
+        return c >= 0 && containers[c].contains(row & 0xFFFF);
+    }
+
+    void add(int row) {
+        int high = row >>> 16;
+        int c = find(high);
+        if (c < 0) {
+            c = -(c + 1);
+            if (containerCount == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+                containers = Arrays.copyOf(containers, containers.length * 2);
+            }
+            System.arraycopy(keys, c, keys, c + 1, containerCount - c);
+            System.arraycopy(containers, c, containers, c + 1, containerCount - c);
+            keys[c] = high;
+            containers[c] = new Container();
+            containerCount++;
+        }
+        if (containers[c].add(row & 0xFFFF)) cardinality++;
+    }
+
+    void remove(int row) {
+        int c = find(row >>> 16);
+        if (c >= 0 && containers[c].remove(row & 0xFFFF)) cardinality--;
+    }
+
+    /** Sets the bit of every row in {@code bits}. Returns false if the set is empty. */
+    boolean orInto(long[] bits) {
+        for (int c = 0; c < containerCount; c++) {
+            containers[c].orInto(keys[c], bits);
+        }
+        return cardinality > 0;
+    }
+
+    /** Writes all rows in ascending order into {@code out}, which must hold cardinality() slots. */
+    int toArray(int[] out) {
+        int pos = 0;
+        for (int c = 0; c < containerCount; c++) {
+            pos = containers[c].fill(keys[c], out, pos);
+        }
+        return pos;
+    }
+
+    private int find(int high) {
+        // Fast path for the common append-to-the-last-container case
+        if (containerCount > 0 && keys[containerCount - 1] == high) return containerCount - 1;
+        return Arrays.binarySearch(keys, 0, containerCount, high);
+    }
+}
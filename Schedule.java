@@ -0,0 +1,287 @@
+import java.util.Locale;
+
+/**
+ * When a recurring expense falls due, at day granularity. Two forms are
+ * understood:
+ *
+ * <pre>
+ * daily | weekly [mon,thu] | monthly [15|last] | yearly
+ * every N days | every N weeks [on mon,thu] | every N months [on 15|last] | every N years
+ * DOM MONTH DOW        the date fields of a cron line, e.g. "1,15 * *" or "* * mon-fri"
+ * </pre>
+ *
+ * Interval schedules are anchored on the rule's first day: "every 2 weeks"
+ * repeats on that weekday, and "monthly" on that day of the month. The day
+ * is clamped to the month's length, so a rule started on the 31st falls on
+ * the 30th in April. The cron form takes numbers, names, ranges, lists,
+ * {@code *}, {@code *}/step and, for the day of the month, L for the last
+ * day. As in cron, a date matches either day field when both are restricted.
+ *
+ * {@link #next} jumps straight to the next occurrence for interval
+ * schedules. Only the cron form walks day by day, and it skips months that
+ * cannot match.
+ */
+final class Schedule {
+    /** Returned by {@link #next} when there is no later occurrence. */
+    static final int NEVER = Integer.MAX_VALUE;
+
+    private enum Unit { DAY, WEEK, MONTH }
+
+    // How far the cron form looks ahead; 29 February repeats within 8 years
+    private static final int SEARCH_DAYS = 366 * 8;
+    private static final String[] WEEKDAYS = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+    private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun",
+            "jul", "aug", "sep", "oct", "nov", "dec"};
+    private static final int LAST_DAY = -1;
+
+    private final String text;
+    // Interval form; unit is null for the cron form
+    private final Unit unit;
+    private final int every;
+    private final int weekdays;     // bit 0 is Monday; 0 means the first day's weekday
+    private final int dayOfMonth;   // 1-31, LAST_DAY, or 0 for the first day's
+    // Cron form
+    private final long domMask;     // bit d for day d, bit 0 for the last day
+    private final int monthMask;    // bit 0 is January
+    private final int dowMask;      // bit 0 is Monday
+    private final boolean anyDom;
+    private final boolean anyDow;
+
+    private Schedule(String text, Unit unit, int every, int weekdays, int dayOfMonth,
+                     long domMask, int monthMask, int dowMask, boolean anyDom, boolean anyDow) {
+        this.text = text;
+        this.unit = unit;
+        this.every = every;
+        this.weekdays = weekdays;
+        this.dayOfMonth = dayOfMonth;
+        this.domMask = domMask;
+        this.monthMask = monthMask;
+        this.dowMask = dowMask;
+        this.anyDom = anyDom;
+        this.anyDow = anyDow;
+    }
+
+    /** Parses either form; throws IllegalArgumentException naming what is wrong. */
+    static Schedule parse(String text) {
+        String spec = text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        if (spec.isEmpty()) throw new IllegalArgumentException("Empty schedule");
+        String[] words = spec.split(" ");
+        switch (words[0]) {
+            case "daily":
+                return interval(spec, words, 1, Unit.DAY, 1);
+            case "weekly":
+                return interval(spec, words, 1, Unit.WEEK, 1);
+            case "monthly":
+                return interval(spec, words, 1, Unit.MONTH, 1);
+            case "yearly":
+                return interval(spec, words, 1, Unit.MONTH, 12);
+            case "every": {
+                if (words.length < 3) throw new IllegalArgumentException("Expected 'every N days|weeks|months|years'");
+                int n = parseNumber(words[1], 1, 999, "interval");
+                switch (words[2]) {
+                    case "day": case "days": return interval(spec, words, 3, Unit.DAY, n);
+                    case "week": case "weeks": return interval(spec, words, 3, Unit.WEEK, n);
+                    case "month": case "months": return interval(spec, words, 3, Unit.MONTH, n);
+                    case "year": case "years": return interval(spec, words, 3, Unit.MONTH, n * 12);
+                    default: throw new IllegalArgumentException("Unknown unit '" + words[2] + "'");
+                }
+            }
+            default:
+                return cron(spec, words);
+        }
+    }
+
+    private static Schedule interval(String spec, String[] words, int next, Unit unit, int every) {
+        int weekdays = 0, dayOfMonth = 0;
+        if (next < words.length && words[next].equals("on")) next++;
+        if (next < words.length) {
+            if (next != words.length - 1 || unit == Unit.DAY) {
+                throw new IllegalArgumentException("Unexpected '" + words[next] + "'");
+            }
+            if (unit == Unit.WEEK) {
+                weekdays = mondayFirst(parseField(words[next], 0, 7, WEEKDAYS, "weekday"));
+            } else if (words[next].equals("last")) {
+                dayOfMonth = LAST_DAY;
+            } else {
+                dayOfMonth = parseNumber(words[next], 1, 31, "day of month");
+            }
+        }
+        return new Schedule(spec, unit, every, weekdays, dayOfMonth, 0, 0, 0, false, false);
+    }
+
+    private static Schedule cron(String spec, String[] words) {
+        if (words.length != 3) {
+            throw new IllegalArgumentException("Expected daily, weekly, monthly, yearly, 'every N ...' or 'DOM MONTH DOW'");
+        }
+        boolean anyDom = words[0].equals("*");
+        boolean anyDow = words[2].equals("*");
+        long domMask = 0;
+        for (String part : words[0].split(",")) {
+            domMask |= part.equals("l") || part.equals("last") ? 1L : parseField(part, 1, 31, null, "day of month") & 0xFFFFFFFFL;
+        }
+        int monthMask = parseField(words[1], 1, 12, MONTHS, "month") >>> 1;
+        int dowMask = mondayFirst(parseField(words[2], 0, 7, WEEKDAYS, "weekday"));
+        if (anyDom) domMask = ~0L;
+        if (anyDow) dowMask = 0x7F;
+        Schedule schedule = new Schedule(spec, null, 0, 0, 0, domMask, monthMask, dowMask, anyDom, anyDow);
+        if (schedule.next(0, 0) == NEVER) throw new IllegalArgumentException("'" + spec + "' never occurs");
+        return schedule;
+    }
+
+    /** Cron numbers weekdays from Sunday = 0 (or 7); masks here have Monday as bit 0. */
+    private static int mondayFirst(int cronMask) {
+        return (cronMask >>> 1) & 0x3F | ((cronMask & 0x81) != 0 ? 0x40 : 0);
+    }
+
+    /** Bit mask of the values a cron field allows; names count from 1 (January, Monday). */
+    private static int parseField(String field, int min, int max, String[] names, String what) {
+        int mask = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), 1, max, what + " step");
+                part = part.substring(0, slash);
+            }
+            int from, to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = part.indexOf('-');
+                from = parseValue(dash < 0 ? part : part.substring(0, dash), min, max, names, what);
+                to = dash < 0 ? (slash >= 0 ? max : from) : parseValue(part.substring(dash + 1), min, max, names, what);
+                if (to < from) throw new IllegalArgumentException("Backwards range '" + part + "'");
+            }
+            for (int v = from; v <= to; v += step) mask |= 1 << v;
+        }
+        return mask;
+    }
+
+    private static int parseValue(String value, int min, int max, String[] names, String what) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (value.startsWith(names[i])) return i + 1;
+            }
+        }
+        return parseNumber(value, min, max, what);
+    }
+
+    private static int parseNumber(String value, int min, int max, String what) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min && n <= max) return n;
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Bad " + what + " '" + value + "'");
+    }
+
+    /** First occurrence on or after {@code day}, for a rule whose first day is {@code startDay}. */
+    int next(int day, int startDay) {
+        int from = Math.max(day, startDay);
+        if (unit == null) return nextCron(from);
+        switch (unit) {
+            case DAY: {
+                long k = Math.floorDiv((long) from - startDay + every - 1, every);
+                return clampDay(startDay + k * every);
+            }
+            case WEEK:
+                return nextWeekly(from, startDay);
+            default:
+                return nextMonthly(from, startDay);
+        }
+    }
+
+    /**
+     * Number of occurrences in {@code [fromDay, toDay]}. Closed form for
+     * daily intervals; other schedules step from one occurrence to the next,
+     * so the cost follows the occurrences, never the days in between.
+     */
+    int count(int fromDay, int toDay, int startDay) {
+        int first = next(fromDay, startDay);
+        if (first > toDay) return 0;
+        if (unit == Unit.DAY) return (int) (((long) toDay - first) / every + 1);
+        int n = 0;
+        for (int d = first; d != NEVER && d <= toDay; d = d == toDay ? NEVER : next(d + 1, startDay)) n++;
+        return n;
+    }
+
+    private int nextWeekly(int from, int startDay) {
+        int mask = weekdays != 0 ? weekdays : 1 << weekday(startDay);
+        int startWeek = week(startDay);
+        int w = week(from);
+        int dow = weekday(from);
+        for (int attempt = 0; attempt < 3; attempt++) {
+            int offset = Math.floorMod(w - startWeek, every);
+            if (offset != 0) {
+                w += every - offset;
+                dow = 0;
+            }
+            int later = mask & -(1 << dow);
+            if (later != 0) return clampDay((long) w * 7 - 3 + Integer.numberOfTrailingZeros(later));
+            w += every;
+            dow = 0;
+        }
+        return NEVER;
+    }
+
+    private int nextMonthly(int from, int startDay) {
+        int startMonth = ExpenseAggregates.monthIndexOfDay(startDay);
+        int dom = dayOfMonth != 0 ? dayOfMonth : startDay - ExpenseAggregates.dayOfMonthIndex(startMonth) + 1;
+        int month = ExpenseAggregates.monthIndexOfDay(from);
+        int offset = Math.floorMod(month - startMonth, every);
+        if (offset != 0) month += every - offset;
+        int day = dayIn(month, dom);
+        if (day < from) day = dayIn(month + every, dom);
+        return day;
+    }
+
+    private int nextCron(int from) {
+        long limit = (long) from + SEARCH_DAYS;
+        int day = from;
+        while (day <= limit && day >= from) {
+            int month = ExpenseAggregates.monthIndexOfDay(day);
+            int monthStart = ExpenseAggregates.dayOfMonthIndex(month);
+            int nextMonthStart = ExpenseAggregates.dayOfMonthIndex(month + 1);
+            if ((monthMask & 1 << Math.floorMod(month, 12)) == 0) {
+                day = nextMonthStart;
+                continue;
+            }
+            for (; day < nextMonthStart; day++) {
+                int dom = day - monthStart + 1;
+                boolean domMatch = (domMask & 1L << dom) != 0 || (domMask & 1) != 0 && day == nextMonthStart - 1;
+                boolean dowMatch = (dowMask & 1 << weekday(day)) != 0;
+                boolean match = anyDom ? dowMatch : anyDow ? domMatch : domMatch || dowMatch;
+                if (match) return day;
+            }
+        }
+        return NEVER;
+    }
+
+    /** {@code dom} (or the last day) in a month, clamped to the month's length. */
+    private static int dayIn(int month, int dom) {
+        int first = ExpenseAggregates.dayOfMonthIndex(month);
+        int length = ExpenseAggregates.dayOfMonthIndex(month + 1) - first;
+        return first + (dom == LAST_DAY ? length : Math.min(dom, length)) - 1;
+    }
+
+    /** Monday-based week number; 1970-01-01 was a Thursday. */
+    private static int week(int epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    /** 0 for Monday through 6 for Sunday. */
+    private static int weekday(int epochDay) {
+        return Math.floorMod(epochDay + 3, 7);
+    }
+
+    private static int clampDay(long day) {
+        return day >= NEVER ? NEVER : (int) day;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
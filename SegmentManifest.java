@@ -0,0 +1,211 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Index of the per-year {@link LedgerFile} segments of a flat-file ledger.
+ *
+ * <pre>
+ * header   magic "EXPM", version, nextId, generation, segmentCount
+ * segment  year, file name, rows, minId, maxId, heapBytes,
+ *          categoryCount x name, currencyCount x code,
+ *          bucketCount x (epochDay, category, currency, rows, amount)
+ * </pre>
+ *
+ * Each segment carries its totals bucketed by day, category and currency,
+ * which is everything {@link ExpenseAggregates} keeps once the amounts are
+ * converted into the display currency. A year can therefore count towards
+ * totals, budgets and the trend chart while its rows stay on disk.
+ * Segment files are never rewritten in place: a compaction writes new files
+ * under the next generation, then swaps the manifest atomically.
+ */
+class SegmentManifest {
+    private static final int MAGIC = 0x4558504D; // "EXPM"
+    static final int VERSION = 2;
+
+    /** One year of the ledger: where its rows are and what they add up to. */
+    static final class Entry {
+        final int year;
+        final String file;
+        final int rows;
+        final long minId;
+        final long maxId;
+        final long heapBytes;
+        final String[] categories;
+        final String[] currencies;
+        // Parallel bucket columns, one slot per (day, category, currency) with any rows
+        final int[] days;
+        final short[] categoryIds;
+        final short[] currencyIds;
+        final int[] counts;
+        final long[] amounts;
+
+        Entry(int year, String file, int rows, long minId, long maxId, long heapBytes, String[] categories,
+              String[] currencies, int[] days, short[] categoryIds, short[] currencyIds, int[] counts, long[] amounts) {
+            this.year = year;
+            this.file = file;
+            this.rows = rows;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.heapBytes = heapBytes;
+            this.categories = categories;
+            this.currencies = currencies;
+            this.days = days;
+            this.categoryIds = categoryIds;
+            this.currencyIds = currencyIds;
+            this.counts = counts;
+            this.amounts = amounts;
+        }
+
+        int bucketCount() {
+            return days.length;
+        }
+
+        boolean mayContain(long id) {
+            return id >= minId && id <= maxId;
+        }
+
+        /** Summarises {@code n} rows of {@code store}, as written to {@code file}. */
+        static Entry of(int year, String file, ExpenseStore store, int[] rows, int n) {
+            long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE, heapBytes = 0;
+            // Key is the epoch day in the high 32 bits, then the store's currency and category ids
+            Map<Long, long[]> buckets = new TreeMap<>();
+            for (int j = 0; j < n; j++) {
+                int row = rows[j];
+                long id = store.idAt(row);
+                minId = Math.min(minId, id);
+                maxId = Math.max(maxId, id);
+                heapBytes += store.descriptionLengthAt(row);
+                long key = ((long) store.epochDayAt(row) << 32) | (long) (store.currencyIdAt(row) & 0xFFFF) << 16
+                        | (store.categoryIdAt(row) & 0xFFFF);
+                long[] bucket = buckets.computeIfAbsent(key, k -> new long[2]);
+                bucket[0]++;
+                bucket[1] += store.amountAt(row);
+            }
+
+            Map<Integer, Short> local = new HashMap<>();
+            Map<Integer, Short> localCurrencies = new HashMap<>();
+            List<String> categories = new ArrayList<>();
+            List<String> currencies = new ArrayList<>();
+            int count = buckets.size();
+            int[] days = new int[count];
+            short[] categoryIds = new short[count];
+            short[] currencyIds = new short[count];
+            int[] counts = new int[count];
+            long[] amounts = new long[count];
+            int b = 0;
+            for (Map.Entry<Long, long[]> bucket : buckets.entrySet()) {
+                int storeCategory = (int) (bucket.getKey() & 0xFFFF);
+                Short k = local.get(storeCategory);
+                if (k == null) {
+                    k = (short) categories.size();
+                    local.put(storeCategory, k);
+                    categories.add(store.categoryName(storeCategory));
+                }
+                int storeCurrency = (int) (bucket.getKey() >>> 16 & 0xFFFF);
+                Short c = localCurrencies.get(storeCurrency);
+                if (c == null) {
+                    c = (short) currencies.size();
+                    localCurrencies.put(storeCurrency, c);
+                    currencies.add(store.currencyName(storeCurrency));
+                }
+                days[b] = (int) (bucket.getKey() >> 32);
+                categoryIds[b] = k;
+                currencyIds[b] = c;
+                counts[b] = (int) bucket.getValue()[0];
+                amounts[b] = bucket.getValue()[1];
+                b++;
+            }
+            return new Entry(year, file, n, minId, maxId, heapBytes, categories.toArray(new String[0]),
+                    currencies.toArray(new String[0]), days, categoryIds, currencyIds, counts, amounts);
+        }
+    }
+
+    final long nextId;
+    final long generation;
+    final List<Entry> entries;
+
+    SegmentManifest(long nextId, long generation, List<Entry> entries) {
+        this.nextId = nextId;
+        this.generation = generation;
+        this.entries = entries;
+    }
+
+    static SegmentManifest read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a segment manifest: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported manifest version " + version);
+            long nextId = in.readLong();
+            long generation = in.readLong();
+            int segmentCount = in.readInt();
+            List<Entry> entries = new ArrayList<>(segmentCount);
+            for (int s = 0; s < segmentCount; s++) {
+                int year = in.readInt();
+                String name = in.readUTF();
+                int rows = in.readInt();
+                long minId = in.readLong();
+                long maxId = in.readLong();
+                long heapBytes = in.readLong();
+                String[] categories = new String[in.readUnsignedShort()];
+                for (int k = 0; k < categories.length; k++) categories[k] = in.readUTF();
+                String[] currencies = new String[in.readUnsignedShort()];
+                for (int k = 0; k < currencies.length; k++) currencies[k] = in.readUTF();
+                int bucketCount = in.readInt();
+                if (bucketCount < 0) throw new IOException("Corrupt manifest: " + file);
+                int[] days = new int[bucketCount];
+                short[] categoryIds = new short[bucketCount];
+                short[] currencyIds = new short[bucketCount];
+                int[] counts = new int[bucketCount];
+                long[] amounts = new long[bucketCount];
+                for (int b = 0; b < bucketCount; b++) {
+                    days[b] = in.readInt();
+                    categoryIds[b] = in.readShort();
+                    currencyIds[b] = in.readShort();
+                    counts[b] = in.readInt();
+                    amounts[b] = in.readLong();
+                    if (categoryIds[b] < 0 || categoryIds[b] >= categories.length
+                            || currencyIds[b] < 0 || currencyIds[b] >= currencies.length) {
+                        throw new IOException("Corrupt manifest: " + file);
+                    }
+                }
+                entries.add(new Entry(year, name, rows, minId, maxId, heapBytes, categories, currencies,
+                        days, categoryIds, currencyIds, counts, amounts));
+            }
+            return new SegmentManifest(nextId, generation, entries);
+        }
+    }
+
+    /** Replaces {@code file} atomically, so readers see the old manifest or the new one. */
+    void write(Path file) throws IOException {
+        AutoSaver.replace(file, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextId);
+            out.writeLong(generation);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeInt(entry.year);
+                out.writeUTF(entry.file);
+                out.writeInt(entry.rows);
+                out.writeLong(entry.minId);
+                out.writeLong(entry.maxId);
+                out.writeLong(entry.heapBytes);
+                out.writeShort(entry.categories.length);
+                for (String category : entry.categories) out.writeUTF(category);
+                out.writeShort(entry.currencies.length);
+                for (String currency : entry.currencies) out.writeUTF(currency);
+                out.writeInt(entry.bucketCount());
+                for (int b = 0; b < entry.bucketCount(); b++) {
+                    out.writeInt(entry.days[b]);
+                    out.writeShort(entry.categoryIds[b]);
+                    out.writeShort(entry.currencyIds[b]);
+                    out.writeInt(entry.counts[b]);
+                    out.writeLong(entry.amounts[b]);
+                }
+            }
+            out.flush();
+        });
+    }
+}
@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.sql.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Stores the ledger in an embedded, file-based database over JDBC, chosen
+ * with {@code --storage=sql}. H2 is the default; any driver on the class
+ * path whose database takes this plain SQL works (e.g. SQLite).
+ *
+ * The table has indexes on date and category. Loading reads it in keyset
+ * pages ordered by id and reports each page, so the table fills while later
+ * pages are still being read. Writes are queued to one background thread
+ * in call order. Bulk adds go out as batched prepared inserts in a single
+ * transaction. A failed write is reported by the next call.
+ *
+ * Tables created before currencies existed gain a currency column, with
+ * every existing row in rupees, the first time they are opened.
+ *
+ * Totals are not computed with SQL: the in-memory store keeps them
+ * incrementally, which is cheaper than a GROUP BY. The database only
+ * persists the rows.
+ */
+class SqlStorage implements StorageBackend {
+    static final String DEFAULT_URL = "jdbc:h2:./expenses-db";
+    private static final int PAGE_SIZE = 10_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final String CURRENCY_COLUMN = "VARCHAR(3) DEFAULT '" + FxRates.BASE + "' NOT NULL";
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS expenses ("
+                + "id BIGINT PRIMARY KEY, "
+                + "description VARCHAR(" + Expense.MAX_DESCRIPTION_LENGTH + ") NOT NULL, "
+                + "amount_minor BIGINT NOT NULL, "
+                + "category VARCHAR(" + Expense.MAX_CATEGORY_LENGTH + ") NOT NULL, "
+                + "epoch_day INTEGER NOT NULL, "
+                + "currency " + CURRENCY_COLUMN + ")",
+        "CREATE INDEX IF NOT EXISTS expenses_day ON expenses (epoch_day)",
+        "CREATE INDEX IF NOT EXISTS expenses_category ON expenses (category)",
+    };
+    private static final String SELECT_PAGE = "SELECT id, description, amount_minor, category, epoch_day, currency "
+            + "FROM expenses WHERE id > ? ORDER BY id LIMIT " + PAGE_SIZE;
+    private static final String INSERT = "INSERT INTO expenses (id, description, amount_minor, category, epoch_day, currency) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE expenses SET description = ?, amount_minor = ?, category = ?, epoch_day = ?, "
+            + "currency = ? WHERE id = ?";
+    private static final String DELETE = "DELETE FROM expenses WHERE id = ?";
+
+    private final String url;
+    private final ExecutorService writer;
+    // Opened by the loading thread, then used only from the writer thread
+    private Connection connection;
+    private PreparedStatement insert, update, delete;
+    private long nextId = 1;
+    private volatile IOException failure;
+
+    SqlStorage(String url) {
+        this.url = url;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "expense-sql");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Throws if no JDBC driver on the class path accepts {@code url}. */
+    static void checkDriver(String url) throws SQLException {
+        DriverManager.getDriver(url);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        try (Statement st = connect().createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM expenses")) {
+            return !rs.next() || rs.getLong(1) == 0;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void open(ExpenseStore state, IntConsumer progress) throws IOException {
+        PerfEvents.Load event = new PerfEvents.Load("startup");
+        int rowsBefore = state.liveCount();
+        try {
+            Connection db = connect();
+            long lastId = 0;
+            try (PreparedStatement page = db.prepareStatement(SELECT_PAGE)) {
+                page.setFetchSize(PAGE_SIZE);
+                while (true) {
+                    page.setLong(1, lastId);
+                    int rows = 0;
+                    try (ResultSet rs = page.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getLong(1);
+                            state.put(lastId, rs.getString(2), rs.getLong(3), rs.getString(6), rs.getString(4), rs.getInt(5));
+                            rows++;
+                        }
+                    }
+                    if (rows == 0) break;
+                    progress.accept(state.size());
+                    if (rows < PAGE_SIZE) break;
+                }
+            }
+            db.commit();
+            // state may already hold rows migrated from flat files
+            for (int row = 0; row < state.size(); row++) nextId = Math.max(nextId, state.idAt(row) + 1);
+            insert = db.prepareStatement(INSERT);
+            update = db.prepareStatement(UPDATE);
+            delete = db.prepareStatement(DELETE);
+            event.rows = state.liveCount() - rowsBefore;
+            event.finish();
+        } catch (SQLException e) {
+            throw new IOException("Failed to load " + url, e);
+        }
+    }
+
+    @Override
+    public synchronized long allocateId() {
+        return nextId++;
+    }
+
+    @Override
+    public synchronized long allocateIds(int count) {
+        long first = nextId;
+        nextId += count;
+        return first;
+    }
+
+    @Override
+    public void appendAdd(Expense exp) throws IOException {
+        submit(() -> {
+            bindInsert(exp.getId(), exp.getDescription(), exp.getAmount().minor(), exp.getCategory(),
+                    (int) exp.getDate().toEpochDay(), exp.getCurrency());
+            insert.executeUpdate();
+        });
+    }
+
+    @Override
+    public void appendEdit(Expense before, Expense after) throws IOException {
+        submit(() -> {
+            update.setString(1, after.getDescription());
+            update.setLong(2, after.getAmount().minor());
+            update.setString(3, after.getCategory());
+            update.setInt(4, (int) after.getDate().toEpochDay());
+            update.setString(5, after.getCurrency());
+            update.setLong(6, after.getId());
+            update.executeUpdate();
+        });
+    }
+
+    @Override
+    public void appendDelete(Expense exp) throws IOException {
+        submit(() -> {
+            delete.setLong(1, exp.getId());
+            delete.executeUpdate();
+        });
+    }
+
+    /** Inserts the rows from a snapshot taken now, so the caller may keep writing to {@code state}. */
+    @Override
+    public void appendAdds(ExpenseStore state, int from, int to) throws IOException {
+        ExpenseStore rows = state.snapshot();
+        submit(() -> {
+            int batched = 0;
+            for (int row = from; row < to; row++) {
+                if (rows.isDeleted(row)) continue;
+                bindInsert(rows.idAt(row), rows.descriptionAt(row), rows.amountAt(row), rows.categoryAt(row), rows.epochDayAt(row),
+                        rows.currencyAt(row));
+                insert.addBatch();
+                if (++batched % BATCH_SIZE == 0) insert.executeBatch();
+            }
+            if (batched % BATCH_SIZE != 0) insert.executeBatch();
+        });
+    }
+
+    /** The whole table is read by {@link #open}; nothing is left on disk. */
+    @Override
+    public void attach(ExpenseStore state) {
+    }
+
+    @Override
+    public boolean ensureLoaded(ExpenseStore state, int fromDay, int toDay) {
+        return false;
+    }
+
+    @Override
+    public boolean ensureDaysLoaded(ExpenseStore state, int... epochDays) {
+        return false;
+    }
+
+    @Override
+    public void prefetch(int fromDay, int toDay) {
+    }
+
+    @Override
+    public boolean loadOlder(ExpenseStore state) {
+        return false;
+    }
+
+    /** The database manages its own files; there is nothing to compact. */
+    @Override
+    public boolean needsCompaction() {
+        return false;
+    }
+
+    @Override
+    public void maybeCompact(Supplier<ExpenseStore> stateSupplier) {
+    }
+
+    @Override
+    public void compactNow(ExpenseStore state) {
+    }
+
+    @Override
+    public void setFailureListener(FailureListener listener) {
+        // Nothing runs unobserved: a failed write is rethrown by the next write or by close
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (connection == null) return;
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException("Failed to close " + url, e);
+            } finally {
+                connection = null;
+            }
+        }
+        IOException failed = failure;
+        failure = null;
+        if (failed != null) throw failed;
+    }
+
+    private interface SqlWrite {
+        void run() throws SQLException;
+    }
+
+    /** Queues one write as its own transaction; rethrows the failure of an earlier one. */
+    private synchronized void submit(SqlWrite write) throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            failure = null;
+            throw failed;
+        }
+        writer.execute(() -> {
+            try {
+                write.run();
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ignored) {
+                    // The original failure is the one worth reporting
+                }
+                failure = new IOException("Failed to write to " + url, e);
+            }
+        });
+    }
+
+    private void bindInsert(long id, String description, long amountMinor, String category, int epochDay,
+                            String currency) throws SQLException {
+        insert.setLong(1, id);
+        insert.setString(2, description);
+        insert.setLong(3, amountMinor);
+        insert.setString(4, category);
+        insert.setInt(5, epochDay);
+        insert.setString(6, currency);
+    }
+
+    private Connection connect() throws SQLException {
+        if (connection != null) return connection;
+        Connection db = DriverManager.getConnection(url);
+        try (Statement st = db.createStatement()) {
+            for (String ddl : SCHEMA) st.execute(ddl);
+            try {
+                st.executeQuery("SELECT currency FROM expenses WHERE 1 = 0").close();
+            } catch (SQLException e) {
+                // Table from before currencies: every existing row is in rupees
+                st.execute("ALTER TABLE expenses ADD COLUMN currency " + CURRENCY_COLUMN);
+            }
+        }
+        db.setAutoCommit(false);
+        db.commit();
+        connection = db;
+        return db;
+    }
+}
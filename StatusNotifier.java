@@ -0,0 +1,185 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Drives the status bar from a single scheduler.
+ *
+ * Messages go into a small bounded queue ordered by priority. A message
+ * whose text is already queued or showing is coalesced into it with a
+ * repeat count rather than queued again. When the queue is full, the
+ * oldest message of the lowest priority is dropped. One Swing timer
+ * advances the queue and resets the label to the idle text. Posting from
+ * any thread schedules at most one pending EDT task. The EDT cost is
+ * therefore bounded by the queue size, not by how many messages are posted.
+ */
+class StatusNotifier {
+    enum Priority { LOW, NORMAL, HIGH }
+
+    static final int CAPACITY = 8;
+    private static final int DISPLAY_MS = 3000;
+    // A shown message yields to a queued one after this long
+    private static final int MIN_DISPLAY_MS = 750;
+
+    private static final class Message {
+        final String text;
+        final Color color;
+        final Priority priority;
+        int repeats = 1;
+
+        Message(String text, Color color, Priority priority) {
+            this.text = text;
+            this.color = color;
+            this.priority = priority;
+        }
+
+        String label() {
+            return repeats == 1 ? text : text + " (x" + repeats + ")";
+        }
+    }
+
+    private final JLabel label;
+    private final Color idleColor;
+    private final Timer timer;
+
+    // Guarded by this; written from any thread, drained on the EDT
+    private final Message[] queue = new Message[CAPACITY];
+    private int queued;
+    private boolean pumpScheduled;
+    private String progress;
+
+    // EDT only
+    private Message showing;
+    private long shownAt;
+    private String shownProgress;
+
+    StatusNotifier(JLabel label, Color idleColor) {
+        this.label = label;
+        this.idleColor = idleColor;
+        this.timer = new Timer(DISPLAY_MS, e -> advance());
+        timer.setRepeats(false);
+    }
+
+    /** Queues a message; safe to call from any thread. */
+    void post(String text, Color color, Priority priority) {
+        synchronized (this) {
+            if (!coalesce(text)) {
+                if (queued == CAPACITY && !evictFor(priority)) return;
+                // Insert after every queued message of the same or higher priority
+                int pos = queued;
+                while (pos > 0 && queue[pos - 1].priority.compareTo(priority) < 0) pos--;
+                System.arraycopy(queue, pos, queue, pos + 1, queued - pos);
+                queue[pos] = new Message(text, color, priority);
+                queued++;
+            }
+            if (pumpScheduled) return;
+            pumpScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::pump);
+    }
+
+    /**
+     * Sets the text shown while no message is on screen, e.g. load or report
+     * progress. Repeated calls overwrite each other; null clears it.
+     */
+    void progress(String text) {
+        synchronized (this) {
+            progress = text;
+            if (pumpScheduled) return;
+            pumpScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::pump);
+    }
+
+    private boolean coalesce(String text) {
+        for (int i = 0; i < queued; i++) {
+            if (queue[i].text.equals(text)) {
+                queue[i].repeats++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Makes room for a message of {@code priority}; false if it should be dropped instead. */
+    private boolean evictFor(Priority priority) {
+        // The tail holds the lowest priority; its oldest entry is the first of that run
+        Priority lowest = queue[queued - 1].priority;
+        if (lowest.compareTo(priority) > 0) return false;
+        int victim = queued - 1;
+        while (victim > 0 && queue[victim - 1].priority == lowest) victim--;
+        System.arraycopy(queue, victim + 1, queue, victim, queued - victim - 1);
+        queue[--queued] = null;
+        return true;
+    }
+
+    private void pump() {
+        String pendingProgress;
+        boolean preempt;
+        synchronized (this) {
+            pumpScheduled = false;
+            pendingProgress = progress;
+            if (showing != null && queued > 0 && showing.text.equals(queue[0].text)) {
+                // Same message posted again while on screen: bump it in place
+                showing.repeats += queue[0].repeats;
+                removeHead();
+                shownAt = System.currentTimeMillis();
+                label.setText(showing.label());
+                timer.setInitialDelay(queued > 0 ? MIN_DISPLAY_MS : DISPLAY_MS);
+                timer.restart();
+            }
+            preempt = queued > 0 && (showing == null || queue[0].priority.compareTo(showing.priority) > 0);
+        }
+        if (preempt) {
+            advance();
+        } else if (showing == null) {
+            showIdle(pendingProgress);
+        } else if (queued() > 0) {
+            // Let the current message finish its minimum time, then move on
+            long remaining = MIN_DISPLAY_MS - (System.currentTimeMillis() - shownAt);
+            if (remaining <= 0) {
+                advance();
+            } else {
+                timer.setInitialDelay((int) remaining);
+                timer.restart();
+            }
+        }
+    }
+
+    private void advance() {
+        Message next;
+        String idleText;
+        synchronized (this) {
+            next = queued > 0 ? queue[0] : null;
+            if (next != null) removeHead();
+            idleText = progress;
+        }
+        showing = next;
+        if (next == null) {
+            showIdle(idleText);
+            return;
+        }
+        label.setText(next.label());
+        label.setForeground(next.color);
+        shownProgress = null;
+        shownAt = System.currentTimeMillis();
+        timer.setInitialDelay(queued() > 0 ? MIN_DISPLAY_MS : DISPLAY_MS);
+        timer.restart();
+    }
+
+    private void showIdle(String progressText) {
+        String text = progressText != null ? progressText : "Ready";
+        if (text.equals(shownProgress)) return;
+        shownProgress = text;
+        label.setText(text);
+        label.setForeground(idleColor);
+    }
+
+    private synchronized int queued() {
+        return queued;
+    }
+
+    private void removeHead() {
+        System.arraycopy(queue, 1, queue, 0, queued - 1);
+        queue[--queued] = null;
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Where the ledger is persisted. The in-memory {@link ExpenseStore} is always
+ * what the UI reads; a backend loads it at startup and records every change
+ * after that.
+ *
+ * {@link ExpenseJournal} (flat files, the default) and {@link SqlStorage} (an
+ * embedded database over JDBC) implement it. Writes are called on the thread
+ * that owns the store, or on an import's worker thread before its rows reach
+ * the store, so implementations serialize them.
+ *
+ * A backend may leave older rows on disk after {@link #open}. Callers then
+ * make sure a date range is in memory with {@link #ensureLoaded} before
+ * reading all of it or writing rows dated in it.
+ */
+interface StorageBackend {
+    /** Told about background work that failed with no caller waiting on it, such as a sync or compaction. */
+    interface FailureListener {
+        void failed(String action, IOException failure);
+    }
+
+    /** True if nothing has been stored yet, e.g. before migrating expenses.csv. */
+    boolean isEmpty();
+
+    /**
+     * Loads the stored ledger into {@code state} and prepares for writes. A
+     * backend that reads in pages reports the row count of {@code state} to
+     * {@code progress} after each one, so a caller can show rows before the
+     * load finishes.
+     */
+    void open(ExpenseStore state, IntConsumer progress) throws IOException;
+
+    long allocateId();
+
+    /** Reserves {@code count} consecutive ids and returns the first. */
+    long allocateIds(int count);
+
+    void appendAdd(Expense exp) throws IOException;
+
+    /** Records that the row {@code before} now reads {@code after}; both share an id. */
+    void appendEdit(Expense before, Expense after) throws IOException;
+
+    void appendDelete(Expense exp) throws IOException;
+
+    /** Records rows {@code [from, to)} of {@code state} as added, in one batch. */
+    void appendAdds(ExpenseStore state, int from, int to) throws IOException;
+
+    /**
+     * Called once, after the rows from {@link #open} are in {@code state}, the
+     * store the UI reads: adds the totals of rows left on disk, so totals
+     * cover the whole ledger. Later loads go into the same store.
+     */
+    void attach(ExpenseStore state);
+
+    /**
+     * Loads any rows dated {@code [fromDay, toDay]} still on disk into
+     * {@code state}, and may drop other, unchanged rows to stay within a
+     * memory budget. True if rows were added.
+     */
+    boolean ensureLoaded(ExpenseStore state, int fromDay, int toDay) throws IOException;
+
+    /**
+     * As {@link #ensureLoaded} for the single days {@code epochDays}, loaded
+     * together: rows about to be written on one of them are not dropped to
+     * make room for another, e.g. for an edit that moves a row across years.
+     */
+    boolean ensureDaysLoaded(ExpenseStore state, int... epochDays) throws IOException;
+
+    /**
+     * Reads rows dated {@code [fromDay, toDay]} still on disk ahead of an
+     * {@link #ensureLoaded} over them, without touching any store, so the
+     * slow part can run off the store's thread. May be called from any thread.
+     */
+    void prefetch(int fromDay, int toDay) throws IOException;
+
+    /** Loads the next older period still on disk, e.g. as the table scrolls to its end; false if there is none. */
+    boolean loadOlder(ExpenseStore state) throws IOException;
+
+    /** True when storage found leftover work at startup that a {@link #compactNow} would settle. */
+    boolean needsCompaction();
+
+    /** Rewrites storage from a snapshot if it has grown enough to be worth it. */
+    void maybeCompact(Supplier<ExpenseStore> stateSupplier);
+
+    void compactNow(ExpenseStore state) throws IOException;
+
+    /** Where background failures are reported from now on; until then they go to stderr. */
+    void setFailureListener(FailureListener listener);
+
+    /** Flushes pending writes and releases files and threads; throws if a write could not be completed. */
+    void close() throws IOException;
+}
@@ -0,0 +1,259 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws spending over time as a line or bar chart into a cached image.
+ *
+ * The visible range is a span of days that the dashboard pans and zooms.
+ * Each repaint picks the finest {@link ExpenseAggregates.Resolution} that
+ * leaves at least {@link #MIN_BUCKET_PX} pixels per bucket and reads one
+ * pre-aggregated total per bucket. A frame therefore costs at most one read
+ * per few pixels of width, whether it shows a fortnight of days or decades
+ * of years. As with the pie chart, the image is keyed on everything that
+ * affects it, so repaints that change nothing just blit it.
+ *
+ * Until the user pans or zooms, the range follows the data and widens as
+ * rows load.
+ */
+class TrendChartRenderer {
+    enum Style { LINE, BAR }
+
+    static final int MIN_BUCKET_PX = 4;
+    private static final int MIN_DAYS = 14;
+    private static final double MAX_DAYS = 365.25 * 200;
+    private static final int LEFT = 56, RIGHT = 10, TOP = 22, BOTTOM = 20;
+    private static final Color TEXT_COLOR = new Color(50, 50, 50);
+    private static final Color GRID_COLOR = new Color(225, 225, 230);
+    private static final Color SERIES_COLOR = new Color(52, 152, 219);
+    private static final Font LABEL_FONT = new Font("Segoe UI", Font.PLAIN, 11);
+    private static final Font EMPTY_FONT = new Font("Segoe UI", Font.BOLD, 14);
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private Style style = Style.LINE;
+    private boolean following = true;
+    private double fromDay;
+    private double days = MIN_DAYS;
+    private long[] totals = new long[64];
+
+    private BufferedImage cache;
+    private int cachedWidth = -1;
+    private int cachedHeight = -1;
+    private double cachedScale;
+    private long cachedVersion = -1;
+    private double cachedFrom, cachedDays;
+    private Style cachedStyle;
+
+    void setStyle(Style style) {
+        this.style = style;
+    }
+
+    Style style() {
+        return style;
+    }
+
+    /** Zooms by {@code factor} (below 1 zooms in) keeping the day under {@code x} in place. */
+    void zoom(double factor, int x, int width) {
+        following = false;
+        double anchor = Math.max(0, Math.min(1, (x - LEFT) / (double) plotWidth(width)));
+        double anchorDay = fromDay + anchor * days;
+        days = Math.max(MIN_DAYS, Math.min(MAX_DAYS, days * factor));
+        fromDay = anchorDay - anchor * days;
+    }
+
+    /** Shifts the range by {@code dx} pixels of a chart {@code width} wide. */
+    void pan(int dx, int width) {
+        following = false;
+        fromDay -= dx * days / plotWidth(width);
+    }
+
+    /** Goes back to showing all the data, and to following it as it grows. */
+    void fitAll() {
+        following = true;
+    }
+
+    void paint(Graphics g, int width, int height, ExpenseAggregates aggregates) {
+        if (width <= 0 || height <= 0) return;
+        PerfEvents.ChartPaint event = new PerfEvents.ChartPaint("trend", width, height);
+        if (following) fit(aggregates);
+        Graphics2D g2d = (Graphics2D) g;
+        AffineTransform tx = g2d.getTransform();
+        double scale = Math.max(tx.getScaleX(), 1.0);
+        long version = aggregates.version();
+
+        if (cache == null || width != cachedWidth || height != cachedHeight || scale != cachedScale
+                || version != cachedVersion || fromDay != cachedFrom || days != cachedDays || style != cachedStyle) {
+            render(g2d.getDeviceConfiguration(), width, height, scale, aggregates);
+            event.rendered = true;
+            cachedWidth = width;
+            cachedHeight = height;
+            cachedScale = scale;
+            cachedVersion = version;
+            cachedFrom = fromDay;
+            cachedDays = days;
+            cachedStyle = style;
+        }
+        g2d.drawImage(cache, 0, 0, width, height, null);
+        event.bytes = 4L * cache.getWidth() * cache.getHeight();
+        event.finish();
+    }
+
+    /** Finest resolution that gives each bucket at least {@link #MIN_BUCKET_PX} pixels. */
+    static ExpenseAggregates.Resolution resolutionFor(double days, int plotWidth) {
+        for (ExpenseAggregates.Resolution resolution : ExpenseAggregates.Resolution.values()) {
+            if (days / resolution.days <= plotWidth / (double) MIN_BUCKET_PX) return resolution;
+        }
+        return ExpenseAggregates.Resolution.YEAR;
+    }
+
+    private void fit(ExpenseAggregates aggregates) {
+        if (aggregates.rowCount() == 0) return;
+        int first = aggregates.firstDay();
+        int span = aggregates.lastDay() - first + 1;
+        days = Math.max(MIN_DAYS, Math.min(MAX_DAYS, span));
+        fromDay = first + span - days;
+    }
+
+    private static int plotWidth(int width) {
+        return Math.max(width - LEFT - RIGHT, 1);
+    }
+
+    private void render(GraphicsConfiguration config, int width, int height, double scale, ExpenseAggregates aggregates) {
+        int pixelWidth = (int) Math.ceil(width * scale);
+        int pixelHeight = (int) Math.ceil(height * scale);
+        if (cache == null || cache.getWidth() != pixelWidth || cache.getHeight() != pixelHeight) {
+            cache = config != null
+                    ? config.createCompatibleImage(pixelWidth, pixelHeight, Transparency.TRANSLUCENT)
+                    : new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D g2d = cache.createGraphics();
+        try {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, pixelWidth, pixelHeight);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.scale(scale, scale);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            drawChart(g2d, width, height, aggregates);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    private void drawChart(Graphics2D g2d, int width, int height, ExpenseAggregates aggregates) {
+        if (aggregates.rowCount() == 0) {
+            g2d.setColor(TEXT_COLOR);
+            g2d.setFont(EMPTY_FONT);
+            String noDataMsg = "No expense data";
+            FontMetrics fm = g2d.getFontMetrics();
+            g2d.drawString(noDataMsg, (width - fm.stringWidth(noDataMsg)) / 2, height / 2);
+            return;
+        }
+
+        int plotWidth = plotWidth(width);
+        int plotHeight = Math.max(height - TOP - BOTTOM, 1);
+        ExpenseAggregates.Resolution resolution = resolutionFor(days, plotWidth);
+        int firstBucket = resolution.bucketOf((int) Math.floor(fromDay));
+        int lastBucket = resolution.bucketOf((int) Math.ceil(fromDay + days));
+        int count = lastBucket - firstBucket + 1;
+        if (count > totals.length) totals = new long[Math.max(count, totals.length * 2)];
+
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            totals[i] = aggregates.bucketTotal(resolution, firstBucket + i);
+            max = Math.max(max, totals[i]);
+        }
+        long top = niceCeiling(max);
+
+        // Grid lines and amount labels
+        g2d.setFont(LABEL_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        for (int step = 0; step <= 4; step++) {
+            int y = TOP + plotHeight - plotHeight * step / 4;
+            g2d.setColor(GRID_COLOR);
+            g2d.drawLine(LEFT, y, LEFT + plotWidth, y);
+            String label = axisLabel(top * step / 4);
+            g2d.setColor(TEXT_COLOR);
+            g2d.drawString(label, LEFT - 6 - fm.stringWidth(label), y + fm.getAscent() / 2 - 1);
+        }
+        String resolutionLabel = resolution.name().charAt(0) + resolution.name().substring(1).toLowerCase() + " totals";
+        g2d.drawString(resolutionLabel, LEFT + plotWidth - fm.stringWidth(resolutionLabel), TOP - 8);
+
+        Shape clip = g2d.getClip();
+        g2d.clipRect(LEFT, 0, plotWidth + 1, height);
+        g2d.setColor(SERIES_COLOR);
+        Path2D.Double line = new Path2D.Double();
+        for (int i = 0; i < count; i++) {
+            double x0 = dayToX(resolution.startDay(firstBucket + i), plotWidth);
+            double x1 = dayToX(resolution.startDay(firstBucket + i + 1), plotWidth);
+            double y = TOP + plotHeight - (double) plotHeight * Math.max(totals[i], 0) / top;
+            if (style == Style.BAR) {
+                double gap = x1 - x0 > 4 ? 1 : 0;
+                g2d.fill(new Rectangle.Double(x0 + gap, y, Math.max(x1 - x0 - 2 * gap, 1), TOP + plotHeight - y));
+            } else if (i == 0) {
+                line.moveTo((x0 + x1) / 2, y);
+            } else {
+                line.lineTo((x0 + x1) / 2, y);
+            }
+        }
+        if (style == Style.LINE) {
+            g2d.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2d.draw(line);
+        }
+
+        // Bucket labels, thinned so they never overlap
+        g2d.setColor(TEXT_COLOR);
+        double bucketWidth = plotWidth * resolution.days / days;
+        int labelWidth = fm.stringWidth(bucketLabel(resolution, firstBucket)) + 12;
+        int every = Math.max(1, (int) Math.ceil(labelWidth / bucketWidth));
+        for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            if (Math.floorMod(bucket, every) != 0) continue;
+            double x = dayToX(resolution.startDay(bucket), plotWidth);
+            if (x < LEFT) continue;
+            g2d.drawString(bucketLabel(resolution, bucket), (float) x + 2, TOP + plotHeight + fm.getAscent() + 4);
+        }
+        g2d.setClip(clip);
+    }
+
+    private double dayToX(int epochDay, int plotWidth) {
+        return LEFT + (epochDay - fromDay) * plotWidth / days;
+    }
+
+    private static String bucketLabel(ExpenseAggregates.Resolution resolution, int bucket) {
+        switch (resolution) {
+            case MONTH: return MONTHS[Math.floorMod(bucket, 12)] + " " + Math.floorDiv(bucket, 12);
+            case YEAR: return Integer.toString(bucket);
+            default:
+                int month = ExpenseAggregates.monthIndexOfDay(resolution.startDay(bucket));
+                int day = resolution.startDay(bucket) - ExpenseAggregates.dayOfMonthIndex(month) + 1;
+                return day + " " + MONTHS[Math.floorMod(month, 12)];
+        }
+    }
+
+    /** "2.5M", "125k", "80" or "0.50": short enough for the axis at any scale. */
+    private static String axisLabel(long minor) {
+        long rupees = minor / 100;
+        if (rupees >= 1_000_000) return trim(rupees / 1_000_000.0) + "M";
+        if (rupees >= 1_000) return trim(rupees / 1_000.0) + "k";
+        return minor % 100 == 0 ? Long.toString(rupees) : Money.format(minor);
+    }
+
+    private static String trim(double value) {
+        long tenths = Math.round(value * 10);
+        return tenths % 10 == 0 ? Long.toString(tenths / 10) : (tenths / 10) + "." + (tenths % 10);
+    }
+
+    /** Smallest 1, 2 or 5 times a power of ten (in rupees) at or above {@code minor}. */
+    private static long niceCeiling(long minor) {
+        long step = 100;
+        while (true) {
+            if (step >= minor) return step;
+            if (2 * step >= minor) return 2 * step;
+            if (5 * step >= minor) return 5 * step;
+            if (step > Long.MAX_VALUE / 100) return minor;
+            step *= 10;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExpenseImporterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void amountAfterDottedCurrencyPrefix() throws IOException {
+        assertEquals(4000, amountOf("Rs.40"));
+    }
+
+    @Test
+    void amountWithPrefixAndThousandsSeparator() throws IOException {
+        assertEquals(123450, amountOf("\"Rs.1,234.50\""));
+    }
+
+    @Test
+    void amountAfterRupeeSign() throws IOException {
+        assertEquals(4000, amountOf("₹ 40"));
+    }
+
+    @Test
+    void plainAmountWithThousandsSeparator() throws IOException {
+        assertEquals(123450, amountOf("\"1,234.50\""));
+    }
+
+    @Test
+    void leadingDotIsAFraction() throws IOException {
+        assertEquals(50, amountOf(".5"));
+    }
+
+    @Test
+    void overlongCategoryIsRejected() throws IOException {
+        Path file = dir.resolve("import.csv");
+        String category = "x".repeat(Expense.MAX_CATEGORY_LENGTH + 1);
+        Files.write(file, ("Lunch,40," + category + ",2024-03-01\nTea,10,Food,2024-03-01\n").getBytes(StandardCharsets.UTF_8));
+        ExpenseImporter.Batch batch = ExpenseImporter.parse(file, ImportSchema.legacy(), ForkJoinPool.commonPool());
+        assertEquals(1, batch.size());
+        assertEquals(1, batch.rejected());
+    }
+
+    /** Imports one legacy-layout row and returns its amount in minor units. */
+    private long amountOf(String amount) throws IOException {
+        Path file = dir.resolve("import.csv");
+        Files.write(file, ("Lunch," + amount + ",Food,2024-03-01\n").getBytes(StandardCharsets.UTF_8));
+        ExpenseImporter.Batch batch = ExpenseImporter.parse(file, ImportSchema.legacy(), ForkJoinPool.commonPool());
+        assertEquals(1, batch.size(), "rows parsed from " + amount);
+        for (ExpenseImporter.Chunk chunk : batch.chunks) {
+            if (chunk.size > 0) return chunk.amounts[0];
+        }
+        throw new AssertionError("no row");
+    }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExpenseJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysAddsEditsAndDeletes() throws IOException {
+        ExpenseJournal journal = open(new ExpenseStore());
+        Expense lunch = expense(journal.allocateId(), "Lunch", 12050, FxRates.BASE, "Food", "2024-03-01");
+        Expense book = expense(journal.allocateId(), "Book", 1999, "USD", "Shopping", "2023-12-30");
+        Expense dinner = expense(lunch.getId(), "Dinner", 45000, FxRates.BASE, "Food", "2024-03-02");
+        journal.appendAdd(lunch);
+        journal.appendAdd(book);
+        journal.appendEdit(lunch, dinner);
+        journal.appendDelete(book);
+        journal.close();
+
+        ExpenseStore store = new ExpenseStore();
+        open(store).close();
+        assertEquals(1, store.liveCount());
+        assertSame(dinner, store.expenseAt(store.rowOf(dinner.getId())));
+    }
+
+    @Test
+    void tornTailIsDroppedAndAppendsContinueAfterIt() throws IOException {
+        ExpenseJournal journal = open(new ExpenseStore());
+        journal.appendAdd(expense(journal.allocateId(), "Tea", 1000, FxRates.BASE, "Food", "2024-03-01"));
+        journal.close();
+        long intact = Files.size(journalFile());
+        journal = open(new ExpenseStore());
+        journal.appendAdd(expense(journal.allocateId(), "Cake", 25000, FxRates.BASE, "Food", "2024-03-01"));
+        journal.close();
+        // A crash partway through the second record
+        try (FileChannel ch = FileChannel.open(journalFile(), StandardOpenOption.WRITE)) {
+            ch.truncate(Files.size(journalFile()) - 3);
+        }
+
+        ExpenseStore store = new ExpenseStore();
+        journal = open(store);
+        assertEquals(1, store.liveCount());
+        assertEquals(intact, Files.size(journalFile()));
+        journal.appendAdd(expense(journal.allocateId(), "Coffee", 3000, FxRates.BASE, "Food", "2024-03-02"));
+        journal.close();
+
+        store = new ExpenseStore();
+        open(store).close();
+        assertEquals(2, store.liveCount());
+        assertEquals(4000, store.totalMinor());
+    }
+
+    @Test
+    void replayStopsAtACorruptRecord() throws IOException {
+        ExpenseJournal journal = open(new ExpenseStore());
+        journal.appendAdd(expense(journal.allocateId(), "Tea", 1000, FxRates.BASE, "Food", "2024-03-01"));
+        journal.close();
+        long intact = Files.size(journalFile());
+        journal = open(new ExpenseStore());
+        journal.appendAdd(expense(journal.allocateId(), "Cake", 25000, FxRates.BASE, "Food", "2024-03-01"));
+        journal.appendAdd(expense(journal.allocateId(), "Coffee", 3000, FxRates.BASE, "Food", "2024-03-02"));
+        journal.close();
+        // Flip a payload byte of the second record so its checksum no longer matches
+        byte[] bytes = Files.readAllBytes(journalFile());
+        bytes[(int) intact + 12] ^= 0x40;
+        Files.write(journalFile(), bytes);
+
+        ExpenseStore store = new ExpenseStore();
+        open(store).close();
+        assertEquals(1, store.liveCount());
+        assertEquals(1000, store.totalMinor());
+        assertEquals(intact, Files.size(journalFile()));
+    }
+
+    @Test
+    void compactedSegmentsReadBackWithTheJournal() throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        ExpenseJournal journal = open(store);
+        for (int year = 2019; year <= 2024; year++) {
+            Expense exp = expense(journal.allocateId(), "Rent " + year, 1_500_000, FxRates.BASE, "Housing", year + "-06-01");
+            journal.appendAdd(exp);
+            store.put(exp);
+        }
+        Expense fee = expense(journal.allocateId(), "Fee", 2500, "EUR", "Bills", "2024-07-01");
+        journal.appendAdd(fee);
+        store.put(fee);
+        journal.compactNow(store.snapshot());
+        // Lands in the fresh journal, after the rotation
+        Expense late = expense(journal.allocateId(), "Late fee", 700, FxRates.BASE, "Bills", "2024-07-02");
+        journal.appendAdd(late);
+        journal.close();
+        assertTrue(Files.exists(dir.resolve("expenses.manifest")));
+
+        ExpenseStore reopened = new ExpenseStore();
+        ExpenseJournal again = new ExpenseJournal(dir.toFile(), "expenses");
+        again.open(reopened);
+        again.close();
+        assertEquals(8, reopened.liveCount());
+        assertSame(fee, reopened.expenseAt(reopened.rowOf(fee.getId())));
+        assertSame(late, reopened.expenseAt(reopened.rowOf(late.getId())));
+        assertTrue(again.allocateId() > late.getId());
+    }
+
+    private ExpenseJournal open(ExpenseStore store) throws IOException {
+        ExpenseJournal journal = new ExpenseJournal(dir.toFile(), "expenses");
+        journal.open(store);
+        return journal;
+    }
+
+    private Path journalFile() {
+        return dir.resolve("expenses.journal");
+    }
+
+    private static Expense expense(long id, String description, long minor, String currency, String category,
+                                   String date) {
+        return new Expense(id, description, Money.ofMinor(minor), currency, category, LocalDate.parse(date));
+    }
+
+    private static void assertSame(Expense expected, Expense actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getAmount(), actual.getAmount());
+        assertEquals(expected.getCurrency(), actual.getCurrency());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getDate(), actual.getDate());
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void liveRowsRoundTrip() throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        store.put(1, "Lunch", 12050, "Food", day("2024-03-01"));
+        store.put(2, "Gone", 100, "Food", day("2024-03-01"));
+        store.put(3, "Café crème ☕", 450, "EUR", "Travel", day("2023-12-31"));
+        store.put(4, "", 99_999_999_99L, "Housing", day("1999-01-01"));
+        store.delete(2);
+        Path file = dir.resolve("expenses-2024.1.ledger");
+        LedgerFile.write(file, store, 5);
+
+        assertTrue(LedgerFile.isLedgerFile(file));
+        LedgerFile.Contents ledger = LedgerFile.read(file);
+        assertEquals(5, ledger.nextId);
+        assertEquals(3, ledger.size());
+        assertArrayEquals(new long[]{1, 3, 4}, ledger.ids);
+        assertArrayEquals(new long[]{12050, 450, 99_999_999_99L}, ledger.amounts);
+        assertArrayEquals(new int[]{day("2024-03-01"), day("2023-12-31"), day("1999-01-01")}, ledger.epochDays);
+        assertEquals("Food", ledger.categories[ledger.categoryIds[0]]);
+        assertEquals("Travel", ledger.categories[ledger.categoryIds[1]]);
+        assertEquals("Housing", ledger.categories[ledger.categoryIds[2]]);
+        assertEquals(FxRates.BASE, ledger.currencies[ledger.currencyIds[0]]);
+        assertEquals("EUR", ledger.currencies[ledger.currencyIds[1]]);
+        assertEquals("Lunch", ledger.descriptionAt(0));
+        assertEquals("Café crème ☕", ledger.descriptionAt(1));
+        assertEquals("", ledger.descriptionAt(2));
+
+        ExpenseStore reloaded = new ExpenseStore();
+        reloaded.appendAll(ledger);
+        assertEquals(3, reloaded.liveCount());
+        assertEquals(store.totalMinor(), reloaded.totalMinor());
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("expenses.ledger");
+        Files.write(file, "description,amount,category,date\n".getBytes());
+        assertFalse(LedgerFile.isLedgerFile(file));
+        assertThrows(IOException.class, () -> LedgerFile.read(file));
+    }
+
+    @Test
+    void unknownVersionIsRejected() throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        store.put(1, "Lunch", 12050, "Food", day("2024-03-01"));
+        Path file = dir.resolve("expenses-2024.1.ledger");
+        LedgerFile.write(file, store, 2);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[7] = (byte) (LedgerFile.VERSION + 1);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> LedgerFile.read(file));
+    }
+
+    private static int day(String date) {
+        return (int) LocalDate.parse(date).toEpochDay();
+    }
+}
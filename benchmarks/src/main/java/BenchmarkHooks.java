@@ -0,0 +1,166 @@
+import java.awt.Graphics2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Entry points the JMH benchmarks call into.
+ *
+ * The tracker's classes live in the unnamed package, which code in a named
+ * package cannot reference, and JMH refuses benchmarks in the unnamed
+ * package. This class sits in the unnamed package next to them and exposes
+ * each measured path as a public static method. The benchmarks bind these
+ * methods once through method handles.
+ */
+public final class BenchmarkHooks {
+    private static final String[] CATEGORIES = {"Food", "Transport", "Entertainment", "Utilities", "Shopping", "Other"};
+    private static final String[] WORDS = {"uber", "lunch", "coffee", "rent", "groceries", "movie", "flight", "bill"};
+
+    private BenchmarkHooks() {
+    }
+
+    /** A deterministic store of {@code rows} expenses spread over five years. */
+    public static Object syntheticStore(int rows) {
+        ExpenseStore store = new ExpenseStore();
+        Random random = new Random(42);
+        int firstDay = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+        for (int i = 0; i < rows; i++) {
+            String description = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(10_000);
+            store.put(i + 1, description, 100 + random.nextInt(500_000),
+                    CATEGORIES[random.nextInt(CATEGORIES.length)], firstDay + random.nextInt(5 * 365));
+        }
+        return store;
+    }
+
+    public static int size(Object store) {
+        return ((ExpenseStore) store).size();
+    }
+
+    /** Writes {@code store} as the ledger snapshot that {@link #load} reads back. */
+    public static void saveLedger(Object store, Path file) throws IOException {
+        ExpenseStore s = (ExpenseStore) store;
+        LedgerFile.write(file, s, s.size() + 1);
+    }
+
+    /** Startup load: replays the ledger and journal in {@code dir} into a fresh store. */
+    public static Object load(Path dir) throws IOException {
+        ExpenseStore store = new ExpenseStore();
+        ExpenseJournal journal = new ExpenseJournal(dir.toFile(), "expenses");
+        try {
+            journal.open(store);
+        } finally {
+            journal.close();
+        }
+        return store;
+    }
+
+    public static Object openJournal(Path dir) throws IOException {
+        ExpenseJournal journal = new ExpenseJournal(dir.toFile(), "expenses");
+        journal.open(new ExpenseStore());
+        return journal;
+    }
+
+    /** Saving one new expense, as Add Expense does. */
+    public static void appendOne(Object journal, long seq) throws IOException {
+        ExpenseJournal j = (ExpenseJournal) journal;
+        j.appendAdd(new Expense(j.allocateId(), "coffee " + seq, Money.ofMinor(12050), "Food", LocalDate.of(2024, 3, 1)));
+    }
+
+    public static void closeJournal(Object journal) throws IOException {
+        ((ExpenseJournal) journal).close();
+    }
+
+    /** Category totals by scanning every row, as the pie chart originally did. */
+    public static long scanCategoryTotals(Object store, long[] totals) {
+        ExpenseStore s = (ExpenseStore) store;
+        java.util.Arrays.fill(totals, 0);
+        s.sumByCategory(totals);
+        return totals[0];
+    }
+
+    /** Grand total by summing the amount columns directly. */
+    public static long sumAmounts(Object store) {
+        return ((ExpenseStore) store).sumAmounts();
+    }
+
+    /** Category totals from the incrementally maintained aggregates, as the pie chart does now. */
+    public static long aggregateCategoryTotals(Object store) {
+        ExpenseStore s = (ExpenseStore) store;
+        long sum = 0;
+        for (int c = 0; c < s.categoryCount(); c++) sum += s.aggregates().categoryTotal(c);
+        return sum;
+    }
+
+    public static Object view(Object store) {
+        return new ExpenseView((ExpenseStore) store);
+    }
+
+    public static Object pieChart() {
+        return new PieChartRenderer();
+    }
+
+    /** One pie chart paint; {@code rerender} forces the cached image to be redrawn. */
+    public static void paintPieChart(Object renderer, Object view, Graphics2D g, int width, int height, boolean rerender) {
+        PieChartRenderer pie = (PieChartRenderer) renderer;
+        if (rerender) pie.invalidate();
+        pie.paint(g, width, height, (ExpenseView) view);
+    }
+
+    public static boolean report(Object store, String format, Path file) throws IOException {
+        return ReportGenerator.generate((ExpenseStore) store, 0, ReportWriter.Format.valueOf(format), file,
+                new ReportGenerator.Progress() {
+                    @Override
+                    public void update(int rowsWritten, int totalRows) {
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                });
+    }
+
+    /**
+     * Builds a table model over {@code view} and formats the cells of a
+     * screenful of rows at the top and bottom, like a JTable's first paint
+     * and a jump to the end.
+     */
+    public static int populateTable(Object view, int visibleRows) {
+        ExpenseTableModel model = new ExpenseTableModel((ExpenseView) view);
+        int rows = model.getRowCount();
+        int checksum = 0;
+        for (int r = 0; r < Math.min(visibleRows, rows); r++) {
+            for (int c = 0; c < model.getColumnCount(); c++) checksum += model.getValueAt(r, c).hashCode();
+        }
+        for (int r = Math.max(0, rows - visibleRows); r < rows; r++) {
+            for (int c = 0; c < model.getColumnCount(); c++) checksum += model.getValueAt(r, c).hashCode();
+        }
+        return checksum;
+    }
+
+    /** A table model over {@code view} that receives the store's changes as they are made. */
+    public static Object subscribeTable(Object view) {
+        ExpenseView v = (ExpenseView) view;
+        ExpenseTableModel model = new ExpenseTableModel(v);
+        v.store().addChangeListener(model::storeChanged, Runnable::run);
+        return model;
+    }
+
+    /** Deleting one expense and undoing it: a tombstone, then a revival in place. */
+    public static int deleteAndUndo(Object store, long id) {
+        ExpenseStore s = (ExpenseStore) store;
+        Expense exp = s.expenseAt(s.rowOf(id));
+        s.delete(id);
+        return s.put(exp);
+    }
+
+    public static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) deleteTree(f);
+        }
+        dir.delete();
+    }
+}
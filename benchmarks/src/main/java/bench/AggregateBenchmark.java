@@ -0,0 +1,74 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totals and the dashboard pie chart: full scans of the amount column, the
+ * incremental aggregates the chart reads, and painting with and without
+ * the cached chart image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Djava.awt.headless=true"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AggregateBenchmark {
+    private static final int WIDTH = 420;
+    private static final int HEIGHT = 260;
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private Object store;
+    private Object view;
+    private Object pieChart;
+    private final long[] totals = new long[64];
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        store = Hooks.syntheticStore(rows);
+        view = Hooks.view(store);
+        pieChart = Hooks.pieChart();
+        canvas = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        graphics = canvas.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public long scanCategoryTotals() throws Throwable {
+        return Hooks.scanCategoryTotals(store, totals);
+    }
+
+    @Benchmark
+    public long sumAmounts() throws Throwable {
+        return Hooks.sumAmounts(store);
+    }
+
+    @Benchmark
+    public long aggregateCategoryTotals() throws Throwable {
+        return Hooks.aggregateCategoryTotals(store);
+    }
+
+    @Benchmark
+    public BufferedImage paintPieChartCached() throws Throwable {
+        Hooks.paintPieChart(pieChart, view, graphics, WIDTH, HEIGHT, false);
+        return canvas;
+    }
+
+    @Benchmark
+    public BufferedImage paintPieChartRerender() throws Throwable {
+        Hooks.paintPieChart(pieChart, view, graphics, WIDTH, HEIGHT, true);
+        return canvas;
+    }
+}
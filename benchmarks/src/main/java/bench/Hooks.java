@@ -0,0 +1,131 @@
+package bench;
+
+import java.awt.Graphics2D;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Method handles onto {@code BenchmarkHooks}, which lives in the unnamed
+ * package alongside the tracker classes. The handles are static finals, so
+ * the JIT inlines through them. Calls cost the same as direct calls once
+ * warmed up.
+ */
+final class Hooks {
+    private static final Class<?> HOOKS = hooksClass();
+
+    private static final MethodHandle SYNTHETIC_STORE = find("syntheticStore", methodType(Object.class, int.class));
+    private static final MethodHandle SIZE = find("size", methodType(int.class, Object.class));
+    private static final MethodHandle SAVE_LEDGER = find("saveLedger", methodType(void.class, Object.class, Path.class));
+    private static final MethodHandle LOAD = find("load", methodType(Object.class, Path.class));
+    private static final MethodHandle OPEN_JOURNAL = find("openJournal", methodType(Object.class, Path.class));
+    private static final MethodHandle APPEND_ONE = find("appendOne", methodType(void.class, Object.class, long.class));
+    private static final MethodHandle CLOSE_JOURNAL = find("closeJournal", methodType(void.class, Object.class));
+    private static final MethodHandle SCAN_CATEGORY_TOTALS = find("scanCategoryTotals", methodType(long.class, Object.class, long[].class));
+    private static final MethodHandle SUM_AMOUNTS = find("sumAmounts", methodType(long.class, Object.class));
+    private static final MethodHandle AGGREGATE_CATEGORY_TOTALS = find("aggregateCategoryTotals", methodType(long.class, Object.class));
+    private static final MethodHandle VIEW = find("view", methodType(Object.class, Object.class));
+    private static final MethodHandle PIE_CHART = find("pieChart", methodType(Object.class));
+    private static final MethodHandle PAINT_PIE_CHART = find("paintPieChart",
+            methodType(void.class, Object.class, Object.class, Graphics2D.class, int.class, int.class, boolean.class));
+    private static final MethodHandle REPORT = find("report", methodType(boolean.class, Object.class, String.class, Path.class));
+    private static final MethodHandle POPULATE_TABLE = find("populateTable", methodType(int.class, Object.class, int.class));
+    private static final MethodHandle SUBSCRIBE_TABLE = find("subscribeTable", methodType(Object.class, Object.class));
+    private static final MethodHandle DELETE_AND_UNDO = find("deleteAndUndo", methodType(int.class, Object.class, long.class));
+    private static final MethodHandle DELETE_TREE = find("deleteTree", methodType(void.class, File.class));
+
+    private Hooks() {
+    }
+
+    static Object syntheticStore(int rows) throws Throwable {
+        return SYNTHETIC_STORE.invokeExact(rows);
+    }
+
+    static int size(Object store) throws Throwable {
+        return (int) SIZE.invokeExact(store);
+    }
+
+    static void saveLedger(Object store, Path file) throws Throwable {
+        SAVE_LEDGER.invokeExact(store, file);
+    }
+
+    static Object load(Path dir) throws Throwable {
+        return LOAD.invokeExact(dir);
+    }
+
+    static Object openJournal(Path dir) throws Throwable {
+        return OPEN_JOURNAL.invokeExact(dir);
+    }
+
+    static void appendOne(Object journal, long seq) throws Throwable {
+        APPEND_ONE.invokeExact(journal, seq);
+    }
+
+    static void closeJournal(Object journal) throws Throwable {
+        CLOSE_JOURNAL.invokeExact(journal);
+    }
+
+    static long scanCategoryTotals(Object store, long[] totals) throws Throwable {
+        return (long) SCAN_CATEGORY_TOTALS.invokeExact(store, totals);
+    }
+
+    static long sumAmounts(Object store) throws Throwable {
+        return (long) SUM_AMOUNTS.invokeExact(store);
+    }
+
+    static long aggregateCategoryTotals(Object store) throws Throwable {
+        return (long) AGGREGATE_CATEGORY_TOTALS.invokeExact(store);
+    }
+
+    static Object view(Object store) throws Throwable {
+        return VIEW.invokeExact(store);
+    }
+
+    static Object pieChart() throws Throwable {
+        return PIE_CHART.invokeExact();
+    }
+
+    static void paintPieChart(Object renderer, Object view, Graphics2D g, int width, int height, boolean rerender) throws Throwable {
+        PAINT_PIE_CHART.invokeExact(renderer, view, g, width, height, rerender);
+    }
+
+    static boolean report(Object store, String format, Path file) throws Throwable {
+        return (boolean) REPORT.invokeExact(store, format, file);
+    }
+
+    static int populateTable(Object view, int visibleRows) throws Throwable {
+        return (int) POPULATE_TABLE.invokeExact(view, visibleRows);
+    }
+
+    static Object subscribeTable(Object view) throws Throwable {
+        return SUBSCRIBE_TABLE.invokeExact(view);
+    }
+
+    static int deleteAndUndo(Object store, long id) throws Throwable {
+        return (int) DELETE_AND_UNDO.invokeExact(store, id);
+    }
+
+    static void deleteTree(File dir) throws Throwable {
+        DELETE_TREE.invokeExact(dir);
+    }
+
+    private static Class<?> hooksClass() {
+        try {
+            return Class.forName("BenchmarkHooks");
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle find(String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(HOOKS, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
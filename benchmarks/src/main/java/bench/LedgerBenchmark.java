@@ -0,0 +1,77 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistence paths: startup load (ledger snapshot plus journal replay),
+ * writing the full snapshot, and saving a single new expense.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LedgerBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private Object store;
+    private Path loadDir;
+    private Path snapshotFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        store = Hooks.syntheticStore(rows);
+        loadDir = Files.createTempDirectory("expense-load");
+        Hooks.saveLedger(store, loadDir.resolve("expenses.ledger"));
+        snapshotFile = Files.createTempFile("expense-snapshot", ".ledger");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Hooks.deleteTree(loadDir.toFile());
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Benchmark
+    public Object load() throws Throwable {
+        return Hooks.load(loadDir);
+    }
+
+    @Benchmark
+    public void saveSnapshot() throws Throwable {
+        Hooks.saveLedger(store, snapshotFile);
+    }
+
+    /** Appending one expense to the journal; independent of ledger size. */
+    @State(Scope.Thread)
+    public static class Journal {
+        Path dir;
+        Object journal;
+        long seq;
+
+        @Setup(Level.Trial)
+        public void open() throws Throwable {
+            dir = Files.createTempDirectory("expense-journal");
+            journal = Hooks.openJournal(dir);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Throwable {
+            Hooks.closeJournal(journal);
+            Hooks.deleteTree(dir.toFile());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void saveOne(Journal state) throws Throwable {
+        Hooks.appendOne(state.journal, state.seq++);
+    }
+}
@@ -0,0 +1,41 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Full report generation to a file in each output format. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReportBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    @Param({"TEXT", "CSV", "JSON", "HTML"})
+    public String format;
+
+    private Object store;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        store = Hooks.syntheticStore(rows);
+        file = Files.createTempFile("expense-report", ".out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public boolean generateReport() throws Throwable {
+        return Hooks.report(store, format, file);
+    }
+}
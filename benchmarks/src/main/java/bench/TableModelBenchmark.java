@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Populating the expense table: building the model and formatting a
+ * screenful of rows at each end. This is the work a JTable does for its
+ * first paint and for a jump to the last row. Also deleting a row and
+ * undoing it with a subscribed model, which should not grow with the
+ * ledger.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Djava.awt.headless=true"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TableModelBenchmark {
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private Object store;
+    private Object view;
+    private long nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        store = Hooks.syntheticStore(rows);
+        view = Hooks.view(store);
+        Hooks.subscribeTable(view);
+    }
+
+    @Benchmark
+    public int populateTable() throws Throwable {
+        return Hooks.populateTable(view, VISIBLE_ROWS);
+    }
+
+    @Benchmark
+    public int deleteAndUndo() throws Throwable {
+        // Synthetic ids run 1..rows; walk them so every chunk is touched
+        nextId = (nextId + 7919) % rows;
+        return Hooks.deleteAndUndo(store, nextId + 1);
+    }
+}